@@ -0,0 +1,505 @@
+package com;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.IntPredicate;
+
+// A List<SongInfo> that keeps its songs as columns instead of objects, for lists that hold a whole
+// library. Artists and directories are interned in string pools (a library repeats both heavily), a
+// path is stored as its pooled directory plus the file name it usually ends in, ids and durations
+// are primitive arrays, and lookups by id or path go through open-addressing tables of ints rather
+// than HashMap entries. At 100k songs that is a fraction of the heap of an ArrayList of SongInfo
+// with its id and path maps; see SongListMemoryBenchmark.
+//
+// get() builds a short-lived SongInfo on every call. Code that only needs one field, such as a
+// binary search, should use id(), fileName() and friends instead. Stored songs are compared by id
+// (see SongInfo.equals), so indexOf() and contains() never materialize anything.
+//
+// Not thread-safe. Pools only grow: an artist or directory stays pooled after its last song is
+// removed, until the list is rebuilt.
+public class CompactSongList extends AbstractList<SongManager.SongInfo> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Marks a null path, as opposed to a path with no directory part
+    private static final int NO_PATH = -2;
+    private static final int NO_DURATION = Integer.MIN_VALUE;
+    // Rough retained size of a String with n Latin-1 characters: object, array header and the bytes
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    // Columns, indexed by slot. A song keeps its slot while it is in the list; order maps list
+    // positions to slots, so inserting or removing a song shifts ints, not rows.
+    private long[] ids;
+    private String[] names;
+    private int[] directories;
+    // null when the path ends in the file name itself, which is almost always
+    private String[] pathTails;
+    private int[] artists;
+    private int[] durations;
+    private int slotCount;
+    private int[] freeSlots;
+    private int freeCount;
+
+    private int[] order;
+    private int size;
+
+    private final StringPool artistPool;
+    private final StringPool directoryPool;
+    private final SlotTable slotsById;
+    private final SlotTable slotsByPath;
+    // Retained size of the per-song strings (names and unusual path tails)
+    private long stringBytes;
+
+    public CompactSongList() {
+        ids = new long[INITIAL_CAPACITY];
+        names = new String[INITIAL_CAPACITY];
+        directories = new int[INITIAL_CAPACITY];
+        pathTails = new String[INITIAL_CAPACITY];
+        artists = new int[INITIAL_CAPACITY];
+        durations = new int[INITIAL_CAPACITY];
+        freeSlots = new int[INITIAL_CAPACITY];
+        order = new int[INITIAL_CAPACITY];
+        artistPool = new StringPool();
+        directoryPool = new StringPool();
+        slotsById = new SlotTable();
+        slotsByPath = new SlotTable();
+    }
+
+    public CompactSongList(Collection<? extends SongManager.SongInfo> songs) {
+        this();
+        ensureSlots(songs.size());
+        ensureOrder(songs.size());
+        addAll(songs);
+    }
+
+    private CompactSongList(CompactSongList other) {
+        ids = other.ids.clone();
+        names = other.names.clone();
+        directories = other.directories.clone();
+        pathTails = other.pathTails.clone();
+        artists = other.artists.clone();
+        durations = other.durations.clone();
+        slotCount = other.slotCount;
+        freeSlots = other.freeSlots.clone();
+        freeCount = other.freeCount;
+        order = other.order.clone();
+        size = other.size;
+        artistPool = new StringPool(other.artistPool);
+        directoryPool = new StringPool(other.directoryPool);
+        slotsById = new SlotTable(other.slotsById);
+        slotsByPath = new SlotTable(other.slotsByPath);
+        stringBytes = other.stringBytes;
+    }
+
+    // An independent copy; no SongInfo is created
+    public CompactSongList copy() {
+        return new CompactSongList(this);
+    }
+
+    // --- List ---
+
+    @Override
+    public SongManager.SongInfo get(int index) {
+        return song(order[checkIndex(index)]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public SongManager.SongInfo set(int index, SongManager.SongInfo song) {
+        int slot = order[checkIndex(index)];
+        SongManager.SongInfo previous = song(slot);
+        unindex(slot);
+        release(slot);
+        store(slot, song);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, SongManager.SongInfo song) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : newSlot();
+        store(slot, song);
+        ensureOrder(size + 1);
+        System.arraycopy(order, index, order, index + 1, size - index);
+        order[index] = slot;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public SongManager.SongInfo remove(int index) {
+        int slot = order[checkIndex(index)];
+        SongManager.SongInfo previous = song(slot);
+        unindex(slot);
+        release(slot);
+        System.arraycopy(order, index + 1, order, index, size - index - 1);
+        size--;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, slotCount, null);
+        Arrays.fill(pathTails, 0, slotCount, null);
+        slotCount = 0;
+        freeCount = 0;
+        size = 0;
+        slotsById.clear();
+        slotsByPath.clear();
+        stringBytes = 0;
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        int slot = slotOf(o);
+        if (slot < 0) {
+            return -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (order[i] == slot) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return slotOf(o) >= 0;
+    }
+
+    // --- Single fields, without building a SongInfo ---
+
+    public long id(int index) {
+        return ids[order[checkIndex(index)]];
+    }
+
+    public String fileName(int index) {
+        return names[order[checkIndex(index)]];
+    }
+
+    public String artist(int index) {
+        return artistPool.get(artists[order[checkIndex(index)]]);
+    }
+
+    public Integer duration(int index) {
+        int duration = durations[order[checkIndex(index)]];
+        return duration == NO_DURATION ? null : duration;
+    }
+
+    // --- Lookups ---
+
+    // null if no song in the list has this id
+    public SongManager.SongInfo getById(long id) {
+        int slot = slotsById.find(idHash(id), s -> ids[s] == id);
+        return slot < 0 ? null : song(slot);
+    }
+
+    // Id of the song at path, 0 if there is none
+    public long idOfPath(String path) {
+        int slot = slotOfPath(path);
+        return slot < 0 ? 0 : ids[slot];
+    }
+
+    // Rough retained heap of the list, its pools and its index tables
+    public long estimatedBytes() {
+        long columns = (long) ids.length * (8 + 4 + 4 + 4 + 4 + 4) + (long) (order.length + freeSlots.length) * 4;
+        return columns + slotsById.estimatedBytes() + slotsByPath.estimatedBytes()
+                + artistPool.estimatedBytes() + directoryPool.estimatedBytes() + stringBytes;
+    }
+
+    // --- Slots ---
+
+    private SongManager.SongInfo song(int slot) {
+        int duration = durations[slot];
+        return new SongManager.SongInfo(ids[slot], names[slot], path(slot), artistPool.get(artists[slot]),
+                duration == NO_DURATION ? null : duration);
+    }
+
+    private String path(int slot) {
+        if (directories[slot] == NO_PATH) {
+            return null;
+        }
+        String directory = directoryPool.get(directories[slot]);
+        String tail = pathTails[slot] != null ? pathTails[slot] : names[slot];
+        return directory == null ? tail : directory + tail;
+    }
+
+    private void store(int slot, SongManager.SongInfo song) {
+        ids[slot] = song.id;
+        names[slot] = song.fileName;
+        artists[slot] = artistPool.intern(song.artist);
+        durations[slot] = song.duration == null ? NO_DURATION : song.duration;
+        if (song.path == null) {
+            directories[slot] = NO_PATH;
+            pathTails[slot] = null;
+        } else {
+            int cut = Math.max(song.path.lastIndexOf('/'), song.path.lastIndexOf('\\')) + 1;
+            directories[slot] = cut == 0 ? -1 : directoryPool.intern(song.path.substring(0, cut));
+            String tail = song.path.substring(cut);
+            pathTails[slot] = tail.equals(song.fileName) ? null : tail;
+        }
+        stringBytes += stringBytes(names[slot]) + stringBytes(pathTails[slot]);
+        slotsById.put(idHash(song.id), slot);
+        if (song.path != null) {
+            slotsByPath.put(pathHash(slot), slot);
+        }
+    }
+
+    private void unindex(int slot) {
+        slotsById.remove(idHash(ids[slot]), slot);
+        if (directories[slot] != NO_PATH) {
+            slotsByPath.remove(pathHash(slot), slot);
+        }
+    }
+
+    // Drops the slot's strings so they can be collected
+    private void release(int slot) {
+        stringBytes -= stringBytes(names[slot]) + stringBytes(pathTails[slot]);
+        names[slot] = null;
+        pathTails[slot] = null;
+    }
+
+    private int newSlot() {
+        ensureSlots(slotCount + 1);
+        return slotCount++;
+    }
+
+    private void ensureSlots(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, grown);
+        names = Arrays.copyOf(names, grown);
+        directories = Arrays.copyOf(directories, grown);
+        pathTails = Arrays.copyOf(pathTails, grown);
+        artists = Arrays.copyOf(artists, grown);
+        durations = Arrays.copyOf(durations, grown);
+    }
+
+    private void ensureOrder(int capacity) {
+        if (capacity > order.length) {
+            order = Arrays.copyOf(order, Math.max(capacity, order.length + (order.length >> 1)));
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return index;
+    }
+
+    private int slotOf(Object o) {
+        if (!(o instanceof SongManager.SongInfo song)) {
+            return -1;
+        }
+        if (song.id != 0) {
+            return slotsById.find(idHash(song.id), s -> ids[s] == song.id);
+        }
+        // Unsaved songs are equal by path, and only to other unsaved songs
+        int slot = slotOfPath(song.path);
+        return slot >= 0 && ids[slot] == 0 ? slot : -1;
+    }
+
+    private int slotOfPath(String path) {
+        if (path == null) {
+            return -1;
+        }
+        return slotsByPath.find(spread(path.hashCode()), s -> pathEquals(s, path));
+    }
+
+    private boolean pathEquals(int slot, String path) {
+        String directory = directories[slot] < 0 ? "" : directoryPool.get(directories[slot]);
+        String tail = pathTails[slot] != null ? pathTails[slot] : names[slot];
+        return path.length() == directory.length() + tail.length()
+                && path.startsWith(directory) && path.startsWith(tail, directory.length());
+    }
+
+    // Hash of the slot's full path, without building it: String.hashCode() of directory + tail
+    private int pathHash(int slot) {
+        String directory = directories[slot] < 0 ? "" : directoryPool.get(directories[slot]);
+        String tail = pathTails[slot] != null ? pathTails[slot] : names[slot];
+        int h = directory.hashCode();
+        for (int i = 0; i < tail.length(); i++) {
+            h = 31 * h + tail.charAt(i);
+        }
+        return spread(h);
+    }
+
+    private static int idHash(long id) {
+        return spread(Long.hashCode(id));
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : STRING_OVERHEAD_BYTES + s.length();
+    }
+
+    // Append-only intern table; -1 stands for null
+    private static final class StringPool {
+        private String[] values;
+        private int count;
+        private final Map<String, Integer> indexes;
+        private long bytes;
+
+        StringPool() {
+            values = new String[INITIAL_CAPACITY];
+            indexes = new HashMap<>();
+        }
+
+        StringPool(StringPool other) {
+            values = other.values.clone();
+            count = other.count;
+            indexes = new HashMap<>(other.indexes);
+            bytes = other.bytes;
+        }
+
+        int intern(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = indexes.get(value);
+            if (index != null) {
+                return index;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = value;
+            indexes.put(value, count);
+            // The string, plus the HashMap node and boxed index that find it again
+            bytes += stringBytes(value) + 48;
+            return count++;
+        }
+
+        String get(int index) {
+            return index < 0 ? null : values[index];
+        }
+
+        long estimatedBytes() {
+            return (long) values.length * 4 + bytes;
+        }
+    }
+
+    // Open-addressing hash table from a caller-computed hash to slot numbers, with linear probing and
+    // backward-shift deletion (no tombstones). Keys live in the columns; find() checks candidates
+    // with a predicate, so the table holds nothing but two ints per cell.
+    private static final class SlotTable {
+        // slot + 1; 0 marks an empty cell
+        private int[] cells;
+        private int[] hashes;
+        private int count;
+
+        SlotTable() {
+            cells = new int[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+        }
+
+        SlotTable(SlotTable other) {
+            cells = other.cells.clone();
+            hashes = other.hashes.clone();
+            count = other.count;
+        }
+
+        int find(int hash, IntPredicate matches) {
+            int mask = cells.length - 1;
+            for (int i = hash & mask; cells[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == hash && matches.test(cells[i] - 1)) {
+                    return cells[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        void put(int hash, int slot) {
+            // Keep the load factor at or below 3/4
+            if ((count + 1) * 4L > cells.length * 3L) {
+                resize(cells.length * 2);
+            }
+            int mask = cells.length - 1;
+            int i = hash & mask;
+            while (cells[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            cells[i] = slot + 1;
+            hashes[i] = hash;
+            count++;
+        }
+
+        void remove(int hash, int slot) {
+            int mask = cells.length - 1;
+            int i = hash & mask;
+            while (cells[i] != slot + 1) {
+                if (cells[i] == 0) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            // Pull later cells of the probe run back into the hole, so lookups never stop early
+            for (int j = (i + 1) & mask; cells[j] != 0; j = (j + 1) & mask) {
+                int home = hashes[j] & mask;
+                boolean homeBetween = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+                if (!homeBetween) {
+                    cells[i] = cells[j];
+                    hashes[i] = hashes[j];
+                    i = j;
+                }
+            }
+            cells[i] = 0;
+            count--;
+        }
+
+        void clear() {
+            Arrays.fill(cells, 0);
+            count = 0;
+        }
+
+        long estimatedBytes() {
+            return (long) cells.length * 8;
+        }
+
+        private void resize(int capacity) {
+            int[] oldCells = cells;
+            int[] oldHashes = hashes;
+            cells = new int[capacity];
+            hashes = new int[capacity];
+            int mask = capacity - 1;
+            for (int k = 0; k < oldCells.length; k++) {
+                if (oldCells[k] != 0) {
+                    int i = oldHashes[k] & mask;
+                    while (cells[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    cells[i] = oldCells[k];
+                    hashes[i] = oldHashes[k];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Small pool of long-lived SQLite connections.
+// Callers keep using try-with-resources: close() on a pooled connection hands it back instead of closing it.
+public class ConnectionPool {
+
+    public static class Stats {
+        public final long acquisitions;
+        public final long waits;
+        public final long totalWaitNanos;
+        public final long maxWaitNanos;
+        public final int open;
+        public final int idle;
+
+        Stats(long acquisitions, long waits, long totalWaitNanos, long maxWaitNanos, int open, int idle) {
+            this.acquisitions = acquisitions;
+            this.waits = waits;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.open = open;
+            this.idle = idle;
+        }
+
+        public double averageWaitMillis() {
+            return acquisitions == 0 ? 0.0 : (totalWaitNanos / 1_000_000.0) / acquisitions;
+        }
+
+        public double maxWaitMillis() {
+            return maxWaitNanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("acquisitions=%d, waits=%d, avgWait=%.3f ms, maxWait=%.3f ms, open=%d, idle=%d",
+                    acquisitions, waits, averageWaitMillis(), maxWaitMillis(), open, idle);
+        }
+    }
+
+    // Runs once on every physical connection right after it is opened (ATTACH, PRAGMAs, ...)
+    public interface Initializer {
+        void init(Connection conn) throws SQLException;
+    }
+
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+    private final String url;
+    private final Properties properties;
+    private final Initializer initializer;
+    private final int maxSize;
+    private final BlockingQueue<Connection> idle;
+
+    private int openCount = 0;
+    private boolean closed = false;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, int maxSize, Initializer initializer) {
+        this(url, new Properties(), maxSize, initializer);
+    }
+
+    // Properties are passed to the driver on every open (e.g. SQLiteConfig.toProperties() for read-only mode)
+    public ConnectionPool(String url, Properties properties, int maxSize, Initializer initializer) {
+        this.url = url;
+        this.properties = properties;
+        this.maxSize = maxSize;
+        this.initializer = initializer;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    public Connection acquire() throws SQLException {
+        long start = System.nanoTime();
+        Connection physical = idle.poll();
+        if (physical == null) {
+            physical = openIfBelowLimit();
+        }
+        if (physical == null) {
+            waits.incrementAndGet();
+            try {
+                physical = idle.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+            if (physical == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        }
+        recordWait(System.nanoTime() - start);
+        return wrap(physical);
+    }
+
+    public Stats getStats() {
+        synchronized (this) {
+            return new Stats(acquisitions.get(), waits.get(), totalWaitNanos.get(), maxWaitNanos.get(), openCount, idle.size());
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        Connection conn;
+        while ((conn = idle.poll()) != null) {
+            closeQuietly(conn);
+            synchronized (this) {
+                openCount--;
+            }
+        }
+    }
+
+    private synchronized Connection openIfBelowLimit() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        if (openCount >= maxSize) {
+            return null;
+        }
+        // Every statement on a pooled connection is timed (see QueryMetrics)
+        Connection conn = QueryMetrics.instrument(DriverManager.getConnection(url, properties));
+        try {
+            if (initializer != null) {
+                initializer.init(conn);
+            }
+        } catch (SQLException e) {
+            closeQuietly(conn);
+            throw e;
+        }
+        openCount++;
+        return conn;
+    }
+
+    private void recordWait(long nanos) {
+        acquisitions.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void release(Connection physical, List<Statement> statements) {
+        for (Statement stmt : statements) {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        boolean reusable;
+        try {
+            reusable = !physical.isClosed();
+            if (reusable && !physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Discarding broken pooled connection: " + e.getMessage());
+            reusable = false;
+        }
+
+        synchronized (this) {
+            if (reusable && !closed && idle.offer(physical)) {
+                return;
+            }
+            openCount--;
+        }
+        closeQuietly(physical);
+    }
+
+    private Connection wrap(Connection physical) {
+        InvocationHandler handler = new InvocationHandler() {
+            private final List<Statement> statements = new ArrayList<>();
+            private boolean returned = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("close")) {
+                    if (!returned) {
+                        returned = true;
+                        release(physical, statements);
+                    }
+                    return null;
+                }
+                if (name.equals("isClosed")) {
+                    return returned || physical.isClosed();
+                }
+                if (returned) {
+                    throw new SQLException("Connection has already been returned to the pool");
+                }
+                try {
+                    Object result = method.invoke(physical, args);
+                    // Track statements so anything the caller forgets to close is released with the connection
+                    if (result instanceof Statement stmt) {
+                        statements.add(stmt);
+                    }
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Owns the only writable connection to the library and runs every write on one thread.
+// Whatever is queued when the thread wakes up is committed together (group commit); each task
+// gets its own savepoint, so one failing task doesn't take the rest of the group down with it.
+public class DBWriter {
+
+    public interface WriteTask<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private static class Job<T> {
+        final WriteTask<T> task;
+        // Runs on its own, outside any transaction
+        final boolean exclusive;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+        Throwable error;
+
+        Job(WriteTask<T> task, boolean exclusive) {
+            this.task = task;
+            this.exclusive = exclusive;
+        }
+
+        void run(Connection conn) {
+            try {
+                result = task.run(conn);
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+
+    private static final int MAX_GROUP_SIZE = 64;
+
+    // Queued by shutdown() after the last real job; the loop stops when it reaches it
+    private static final Job<Void> STOP = new Job<>(conn -> null, false);
+
+    private final Connection conn;
+    private final LinkedBlockingQueue<Job<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    // Makes the running check and the add in enqueue atomic with respect to shutdown
+    private final Object lifecycle = new Object();
+    private volatile boolean running = true;
+
+    public DBWriter(Connection conn) {
+        this.conn = conn;
+        this.thread = new Thread(this::loop, "DBWriter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public <T> CompletableFuture<T> submit(WriteTask<T> task) {
+        return enqueue(new Job<>(task, false));
+    }
+
+    // Runs the task alone and in autocommit mode, after everything queued before it has committed.
+    // For the few operations SQLite refuses inside a transaction, such as restoring a backup.
+    public <T> CompletableFuture<T> submitExclusive(WriteTask<T> task) {
+        return enqueue(new Job<>(task, true));
+    }
+
+    private <T> CompletableFuture<T> enqueue(Job<T> job) {
+        synchronized (lifecycle) {
+            if (running) {
+                queue.add(job);
+                return job.future;
+            }
+        }
+        job.future.completeExceptionally(new SQLException("Database writer has been shut down"));
+        return job.future;
+    }
+
+    // Stops accepting work, commits whatever is already queued and closes the connection. The writer
+    // is never interrupted: that would land in whatever job it is running.
+    public void shutdown() {
+        synchronized (lifecycle) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            queue.add(STOP);
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            // Closing now would cut a transaction off mid-flight; the JVM exit closes it instead
+            System.err.println("Database writer still busy after 10 s; leaving its connection open");
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing writer connection: " + e.getMessage());
+        }
+    }
+
+    private void loop() {
+        List<Job<?>> group = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                // Nobody interrupts the writer; keep going until STOP
+                continue;
+            }
+            queue.drainTo(group, MAX_GROUP_SIZE - group.size());
+            // STOP is the last job ever queued, so it can only be at the end of the group
+            if (group.get(group.size() - 1) == STOP) {
+                group.remove(group.size() - 1);
+                stopping = true;
+            }
+            // Exclusive jobs split the group; everything before one is committed first
+            int start = 0;
+            for (int i = 0; i < group.size(); i++) {
+                if (group.get(i).exclusive) {
+                    if (i > start) {
+                        runGroup(group.subList(start, i));
+                    }
+                    runExclusive(group.get(i));
+                    start = i + 1;
+                }
+            }
+            if (start < group.size()) {
+                runGroup(group.subList(start, group.size()));
+            }
+            group.clear();
+        }
+        // Nothing can be queued after STOP; fail anything left anyway so no caller waits on it forever
+        for (Job<?> job; (job = queue.poll()) != null; ) {
+            job.future.completeExceptionally(new SQLException("Database writer has been shut down"));
+        }
+    }
+
+    private void runExclusive(Job<?> job) {
+        job.run(conn);
+        job.complete();
+    }
+
+    private void runGroup(List<Job<?>> group) {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+            try {
+                for (Job<?> job : group) {
+                    stmt.execute("SAVEPOINT job");
+                    job.run(conn);
+                    if (job.error != null) {
+                        stmt.execute("ROLLBACK TO job");
+                    }
+                    stmt.execute("RELEASE job");
+                }
+                stmt.execute("COMMIT");
+            } catch (SQLException e) {
+                stmt.execute("ROLLBACK");
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error committing write group of " + group.size() + ": " + e.getMessage());
+            for (Job<?> job : group) {
+                job.error = e;
+            }
+        }
+        // Futures only complete once the data is committed and visible to readers
+        for (Job<?> job : group) {
+            job.complete();
+        }
+    }
+}
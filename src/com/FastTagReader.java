@@ -0,0 +1,508 @@
+package com;
+
+import org.jaudiotagger.tag.FieldKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Reads the tags and stream properties of plain MP3, FLAC and WAV files straight from their headers,
+// for SongManager.readMp3. AudioFileIO builds a full tag and audio header model of every file (and
+// for an MP3 walks a RandomAccessFile byte by byte looking for the first frame); this reads the first
+// HEAD_SIZE bytes in one go and only follows up where the file says the data is:
+//   MP3   the ID3v2.2-2.4 text frames, else the ID3v1 tag; length and bitrate from the Xing/Info or
+//         VBRI frame, else from the file size and the first frame, as jaudiotagger works them out
+//   FLAC  STREAMINFO and VORBIS_COMMENT
+//   WAV   the fmt and data chunks, LIST/INFO
+// Anything outside that (unsynchronised or compressed ID3 frames, MPEG-2 or Layer I/II audio, junk
+// between the tag and the first frame, a FLAC behind an ID3 tag...) returns null, and the caller
+// falls back to jaudiotagger. The format is picked by extension, as AudioFileIO picks its reader.
+public final class FastTagReader {
+
+    private static final int HEAD_SIZE = 16 * 1024;
+    private static final int ID3V1_SIZE = 128;
+
+    // MPEG-1 Layer III, in kbit/s and Hz
+    private static final int[] BITRATES = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0};
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000, 0};
+    private static final int SAMPLES_PER_FRAME = 1152;
+
+    // Where each format keeps the fields SongMetadata wants, by the FieldKey jaudiotagger reads them as
+    private static final Map<String, FieldKey> ID3V22_FRAMES = Map.of(
+            "TT2", FieldKey.TITLE, "TP1", FieldKey.ARTIST, "TAL", FieldKey.ALBUM, "TP2", FieldKey.ALBUM_ARTIST,
+            "TRK", FieldKey.TRACK, "TPA", FieldKey.DISC_NO, "TYE", FieldKey.YEAR, "TCO", FieldKey.GENRE);
+    private static final Map<String, FieldKey> ID3V2_FRAMES = Map.of(
+            "TIT2", FieldKey.TITLE, "TPE1", FieldKey.ARTIST, "TALB", FieldKey.ALBUM, "TPE2", FieldKey.ALBUM_ARTIST,
+            "TRCK", FieldKey.TRACK, "TPOS", FieldKey.DISC_NO, "TYER", FieldKey.YEAR, "TDRC", FieldKey.YEAR,
+            "TCON", FieldKey.GENRE);
+    private static final Map<String, FieldKey> VORBIS_FIELDS = Map.of(
+            "TITLE", FieldKey.TITLE, "ARTIST", FieldKey.ARTIST, "ALBUM", FieldKey.ALBUM,
+            "ALBUMARTIST", FieldKey.ALBUM_ARTIST, "ALBUM ARTIST", FieldKey.ALBUM_ARTIST,
+            "TRACKNUMBER", FieldKey.TRACK, "DISCNUMBER", FieldKey.DISC_NO, "DATE", FieldKey.YEAR, "GENRE", FieldKey.GENRE);
+    private static final Map<String, FieldKey> INFO_FIELDS = Map.of(
+            "INAM", FieldKey.TITLE, "IART", FieldKey.ARTIST, "IPRD", FieldKey.ALBUM,
+            "ITRK", FieldKey.TRACK, "ICRD", FieldKey.YEAR, "IGNR", FieldKey.GENRE);
+
+    private FastTagReader() {
+    }
+
+    public static final class Tags {
+        // Null if the file has no artist tag
+        public final String artist;
+        public final int durationSeconds;
+        public final SongMetadata metadata;
+
+        Tags(String artist, int durationSeconds, SongMetadata metadata) {
+            this.artist = artist;
+            this.durationSeconds = durationSeconds;
+            this.metadata = metadata;
+        }
+    }
+
+    // Thrown for anything this reader leaves to jaudiotagger; cheap, as it is expected
+    private static final class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    // The file's tags, or null if it needs the full parser
+    public static Tags read(File file) {
+        String name = file.getName().toLowerCase();
+        try (Source source = new Source(file)) {
+            if (name.endsWith(".mp3")) {
+                return readMp3(source);
+            } else if (name.endsWith(".flac")) {
+                return readFlac(source);
+            } else if (name.endsWith(".wav")) {
+                return readWav(source);
+            }
+            return null;
+        } catch (Unsupported | IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // The result for the text fields found, as the file spells them, and the stream's properties
+    private static Tags tags(Map<FieldKey, String> fields, int durationSeconds, int bitrate, int sampleRate,
+                             int channels, String codec) {
+        return new Tags(fields.get(FieldKey.ARTIST), durationSeconds, SongMetadata.fromTags(
+                fields.get(FieldKey.TITLE), fields.get(FieldKey.ALBUM), fields.get(FieldKey.ALBUM_ARTIST),
+                fields.get(FieldKey.TRACK), fields.get(FieldKey.DISC_NO), fields.get(FieldKey.YEAR),
+                fields.get(FieldKey.GENRE), bitrate, sampleRate, channels, codec));
+    }
+
+    // --- MP3 ---
+
+    private static Tags readMp3(Source source) throws IOException, Unsupported {
+        ByteBuffer header = source.read(0, 10);
+        long audioStart = 0;
+        Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+        if (header.remaining() == 10 && header.get(0) == 'I' && header.get(1) == 'D' && header.get(2) == '3') {
+            int version = header.get(3);
+            int flags = header.get(5) & 0xFF;
+            if (version < 2 || version > 4) {
+                throw new Unsupported("ID3v2." + version);
+            }
+            if ((flags & 0x80) != 0) {
+                throw new Unsupported("unsynchronised ID3v2 tag");
+            }
+            if (version == 4 && (flags & 0x10) != 0) {
+                throw new Unsupported("ID3v2 footer");
+            }
+            int size = syncSafe(header, 6);
+            audioStart = 10L + size;
+            // jaudiotagger reads the v2 tag alone when there is one, even for fields only the v1 tag has
+            readId3v2(source, version, flags, size, fields);
+        } else {
+            readId3v1(source, fields);
+        }
+        return readMpeg(source, audioStart, fields);
+    }
+
+    private static void readId3v2(Source source, int version, int flags, int size, Map<FieldKey, String> fields)
+            throws IOException, Unsupported {
+        long end = 10L + size;
+        long position = 10;
+        if ((flags & 0x40) != 0) {
+            if (version == 2) {
+                throw new Unsupported("compressed ID3v2.2 tag");
+            }
+            ByteBuffer extended = source.read(position, 4);
+            // v2.3 counts the size field out of the extended header's size, v2.4 counts it in
+            position += version == 3 ? 4L + extended.getInt(0) : syncSafe(extended, 0);
+        }
+        int headerSize = version == 2 ? 6 : 10;
+        Map<String, FieldKey> wanted = version == 2 ? ID3V22_FRAMES : ID3V2_FRAMES;
+        while (position + headerSize <= end) {
+            ByteBuffer frame = source.read(position, headerSize);
+            if (frame.remaining() < headerSize || frame.get(0) == 0) {
+                break; // padding
+            }
+            String id;
+            int frameSize;
+            if (version == 2) {
+                id = ascii(frame, 0, 3);
+                frameSize = (frame.get(3) & 0xFF) << 16 | (frame.get(4) & 0xFF) << 8 | frame.get(5) & 0xFF;
+            } else {
+                id = ascii(frame, 0, 4);
+                frameSize = version == 3 ? frame.getInt(4) : syncSafe(frame, 4);
+            }
+            if (frameSize < 0 || position + headerSize + frameSize > end) {
+                throw new Unsupported("ID3v2 frame " + id + " overruns the tag");
+            }
+            FieldKey field = wanted.get(id);
+            if (field != null && !fields.containsKey(field)) {
+                int skip = 0;
+                if (version == 3) {
+                    int format = frame.get(9) & 0xFF;
+                    if ((format & 0xC0) != 0) {
+                        throw new Unsupported("compressed or encrypted " + id);
+                    }
+                    skip = (format & 0x20) != 0 ? 1 : 0;
+                } else if (version == 4) {
+                    int format = frame.get(9) & 0xFF;
+                    if ((format & 0x0E) != 0) {
+                        throw new Unsupported("compressed, encrypted or unsynchronised " + id);
+                    }
+                    skip = ((format & 0x40) != 0 ? 1 : 0) + ((format & 0x01) != 0 ? 4 : 0);
+                }
+                String text = id3Text(source.read(position + headerSize + skip, frameSize - skip));
+                if (text != null) {
+                    fields.put(field, text);
+                }
+            }
+            position += headerSize + frameSize;
+        }
+    }
+
+    // A text frame's first value: an encoding byte, then the text up to its first terminator
+    private static String id3Text(ByteBuffer body) throws Unsupported {
+        if (!body.hasRemaining()) {
+            return null;
+        }
+        Charset charset = switch (body.get(0)) {
+            case 0 -> StandardCharsets.ISO_8859_1;
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> throw new Unsupported("ID3v2 text encoding " + body.get(0));
+        };
+        boolean wide = charset == StandardCharsets.UTF_16 || charset == StandardCharsets.UTF_16BE;
+        int start = body.position() + 1;
+        int end = start;
+        if (wide) {
+            while (end + 1 < body.limit() && (body.get(end) != 0 || body.get(end + 1) != 0)) {
+                end += 2;
+            }
+        } else {
+            while (end < body.limit() && body.get(end) != 0) {
+                end++;
+            }
+        }
+        byte[] text = new byte[end - start];
+        body.get(start, text);
+        return new String(text, charset);
+    }
+
+    // Fixed-width fields: title, artist, album, year and, for v1.1, a track number in the last comment byte
+    private static void readId3v1(Source source, Map<FieldKey, String> fields) throws IOException {
+        if (source.size < ID3V1_SIZE) {
+            return;
+        }
+        ByteBuffer tag = source.read(source.size - ID3V1_SIZE, ID3V1_SIZE);
+        if (tag.remaining() < ID3V1_SIZE || tag.get(0) != 'T' || tag.get(1) != 'A' || tag.get(2) != 'G') {
+            return;
+        }
+        fields.put(FieldKey.TITLE, latin1(tag, 3, 30));
+        fields.put(FieldKey.ARTIST, latin1(tag, 33, 30));
+        fields.put(FieldKey.ALBUM, latin1(tag, 63, 30));
+        fields.put(FieldKey.YEAR, latin1(tag, 93, 4));
+        if (tag.get(125) == 0 && tag.get(126) != 0) {
+            fields.put(FieldKey.TRACK, String.valueOf(tag.get(126) & 0xFF));
+        }
+        if ((tag.get(127) & 0xFF) != 0xFF) {
+            fields.put(FieldKey.GENRE, String.valueOf(tag.get(127) & 0xFF));
+        }
+    }
+
+    // The MPEG-1 Layer III stream whose first frame must be right at audioStart; jaudiotagger
+    // searches onwards from there, which only matters for files this leaves to it
+    private static Tags readMpeg(Source source, long audioStart, Map<FieldKey, String> fields) throws IOException, Unsupported {
+        ByteBuffer frame = source.read(audioStart, 64);
+        if (frame.remaining() < 64) {
+            throw new Unsupported("short MPEG stream");
+        }
+        int header = frame.getInt(0);
+        if (!isLayer3Header(header)) {
+            throw new Unsupported("no MPEG-1 Layer III frame at " + audioStart);
+        }
+        int bitrate = BITRATES[header >>> 12 & 0xF];
+        int sampleRate = SAMPLE_RATES[header >>> 10 & 0x3];
+        int padding = header >>> 9 & 0x1;
+        boolean mono = (header >>> 6 & 0x3) == 3;
+        int frameLength = 144 * bitrate * 1000 / sampleRate + padding;
+
+        // Xing frames of VBR files say "Xing", those of CBR files "Info"; only the former change the bitrate
+        long frames;
+        long vbrBytes = -1;
+        int xing = mono ? 21 : 36;
+        String vbrTag = ascii(frame, xing, 4);
+        int xingFlags = frame.getInt(xing + 4);
+        if ((vbrTag.equals("Xing") || vbrTag.equals("Info")) && (xingFlags & 0x1) != 0) {
+            frames = frame.getInt(xing + 8);
+            if (vbrTag.equals("Xing")) {
+                int audioSize = (xingFlags & 0x2) != 0 ? frame.getInt(xing + 12) : 0;
+                vbrBytes = audioSize > 0 ? audioSize : source.size - audioStart;
+            }
+        } else if (ascii(frame, 36, 4).equals("VBRI")) {
+            frames = frame.getInt(36 + 14);
+            int audioSize = frame.getInt(36 + 10);
+            vbrBytes = audioSize > 0 ? audioSize : source.size - audioStart;
+        } else {
+            // What jaudiotagger checks before trusting a header with no VBR frame behind it
+            ByteBuffer next = source.read(audioStart + frameLength, 4);
+            if (next.remaining() < 4 || !isLayer3Header(next.getInt(0))) {
+                throw new Unsupported("no second MPEG frame");
+            }
+            frames = (source.size - audioStart) / frameLength;
+        }
+        if (frames <= 0) {
+            // A VBR frame that doesn't know the length; jaudiotagger estimates it
+            throw new Unsupported("no MPEG frame count");
+        }
+        // Same arithmetic as MP3AudioHeader, so both readers agree on the truncated values
+        double timePerFrame = SAMPLES_PER_FRAME / (double) sampleRate;
+        if (vbrBytes >= 0) {
+            bitrate = (int) (long) (vbrBytes * 8 / (timePerFrame * frames * 1000.0));
+        }
+        return tags(fields, (int) (frames * timePerFrame), bitrate, sampleRate, mono ? 1 : 2, "MP3");
+    }
+
+    private static boolean isLayer3Header(int header) {
+        return (header >>> 21 & 0x7FF) == 0x7FF
+                && (header >>> 19 & 0x3) == 3          // MPEG-1
+                && (header >>> 17 & 0x3) == 1          // Layer III
+                && BITRATES[header >>> 12 & 0xF] != 0
+                && SAMPLE_RATES[header >>> 10 & 0x3] != 0
+                && (header & 0x3) != 2;                // reserved emphasis
+    }
+
+    // --- FLAC ---
+
+    private static Tags readFlac(Source source) throws IOException, Unsupported {
+        ByteBuffer magic = source.read(0, 4);
+        if (magic.remaining() < 4 || !ascii(magic, 0, 4).equals("fLaC")) {
+            throw new Unsupported("no fLaC marker");
+        }
+        long position = 4;
+        Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+        ByteBuffer streamInfo = null;
+        boolean last = false;
+        while (!last) {
+            ByteBuffer block = source.read(position, 4);
+            if (block.remaining() < 4) {
+                throw new Unsupported("truncated FLAC metadata");
+            }
+            int type = block.get(0) & 0x7F;
+            last = (block.get(0) & 0x80) != 0;
+            int length = block.getInt(0) & 0xFFFFFF;
+            position += 4;
+            if (type == 0) {
+                streamInfo = source.read(position, length);
+            } else if (type == 4) {
+                readVorbisComments(source.read(position, length).order(ByteOrder.LITTLE_ENDIAN), fields);
+            }
+            position += length;
+        }
+        if (streamInfo == null || streamInfo.remaining() < 18) {
+            throw new Unsupported("no STREAMINFO");
+        }
+        // 20 bits of sample rate, 3 of channels - 1, 5 of bits per sample - 1, 36 of total samples
+        int sampleRate = (streamInfo.get(10) & 0xFF) << 12 | (streamInfo.get(11) & 0xFF) << 4 | (streamInfo.get(12) & 0xF0) >>> 4;
+        int channels = (streamInfo.get(12) >>> 1 & 0x7) + 1;
+        long totalSamples = (streamInfo.get(13) & 0x0FL) << 32 | streamInfo.getInt(14) & 0xFFFFFFFFL;
+        if (sampleRate == 0) {
+            throw new Unsupported("FLAC sample rate 0");
+        }
+        if (totalSamples == 0) {
+            // Allowed by the format for streams of unknown length
+            throw new Unsupported("FLAC total samples unknown");
+        }
+        // As FlacInfoReader: seconds as a float, and the bitrate from whole kilobytes after the metadata
+        float length = (float) ((double) totalSamples / sampleRate);
+        int bitrate = (int) ((source.size - position) / 1000 * 8 / length);
+        return tags(fields, (int) length, bitrate, sampleRate, channels, "FLAC");
+    }
+
+    // Lengths are checked before anything is allocated: a corrupt one could ask for gigabytes
+    private static void readVorbisComments(ByteBuffer comments, Map<FieldKey, String> fields) throws Unsupported {
+        int position = comments.position();
+        int vendorLength = comments.getInt(position);
+        position += 4;
+        if (vendorLength < 0 || vendorLength > comments.limit() - position) {
+            throw new Unsupported("corrupt Vorbis vendor string");
+        }
+        position += vendorLength;
+        int count = comments.getInt(position);
+        position += 4;
+        for (int i = 0; i < count; i++) {
+            int length = comments.getInt(position);
+            position += 4;
+            if (length < 0 || length > comments.limit() - position) {
+                throw new Unsupported("corrupt Vorbis comment");
+            }
+            byte[] comment = new byte[length];
+            comments.get(position, comment);
+            String text = new String(comment, StandardCharsets.UTF_8);
+            int equals = text.indexOf('=');
+            if (equals > 0) {
+                FieldKey field = VORBIS_FIELDS.get(text.substring(0, equals).toUpperCase());
+                if (field != null) {
+                    fields.putIfAbsent(field, text.substring(equals + 1));
+                }
+            }
+            position += length;
+        }
+    }
+
+    // --- WAV ---
+
+    private static Tags readWav(Source source) throws IOException, Unsupported {
+        ByteBuffer riff = source.read(0, 12);
+        if (riff.remaining() < 12 || !ascii(riff, 0, 4).equals("RIFF") || !ascii(riff, 8, 4).equals("WAVE")) {
+            throw new Unsupported("no RIFF/WAVE header");
+        }
+        ByteBuffer format = null;
+        long dataSize = -1;
+        Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+        long position = 12;
+        while (position + 8 <= source.size) {
+            ByteBuffer chunk = source.read(position, 8).order(ByteOrder.LITTLE_ENDIAN);
+            String id = ascii(chunk, 0, 4);
+            long size = chunk.getInt(4) & 0xFFFFFFFFL;
+            position += 8;
+            switch (id) {
+                case "fmt " -> format = source.read(position, 16).order(ByteOrder.LITTLE_ENDIAN);
+                case "data" -> dataSize = Math.min(size, source.size - position);
+                case "LIST" -> {
+                    if (size >= 4 && ascii(source.read(position, 4), 0, 4).equals("INFO")) {
+                        readInfo(source, position + 4, position + size, fields);
+                    }
+                }
+                default -> {
+                }
+            }
+            // Chunks are padded to an even length
+            position += size + (size & 1);
+        }
+        if (format == null || format.remaining() < 16 || format.getInt(8) <= 0 || dataSize < 0) {
+            throw new Unsupported("no fmt or data chunk");
+        }
+        int channels = format.getShort(2);
+        int sampleRate = format.getInt(4);
+        int byteRate = format.getInt(8);
+        return tags(fields, (int) (dataSize / byteRate), byteRate * 8 / 1000, sampleRate, channels, "WAV");
+    }
+
+    private static void readInfo(Source source, long position, long end, Map<FieldKey, String> fields) throws IOException {
+        while (position + 8 <= end) {
+            ByteBuffer chunk = source.read(position, 8).order(ByteOrder.LITTLE_ENDIAN);
+            int size = chunk.getInt(4);
+            if (size < 0 || position + 8 + size > end) {
+                return;
+            }
+            FieldKey field = INFO_FIELDS.get(ascii(chunk, 0, 4));
+            if (field != null) {
+                ByteBuffer text = source.read(position + 8, size);
+                int length = 0;
+                while (length < text.remaining() && text.get(length) != 0) {
+                    length++;
+                }
+                byte[] value = new byte[length];
+                text.get(0, value);
+                fields.putIfAbsent(field, new String(value, StandardCharsets.UTF_8));
+            }
+            position += 8 + size + (size & 1);
+        }
+    }
+
+    // --- Reading ---
+
+    private static int syncSafe(ByteBuffer buffer, int offset) throws Unsupported {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = buffer.get(offset + i) & 0xFF;
+            if ((b & 0x80) != 0) {
+                throw new Unsupported("invalid sync-safe integer");
+            }
+            value = value << 7 | b;
+        }
+        return value;
+    }
+
+    // A fixed-width ISO-8859-1 field, up to its first NUL
+    private static String latin1(ByteBuffer buffer, int offset, int width) {
+        int length = 0;
+        while (length < width && buffer.get(offset + length) != 0) {
+            length++;
+        }
+        return ascii(buffer, offset, length);
+    }
+
+    private static String ascii(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    // The file's first HEAD_SIZE bytes, read once, and positional reads for whatever lies past them
+    private static final class Source implements AutoCloseable {
+        final FileChannel channel;
+        final long size;
+        final ByteBuffer head;
+
+        Source(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            size = channel.size();
+            head = ByteBuffer.allocate((int) Math.min(HEAD_SIZE, size));
+            fill(head, 0);
+        }
+
+        // Up to length bytes from position, fewer at the end of the file; big-endian
+        ByteBuffer read(long position, int length) throws IOException {
+            if (position < 0 || length < 0) {
+                throw new IOException("Invalid read of " + length + " bytes at " + position);
+            }
+            if (position + length <= head.limit()) {
+                return head.slice((int) position, length).order(ByteOrder.BIG_ENDIAN);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, size - position)));
+            fill(buffer, position);
+            return buffer;
+        }
+
+        private void fill(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+// What a song's file looked like when it was last parsed: size and mtime, which a directory walk
+// gets for free, and a signature of its content for recognising the file after a move or rename.
+//
+// The signature hashes three SAMPLE_SIZE slices (start, middle, end) rather than the whole file, so
+// it costs one small read per file. The start alone would not do: tracks from one album often share
+// the same ID3 header and cover art, which can run to hundreds of KB.
+public final class FileStamp {
+
+    private static final int SAMPLE_SIZE = 16 * 1024;
+
+    public final long size;
+    public final long mtime;
+    public final long signature;
+
+    public FileStamp(long size, long mtime, long signature) {
+        this.size = size;
+        this.mtime = mtime;
+        this.signature = signature;
+    }
+
+    // Reads the file's size, mtime and signature; null if it can't be read
+    public static FileStamp of(File file) {
+        try {
+            return of(file, file.length(), file.lastModified());
+        } catch (IOException e) {
+            System.err.println("Error reading file signature of " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // For when size and mtime have already come from a directory walk
+    static FileStamp of(File file, long size, long mtime) throws IOException {
+        return new FileStamp(size, mtime, signature(file, size));
+    }
+
+    // True if a file with this size and mtime is, as far as a stat can tell, the one that was stamped
+    public boolean matches(long size, long mtime) {
+        return this.size == size && this.mtime == mtime;
+    }
+
+    static long signature(File file, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (size <= 3L * SAMPLE_SIZE) {
+                for (long at = 0; at < size; at += SAMPLE_SIZE) {
+                    sample(channel, at, buffer, digest);
+                }
+            } else {
+                sample(channel, 0, buffer, digest);
+                sample(channel, size / 2 - SAMPLE_SIZE / 2, buffer, digest);
+                sample(channel, size - SAMPLE_SIZE, buffer, digest);
+            }
+        }
+        digest.update(ByteBuffer.allocate(8).putLong(0, size));
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static void sample(FileChannel channel, long position, ByteBuffer buffer, MessageDigest digest) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileStamp other)) return false;
+        return size == other.size && mtime == other.mtime && signature == other.signature;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, mtime, signature);
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size + " mtime=" + mtime + " signature=" + Long.toHexString(signature);
+    }
+}
@@ -0,0 +1,722 @@
+package com;
+
+import java.io.File;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// A LibraryStore that lives entirely on the heap, for measuring import, search and UI throughput
+// without SQLite or the user's library. It follows SqliteLibraryStore's contract: the same sort
+// order for every SortKey (binary string order, nulls as '' or 0), the same search semantics, the
+// same playlist rules, and the same LibraryEvents.
+//
+// Reads never lock: songs sit in concurrent maps, one skip list per SortKey and a word index for
+// search, and a playlist's order is an immutable list that is swapped on every change. Writes are
+// serialized on one lock, like SQLite's single writer, and every future is already complete when
+// returned. A reader running alongside a write may see part of it (a song in one index but not yet
+// another); it never sees a torn structure.
+public class InMemoryLibraryStore implements LibraryStore {
+
+    // Same cutoff as SqliteDBManager: beyond this many matches, results come in id order unranked
+    private static final int SEARCH_RANK_LIMIT = 1000;
+    // The bm25 weights SqliteDBManager.search gives the fields searchFields returns
+    private static final int[] SEARCH_WEIGHTS = {10, 5, 10, 3, 5, 1};
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private static class Playlist {
+        final String name;
+        // Replaced, never modified, so readers can use it without locking
+        volatile List<Long> order = List.of();
+        // Guarded by the store's write lock
+        final Set<Long> members = new HashSet<>();
+
+        Playlist(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Object writeLock = new Object();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, SongManager.SongInfo> byId = new ConcurrentHashMap<>();
+    private final Map<String, Long> byPath = new ConcurrentHashMap<>();
+    private final Map<SongPage.SortKey, NavigableSet<SongManager.SongInfo>> sorted = new EnumMap<>(SongPage.SortKey.class);
+    // File signature -> ids of the songs stamped with it
+    private final Map<Long, Set<Long>> bySignature = new ConcurrentHashMap<>();
+    // Normalized word -> ids of the songs whose name or artist contains it
+    private final ConcurrentSkipListMap<String, Set<Long>> words = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Playlist> playlists = new ConcurrentSkipListMap<>(LibraryCache::compareBinary);
+
+    public InMemoryLibraryStore() {
+        for (SongPage.SortKey key : SongPage.SortKey.values()) {
+            sorted.put(key, new ConcurrentSkipListSet<>(comparator(key)));
+        }
+    }
+
+    // --- Songs ---
+
+    @Override
+    public List<SongManager.SongInfo> getAllSongs() {
+        return new ArrayList<>(sorted.get(SongPage.SortKey.FILE_NAME));
+    }
+
+    @Override
+    public SongManager.SongInfo getSong(long songId) {
+        return byId.get(songId);
+    }
+
+    @Override
+    public long getSongId(String path) {
+        return path == null ? 0 : byPath.getOrDefault(path, 0L);
+    }
+
+    @Override
+    public boolean songExists(String path) {
+        return path != null && byPath.containsKey(path);
+    }
+
+    @Override
+    public Set<String> findExistingPaths(Collection<String> paths) {
+        Set<String> existing = new HashSet<>();
+        if (paths != null) {
+            for (String path : paths) {
+                if (path != null && byPath.containsKey(path)) {
+                    existing.add(path);
+                }
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public SongPage querySongs(SongPage.SortKey sortKey, SongPage.Cursor afterKey, int limit) {
+        if (afterKey != null && afterKey.sortKey != sortKey) {
+            throw new IllegalArgumentException("Cursor was created for " + afterKey.sortKey + ", not " + sortKey);
+        }
+        NavigableSet<SongManager.SongInfo> index = sorted.get(sortKey);
+        Iterable<SongManager.SongInfo> rows = afterKey == null ? index : index.tailSet(probe(afterKey), false);
+
+        List<SongManager.SongInfo> songs = new ArrayList<>(Math.max(0, limit));
+        SongPage.Cursor next = null;
+        for (SongManager.SongInfo song : rows) {
+            if (songs.size() == limit) {
+                SongManager.SongInfo last = songs.get(songs.size() - 1);
+                next = new SongPage.Cursor(sortKey, sortValue(sortKey, last), last.id);
+                break;
+            }
+            songs.add(song);
+        }
+        return new SongPage(songs, next);
+    }
+
+    @Override
+    public List<SongManager.SongInfo> search(String query, int limit) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        List<String> terms = queryTerms(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return songs;
+        }
+
+        // Start from the term with the fewest matches and filter by the others
+        List<Set<Long>> matches = new ArrayList<>();
+        for (String term : terms) {
+            Set<Long> ids = prefixMatches(term);
+            if (ids.isEmpty()) {
+                return songs;
+            }
+            matches.add(ids);
+        }
+        matches.sort(Comparator.comparingInt(Set::size));
+        List<Long> hits = new ArrayList<>();
+        for (Long id : matches.get(0)) {
+            boolean all = true;
+            for (int i = 1; i < matches.size() && all; i++) {
+                all = matches.get(i).contains(id);
+            }
+            if (all) {
+                hits.add(id);
+            }
+        }
+
+        boolean ranked = hits.size() <= SEARCH_RANK_LIMIT;
+        if (!ranked) {
+            hits.sort(null);
+            hits = hits.subList(0, Math.min(limit, hits.size()));
+        }
+        for (Long id : hits) {
+            SongManager.SongInfo song = byId.get(id);
+            if (song != null) {
+                songs.add(song);
+            }
+        }
+        if (ranked) {
+            // Stand-in for the bm25 weights in SqliteDBManager.search: each field a word hits adds its
+            // weight, and among equals the shorter name is the closer match
+            Map<Long, Integer> scores = new HashMap<>();
+            for (SongManager.SongInfo song : songs) {
+                scores.put(song.id, score(song, terms));
+            }
+            songs.sort(Comparator.comparingInt((SongManager.SongInfo s) -> -scores.get(s.id))
+                    .thenComparingInt(s -> s.fileName == null ? 0 : s.fileName.length())
+                    .thenComparingLong(s -> s.id));
+            if (songs.size() > limit) {
+                songs.subList(limit, songs.size()).clear();
+            }
+        }
+        return songs;
+    }
+
+    @Override
+    public CompletableFuture<SongManager.SongInfo> insertNewSong(SongManager.SongInfo song) {
+        if (song == null || song.path == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        SongManager.SongInfo stored;
+        synchronized (writeLock) {
+            stored = store(song);
+        }
+        if (stored != null) {
+            LibraryEventBus.publish(LibraryEvent.songsAdded(List.of(stored)));
+        }
+        return CompletableFuture.completedFuture(stored);
+    }
+
+    @Override
+    public CompletableFuture<List<SqliteDBManager.InsertResult>> insertSongsAsync(Collection<SongManager.SongInfo> songs) {
+        List<SqliteDBManager.InsertResult> results = new ArrayList<>();
+        if (songs == null || songs.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
+        }
+        List<SongManager.SongInfo> inserted = new ArrayList<>();
+        synchronized (writeLock) {
+            for (SongManager.SongInfo song : songs) {
+                if (song == null || song.path == null) {
+                    results.add(new SqliteDBManager.InsertResult(song == null ? null : song.path, song, SqliteDBManager.InsertStatus.FAILED));
+                    continue;
+                }
+                SongManager.SongInfo stored = store(song);
+                if (stored != null) {
+                    inserted.add(stored);
+                    results.add(new SqliteDBManager.InsertResult(song.path, stored, SqliteDBManager.InsertStatus.INSERTED));
+                } else {
+                    results.add(new SqliteDBManager.InsertResult(song.path, song, SqliteDBManager.InsertStatus.DUPLICATE));
+                }
+            }
+        }
+        if (!inserted.isEmpty()) {
+            LibraryEventBus.publish(LibraryEvent.songsAdded(inserted));
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    @Override
+    public Map<String, SongManager.SongInfo> getStampedSongs(Collection<String> paths) {
+        Map<String, SongManager.SongInfo> songs = new HashMap<>();
+        if (paths != null) {
+            for (String path : paths) {
+                Long id = path == null ? null : byPath.get(path);
+                SongManager.SongInfo song = id == null ? null : byId.get(id);
+                if (song != null) {
+                    songs.put(path, song);
+                }
+            }
+        }
+        return songs;
+    }
+
+    @Override
+    public List<SongManager.SongInfo> getSongsUnder(String directory) {
+        String prefix = directory.endsWith(File.separator) ? directory : directory + File.separator;
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        for (SongManager.SongInfo song : byId.values()) {
+            if (song.path.startsWith(prefix)) {
+                songs.add(song);
+            }
+        }
+        return songs;
+    }
+
+    @Override
+    public List<SongManager.SongInfo> findSongsBySignature(long size, long signature) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        for (Long id : bySignature.getOrDefault(signature, Set.of())) {
+            SongManager.SongInfo song = byId.get(id);
+            if (song != null && song.stamp != null && song.stamp.size == size) {
+                songs.add(song);
+            }
+        }
+        return songs;
+    }
+
+    @Override
+    public CompletableFuture<List<SqliteDBManager.InsertResult>> updateSongsAsync(Collection<SongManager.SongInfo> songs) {
+        List<SqliteDBManager.InsertResult> results = new ArrayList<>();
+        if (songs == null || songs.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
+        }
+        List<SongManager.SongInfo> updated = new ArrayList<>();
+        synchronized (writeLock) {
+            for (SongManager.SongInfo song : songs) {
+                SongManager.SongInfo old = song.path == null ? null : byId.get(song.id);
+                Long owner = old == null ? null : byPath.get(song.path);
+                // The new path must be free or already this song's, as the UNIQUE constraint would insist
+                if (old == null || owner != null && owner != song.id) {
+                    results.add(new SqliteDBManager.InsertResult(song.path, song, SqliteDBManager.InsertStatus.FAILED));
+                    continue;
+                }
+                // As in the songs table, a song without metadata keeps what was stored
+                SongManager.SongInfo stored = new SongManager.SongInfo(song.id, song.fileName, song.path, song.artist,
+                        song.duration == null ? 0 : song.duration, song.stamp, song.metadata != null ? song.metadata : old.metadata);
+                unindex(old);
+                index(stored);
+                updated.add(stored);
+                results.add(new SqliteDBManager.InsertResult(song.path, stored, SqliteDBManager.InsertStatus.UPDATED));
+            }
+        }
+        if (!updated.isEmpty()) {
+            LibraryEventBus.publish(LibraryEvent.songsUpdated(updated));
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    @Override
+    public List<SongManager.SongInfo> getSongsWithMetadataVersion(int version, long afterId, int limit) {
+        // A scan rather than an index: the backfill runs once per version bump, and stores built for
+        // measuring are filled by fresh imports that already carry current metadata
+        TreeMap<Long, SongManager.SongInfo> matching = new TreeMap<>();
+        for (SongManager.SongInfo song : byId.values()) {
+            if (song.id > afterId && metadataVersion(song) == version) {
+                matching.put(song.id, song);
+                if (matching.size() > limit) {
+                    matching.pollLastEntry();
+                }
+            }
+        }
+        return new ArrayList<>(matching.values());
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateMetadataAsync(Collection<SongManager.SongInfo> songs) {
+        if (songs == null || songs.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        int updated = 0;
+        synchronized (writeLock) {
+            for (SongManager.SongInfo song : songs) {
+                SongManager.SongInfo old = byId.get(song.id);
+                if (old == null) {
+                    continue;
+                }
+                SongManager.SongInfo stored = new SongManager.SongInfo(old.id, old.fileName, old.path, old.artist,
+                        old.duration, song.stamp, song.metadata);
+                unindex(old);
+                index(stored);
+                updated++;
+            }
+        }
+        return CompletableFuture.completedFuture(updated);
+    }
+
+    private static int metadataVersion(SongManager.SongInfo song) {
+        return song.metadata == null ? 0 : SongMetadata.VERSION;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteSong(SongManager.SongInfo song) {
+        return deleteSongs(List.of(idOf(song))).thenApply(removed -> removed > 0);
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteSongs(Collection<Long> songIds) {
+        if (songIds == null || songIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<Long> ids = List.copyOf(songIds);
+        Set<Long> gone = new LinkedHashSet<>();
+        synchronized (writeLock) {
+            for (Long id : ids) {
+                SongManager.SongInfo song = byId.remove(id);
+                if (song == null) {
+                    continue;
+                }
+                unindex(song);
+                gone.add(id);
+            }
+            // Playlist membership goes with the song, like ON DELETE CASCADE
+            if (!gone.isEmpty()) {
+                for (Playlist playlist : playlists.values()) {
+                    if (playlist.members.removeAll(gone)) {
+                        List<Long> order = new ArrayList<>(playlist.order);
+                        order.removeAll(gone);
+                        playlist.order = List.copyOf(order);
+                    }
+                }
+            }
+        }
+        // Only the ids this call removed, as SqliteDBManager.deleteSongs reports them
+        if (!gone.isEmpty()) {
+            LibraryEventBus.publish(LibraryEvent.songsRemoved(gone));
+        }
+        return CompletableFuture.completedFuture(gone.size());
+    }
+
+    // --- Playlists ---
+
+    @Override
+    public List<SqliteDBManager.PlaylistInfo> getAllPlaylists() {
+        List<SqliteDBManager.PlaylistInfo> infos = new ArrayList<>();
+        for (Playlist playlist : playlists.values()) {
+            List<Long> order = playlist.order;
+            int duration = 0;
+            for (Long id : order) {
+                SongManager.SongInfo song = byId.get(id);
+                if (song != null && song.duration != null) {
+                    duration += song.duration;
+                }
+            }
+            infos.add(new SqliteDBManager.PlaylistInfo(playlist.name, order.size(), duration));
+        }
+        return infos;
+    }
+
+    @Override
+    public List<SongManager.SongInfo> getSongsForPlaylist(String playlistName) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        Playlist playlist = playlistName == null ? null : playlists.get(playlistName);
+        if (playlist != null) {
+            for (Long id : playlist.order) {
+                SongManager.SongInfo song = byId.get(id);
+                if (song != null) {
+                    songs.add(song);
+                }
+            }
+        }
+        return songs;
+    }
+
+    @Override
+    public CompletableFuture<Void> insertDefaultPlaylist() {
+        synchronized (writeLock) {
+            playlists.putIfAbsent("liked_songs", new Playlist("liked_songs"));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> insertNewPlaylist(String name) {
+        if (name != null) {
+            synchronized (writeLock) {
+                playlists.putIfAbsent(name, new Playlist(name));
+            }
+            LibraryEventBus.publish(LibraryEvent.playlistChanged(name));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> deletePlaylist(String name) {
+        if (name != null) {
+            synchronized (writeLock) {
+                playlists.remove(name);
+            }
+            LibraryEventBus.publish(LibraryEvent.playlistChanged(name));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> addSongToPlaylist(SongManager.SongInfo song, String playlistName) {
+        return addSongsToPlaylist(playlistName, List.of(idOf(song))).thenApply(added -> null);
+    }
+
+    @Override
+    public CompletableFuture<Integer> addSongsToPlaylist(String playlistName, Collection<Long> songIds) {
+        if (songIds == null || songIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return CompletableFuture.completedFuture(insertIntoPlaylist(playlistName, songIds, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeSongFromPlaylist(SongManager.SongInfo song, String playlistName) {
+        return removeSongsFromPlaylist(playlistName, List.of(idOf(song))).thenApply(removed -> null);
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeSongsFromPlaylist(String playlistName, Collection<Long> songIds) {
+        if (songIds == null || songIds.isEmpty() || playlistName == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<Long> ids = List.copyOf(songIds);
+        int removed = 0;
+        synchronized (writeLock) {
+            Playlist playlist = playlists.get(playlistName);
+            if (playlist != null) {
+                Set<Long> gone = new HashSet<>();
+                for (Long id : ids) {
+                    if (playlist.members.remove(id)) {
+                        gone.add(id);
+                    }
+                }
+                if (!gone.isEmpty()) {
+                    List<Long> order = new ArrayList<>(playlist.order);
+                    order.removeAll(gone);
+                    playlist.order = List.copyOf(order);
+                    removed = gone.size();
+                }
+            }
+        }
+        if (removed > 0) {
+            LibraryEventBus.publish(LibraryEvent.playlistSongsRemoved(playlistName, ids));
+        }
+        return CompletableFuture.completedFuture(removed);
+    }
+
+    @Override
+    public CompletableFuture<Integer> insertSongsIntoPlaylist(String playlistName, List<Long> songIds, int index) {
+        if (songIds == null || songIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return CompletableFuture.completedFuture(insertIntoPlaylist(playlistName, songIds, index));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> moveSongInPlaylist(String playlistName, int from, int to) {
+        boolean moved = false;
+        synchronized (writeLock) {
+            Playlist playlist = playlistName == null ? null : playlists.get(playlistName);
+            if (playlist != null) {
+                List<Long> order = new ArrayList<>(playlist.order);
+                int target = Math.max(0, Math.min(to, order.size() - 1));
+                if (from >= 0 && from < order.size() && target != from) {
+                    order.add(target, order.remove(from));
+                    playlist.order = List.copyOf(order);
+                    moved = true;
+                }
+            }
+        }
+        if (moved) {
+            LibraryEventBus.publish(LibraryEvent.playlistChanged(playlistName));
+        }
+        return CompletableFuture.completedFuture(moved);
+    }
+
+    // Inserts the songs that exist and aren't members yet at index (clamped), in the given order.
+    // Returns the number added.
+    private int insertIntoPlaylist(String playlistName, Collection<Long> songIds, int index) {
+        int added = 0;
+        synchronized (writeLock) {
+            Playlist playlist = playlistName == null ? null : playlists.get(playlistName);
+            if (playlist == null) {
+                return 0;
+            }
+            List<Long> fresh = new ArrayList<>();
+            for (Long id : new LinkedHashSet<>(songIds)) {
+                if (id != null && byId.containsKey(id) && playlist.members.add(id)) {
+                    fresh.add(id);
+                }
+            }
+            if (!fresh.isEmpty()) {
+                List<Long> order = new ArrayList<>(playlist.order);
+                order.addAll(Math.max(0, Math.min(index, order.size())), fresh);
+                playlist.order = List.copyOf(order);
+                added = fresh.size();
+            }
+        }
+        if (added > 0) {
+            LibraryEventBus.publish(LibraryEvent.playlistChanged(playlistName));
+        }
+        return added;
+    }
+
+    // --- Indexes ---
+
+    // Adds the song under a new id, or returns null if its path is taken. Caller holds the write lock.
+    private SongManager.SongInfo store(SongManager.SongInfo song) {
+        if (byPath.containsKey(song.path)) {
+            return null;
+        }
+        // Stored durations are never null, as in the songs table
+        SongManager.SongInfo stored = new SongManager.SongInfo(nextId.getAndIncrement(), song.fileName, song.path,
+                song.artist, song.duration == null ? 0 : song.duration, song.stamp, song.metadata);
+        index(stored);
+        return stored;
+    }
+
+    // Caller holds the write lock
+    private void index(SongManager.SongInfo song) {
+        byId.put(song.id, song);
+        for (NavigableSet<SongManager.SongInfo> index : sorted.values()) {
+            index.add(song);
+        }
+        for (String word : words(song)) {
+            words.computeIfAbsent(word, w -> ConcurrentHashMap.newKeySet()).add(song.id);
+        }
+        if (song.stamp != null) {
+            bySignature.computeIfAbsent(song.stamp.signature, s -> ConcurrentHashMap.newKeySet()).add(song.id);
+        }
+        // Published last: once the path is visible, so is everything else about the song
+        byPath.put(song.path, song.id);
+    }
+
+    // Everything but byId, which the caller takes care of. Caller holds the write lock.
+    private void unindex(SongManager.SongInfo song) {
+        byPath.remove(song.path);
+        for (NavigableSet<SongManager.SongInfo> index : sorted.values()) {
+            index.remove(song);
+        }
+        for (String word : words(song)) {
+            words.computeIfPresent(word, (w, set) -> {
+                set.remove(song.id);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        if (song.stamp != null) {
+            bySignature.computeIfPresent(song.stamp.signature, (k, set) -> {
+                set.remove(song.id);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private long idOf(SongManager.SongInfo song) {
+        return song.id != 0 ? song.id : getSongId(song.path);
+    }
+
+    // Orders by the same expression as SortKey, then id, like the SQLite indexes
+    private static Comparator<SongManager.SongInfo> comparator(SongPage.SortKey key) {
+        Comparator<SongManager.SongInfo> byKey = switch (key) {
+            case FILE_NAME -> Comparator.comparing((SongManager.SongInfo s) -> s.fileName,
+                    Comparator.nullsFirst(LibraryCache::compareBinary));
+            case ARTIST -> Comparator.comparing((SongManager.SongInfo s) -> s.artist == null ? "" : s.artist,
+                    LibraryCache::compareBinary);
+            case DURATION -> Comparator.comparingInt((SongManager.SongInfo s) -> s.duration == null ? 0 : s.duration);
+        };
+        return byKey.thenComparingLong(s -> s.id);
+    }
+
+    private static Object sortValue(SongPage.SortKey key, SongManager.SongInfo song) {
+        return switch (key) {
+            case FILE_NAME -> song.fileName;
+            case ARTIST -> song.artist == null ? "" : song.artist;
+            case DURATION -> song.duration == null ? 0 : song.duration;
+        };
+    }
+
+    // A stand-in song that sorts exactly where the cursor points
+    private static SongManager.SongInfo probe(SongPage.Cursor cursor) {
+        return switch (cursor.sortKey) {
+            case FILE_NAME -> new SongManager.SongInfo(cursor.id, (String) cursor.sortValue, null, null, null);
+            case ARTIST -> new SongManager.SongInfo(cursor.id, null, null, (String) cursor.sortValue, null);
+            case DURATION -> new SongManager.SongInfo(cursor.id, null, null, null, ((Number) cursor.sortValue).intValue());
+        };
+    }
+
+    // --- Search ---
+
+    // Ids of songs with a word starting with prefix
+    private Set<Long> prefixMatches(String prefix) {
+        Map<String, Set<Long>> range = words.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        if (range.size() == 1) {
+            return range.values().iterator().next();
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Set<Long> set : range.values()) {
+            ids.addAll(set);
+        }
+        return ids;
+    }
+
+    private static int score(SongManager.SongInfo song, List<String> terms) {
+        List<String> fields = searchFields(song);
+        int score = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            List<String> fieldWords = tokenize(fields.get(i));
+            for (String term : terms) {
+                if (fieldWords.stream().anyMatch(w -> w.startsWith(term))) {
+                    score += SEARCH_WEIGHTS[i];
+                }
+            }
+        }
+        return score;
+    }
+
+    private static Set<String> words(SongManager.SongInfo song) {
+        Set<String> words = new HashSet<>();
+        for (String field : searchFields(song)) {
+            words.addAll(tokenize(field));
+        }
+        return words;
+    }
+
+    // The columns of songs_fts, in order
+    private static List<String> searchFields(SongManager.SongInfo song) {
+        SongMetadata metadata = song.metadata != null ? song.metadata : SongMetadata.EMPTY;
+        return Arrays.asList(song.fileName, song.artist, metadata.title, metadata.album, metadata.albumArtist,
+                metadata.genre);
+    }
+
+    // Each query word is split the same way as the indexed text. Unlike FTS5, a query word that splits
+    // into several ("rock'n") matches them anywhere in the song, not only as adjacent words.
+    private static List<String> queryTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query != null) {
+            for (String term : tokenize(query)) {
+                if (!terms.contains(term)) {
+                    terms.add(term);
+                }
+            }
+        }
+        return terms;
+    }
+
+    // Approximates the unicode61 tokenizer with remove_diacritics: runs of letters and digits,
+    // accents stripped, lower-cased
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String folded = isAscii(text) ? text : DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        int start = -1;
+        for (int i = 0; i <= folded.length(); ) {
+            int cp = i < folded.length() ? folded.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(cp)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(folded.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i += i < folded.length() ? Character.charCount(cp) : 1;
+        }
+        return tokens;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,275 @@
+package com;
+
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Rotating snapshots of library.db in <app dir>/backups, taken with SQLite's online backup API.
+// The copy runs on its own thread and connection in small page steps, inside one read transaction:
+// under WAL that never blocks the writer or the readers, and writes committed meanwhile can't force
+// the copy to start over. Every snapshot is integrity-checked before it counts, and again before it
+// is restored, so a restore never replaces the library with a damaged file.
+public class LibraryBackup {
+
+    public static class Snapshot {
+        public final File file;
+        public final long createdAt;
+        public final long bytes;
+
+        Snapshot(File file) {
+            this.file = file;
+            this.createdAt = file.lastModified();
+            this.bytes = file.length();
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + " (" + bytes / 1024 + " KB)";
+        }
+    }
+
+    private static final String PREFIX = "library-";
+    private static final String SUFFIX = ".db";
+    private static final int MAX_SNAPSHOTS = 5;
+    private static final long SNAPSHOT_INTERVAL_HOURS = 24;
+    // Leave startup (verification, cache preload) alone before the first check
+    private static final long INITIAL_DELAY_MINUTES = 2;
+    private static final long CHECK_INTERVAL_MINUTES = 60;
+    // 64 pages of 4 KB per step, then a short pause so playback keeps the disk
+    private static final int PAGES_PER_STEP = 64;
+    private static final long STEP_PAUSE_MS = 2;
+    // Passed to the backup API: how long to sleep on SQLITE_BUSY and how often before giving up
+    private static final int BUSY_SLEEP_MS = 100;
+    private static final int BUSY_RETRIES = 10;
+
+    // Not SqliteDBManager.getAppDir(): scheduling at startup must not open the database on the UI thread
+    private static final String APP_DIR = System.getProperty("user.home") + File.separator + ".LofiMusicPlayer";
+    private static final File BACKUP_DIR = new File(APP_DIR, "backups");
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LibraryBackup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // Takes a snapshot whenever the newest one is older than SNAPSHOT_INTERVAL_HOURS
+    public static void scheduleSnapshots() {
+        EXECUTOR.scheduleWithFixedDelay(() -> {
+            List<Snapshot> snapshots = listSnapshots();
+            long age = snapshots.isEmpty() ? Long.MAX_VALUE : System.currentTimeMillis() - snapshots.get(0).createdAt;
+            if (age >= TimeUnit.HOURS.toMillis(SNAPSHOT_INTERVAL_HOURS)) {
+                try {
+                    System.out.println("Library snapshot: " + snapshot());
+                } catch (SQLException | IOException e) {
+                    System.err.println("Error taking library snapshot: " + e.getMessage());
+                }
+            }
+        }, INITIAL_DELAY_MINUTES, CHECK_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public static CompletableFuture<Snapshot> snapshotAsync() {
+        CompletableFuture<Snapshot> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            try {
+                future.complete(snapshot());
+            } catch (SQLException | IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // Copies the library into a new verified snapshot on the calling thread, then drops the oldest
+    // snapshots beyond MAX_SNAPSHOTS
+    public static Snapshot snapshot() throws SQLException, IOException {
+        BACKUP_DIR.mkdirs();
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File target = new File(BACKUP_DIR, PREFIX + stamp + SUFFIX);
+        File partial = new File(BACKUP_DIR, target.getName() + ".part");
+        Files.deleteIfExists(partial.toPath());
+
+        long start = System.currentTimeMillis();
+        try (Connection conn = open(new File(SqliteDBManager.getDbPath()))) {
+            // Pin one read snapshot for the whole copy; without it every commit in between restarts the backup
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_schema")) {
+                rs.next();
+            }
+            int rc = conn.unwrap(SQLiteConnection.class).getDatabase().backup("main", partial.getAbsolutePath(),
+                    (remaining, pageCount) -> pause(), BUSY_SLEEP_MS, BUSY_RETRIES, PAGES_PER_STEP);
+            conn.rollback();
+            if (!finished(rc)) {
+                throw new SQLException("Backup stopped with SQLite result code " + rc);
+            }
+            // The copy inherits WAL mode; a snapshot is a single self-contained file
+            try (Connection copy = DriverManager.getConnection("jdbc:sqlite:" + partial.getAbsolutePath());
+                 Statement stmt = copy.createStatement()) {
+                stmt.execute("PRAGMA journal_mode = DELETE");
+            }
+        } catch (SQLException e) {
+            Files.deleteIfExists(partial.toPath());
+            throw e;
+        }
+
+        String problem = integrityProblem(partial);
+        if (problem != null) {
+            Files.deleteIfExists(partial.toPath());
+            throw new SQLException("Snapshot failed its integrity check: " + problem);
+        }
+        Files.move(partial.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Library snapshot took " + (System.currentTimeMillis() - start) + " ms");
+
+        List<Snapshot> snapshots = listSnapshots();
+        for (int i = MAX_SNAPSHOTS; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i).file.toPath());
+        }
+        return new Snapshot(target);
+    }
+
+    // Newest first
+    public static List<Snapshot> listSnapshots() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        File[] files = BACKUP_DIR.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                snapshots.add(new Snapshot(file));
+            }
+        }
+        // Names carry the timestamp, so they sort by age even if mtimes were touched
+        snapshots.sort(Comparator.comparing((Snapshot s) -> s.file.getName()).reversed());
+        return snapshots;
+    }
+
+    // Checks the snapshot, then copies it over the live library in one step on the writer thread
+    // (queued writes commit first, later ones land on the restored data). Brings the restored schema
+    // up to date and announces LIBRARY_REPLACED. Completes with false if the snapshot is damaged.
+    public static CompletableFuture<Boolean> restore(Snapshot snapshot) {
+        CompletableFuture<Boolean> verified = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            String problem = integrityProblem(snapshot.file);
+            if (problem != null) {
+                System.err.println("Not restoring " + snapshot + ": " + problem);
+            }
+            verified.complete(problem == null);
+        });
+        return verified.thenCompose(ok -> {
+            if (!ok) {
+                return CompletableFuture.completedFuture(false);
+            }
+            return SqliteDBManager.writeExclusive(conn -> {
+                // -1 pages per step: the writer is ours until this returns, so copy everything at once
+                int rc = conn.unwrap(SQLiteConnection.class).getDatabase().restore("main",
+                        snapshot.file.getAbsolutePath(), null, BUSY_SLEEP_MS, BUSY_RETRIES, -1);
+                if (!finished(rc)) {
+                    throw new SQLException("Restore stopped with SQLite result code " + rc);
+                }
+                SchemaMigrations.migrate(conn, SqliteDBManager.getAppDir());
+                return true;
+            }).thenApply(restored -> {
+                SqliteDBManager.committed(LibraryEvent.libraryReplaced());
+                System.out.println("Restored library from " + snapshot);
+                return restored;
+            }).exceptionally(e -> {
+                System.err.println("Error restoring library: " + e.getMessage());
+                return false;
+            });
+        });
+    }
+
+    // Startup path for a library that can't be opened: moves the damaged file aside (it is never
+    // deleted) and puts the newest snapshot that passes its integrity check in its place.
+    // Nothing may have the database open. Returns false if there was no usable snapshot.
+    static boolean recover(File db) {
+        for (Snapshot snapshot : listSnapshots()) {
+            String problem = integrityProblem(snapshot.file);
+            if (problem != null) {
+                System.err.println("Skipping damaged snapshot " + snapshot + ": " + problem);
+                continue;
+            }
+            try {
+                String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+                Files.move(db.toPath(), new File(db.getPath() + ".damaged-" + stamp).toPath());
+                // A WAL left behind belongs to the damaged file and must not be replayed into the snapshot
+                Files.deleteIfExists(new File(db.getPath() + "-wal").toPath());
+                Files.deleteIfExists(new File(db.getPath() + "-shm").toPath());
+                Files.copy(snapshot.file.toPath(), db.toPath());
+                System.out.println("Recovered library from " + snapshot);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error recovering library from " + snapshot + ": " + e.getMessage());
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // True for errors that mean the file itself is damaged, as opposed to locked or missing
+    static boolean isCorruption(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLiteException sqlite) {
+                int primary = sqlite.getResultCode().code & 0xff;
+                if (primary == SQLiteErrorCode.SQLITE_CORRUPT.code || primary == SQLiteErrorCode.SQLITE_NOTADB.code) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // null if PRAGMA integrity_check passes, otherwise its first complaint
+    static String integrityProblem(File file) {
+        if (!file.isFile()) {
+            return "missing";
+        }
+        // Not read-only: SQLite can't open a WAL-mode file read-only without its -shm
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA integrity_check(1)")) {
+            String result = rs.next() ? rs.getString(1) : "no result";
+            return "ok".equals(result) ? null : result;
+        } catch (SQLException e) {
+            return e.getMessage();
+        }
+    }
+
+    // Read-only connection of our own, so a long copy doesn't hold one of the pool's
+    private static Connection open(File file) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_SLEEP_MS * BUSY_RETRIES);
+        return DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath(), config.toProperties());
+    }
+
+    // The driver reports a completed copy as SQLITE_OK rather than SQLITE_DONE
+    private static boolean finished(int rc) {
+        return rc == SQLiteErrorCode.SQLITE_OK.code || rc == SQLiteErrorCode.SQLITE_DONE.code;
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(STEP_PAUSE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
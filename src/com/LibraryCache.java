@@ -0,0 +1,295 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Read-through cache in front of SqliteDBManager's library and playlist queries.
+// It holds the whole song list (ordered like SortKey.FILE_NAME, indexed by id and path) and the
+// membership of recently opened playlists, all as CompactSongLists. Writes keep it current by applying their LibraryEvent
+// right after commit, before anyone waiting on the write is released, so a page that reads back
+// its own change never sees stale data. Everything is bounded by MAX_BYTES (a rough estimate of
+// retained heap); playlists are evicted least-recently-used first, and a library too big for the
+// budget is simply not cached.
+public class LibraryCache {
+
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long estimatedBytes;
+        public final int songs;
+        public final int playlists;
+
+        Stats(long hits, long misses, long evictions, long estimatedBytes, int songs, int playlists) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.estimatedBytes = estimatedBytes;
+            this.songs = songs;
+            this.playlists = playlists;
+        }
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d (%.1f%% hit), evictions=%d, songs=%d, playlists=%d, ~%d KB",
+                    hits, misses, hitRate() * 100, evictions, songs, playlists, estimatedBytes / 1024);
+        }
+    }
+
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+
+    // null until the library is loaded (or when it doesn't fit)
+    private static CompactSongList allSongs;
+
+    private static final LinkedHashMap<String, CompactSongList> playlists = new LinkedHashMap<>(16, 0.75f, true);
+    private static long playlistBytes = 0;
+
+    // Bumped by every applied change; a load that started before the bump is not stored
+    private static long generation = 0;
+
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+
+    public static synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, songBytes() + playlistBytes,
+                allSongs == null ? 0 : allSongs.size(), playlists.size());
+    }
+
+    public static synchronized void clear() {
+        generation++;
+        dropSongs();
+        playlists.clear();
+        playlistBytes = 0;
+    }
+
+    static synchronized long generation() {
+        return generation;
+    }
+
+    // --- Reads: each returns null on a miss. Lists are compact copies the caller may modify. ---
+
+    static synchronized List<SongManager.SongInfo> getAllSongs() {
+        if (allSongs == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return allSongs.copy();
+    }
+
+    static synchronized SongManager.SongInfo getSong(long id) {
+        if (allSongs == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return allSongs.getById(id);
+    }
+
+    // Id of the song at path, 0 if the (cached) library has no such song, null on a miss
+    static synchronized Long getSongId(String path) {
+        if (allSongs == null) {
+            misses++;
+            return null;
+        }
+        // With the whole library loaded, a miss in the map is a definite "no such song"
+        hits++;
+        return allSongs.idOfPath(path);
+    }
+
+    // Keyset page over the cached library in SortKey.FILE_NAME order, or null if the library isn't cached
+    static synchronized SongPage getPage(SongPage.Cursor afterKey, int limit) {
+        if (allSongs == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        int start = afterKey == null ? 0 : upperBound((String) afterKey.sortValue, afterKey.id);
+        int end = Math.min(start + limit, allSongs.size());
+        List<SongManager.SongInfo> songs = new ArrayList<>(allSongs.subList(start, end));
+        SongPage.Cursor next = null;
+        if (end < allSongs.size() && !songs.isEmpty()) {
+            SongManager.SongInfo last = songs.get(songs.size() - 1);
+            next = new SongPage.Cursor(SongPage.SortKey.FILE_NAME, last.fileName, last.id);
+        }
+        return new SongPage(songs, next);
+    }
+
+    static synchronized List<SongManager.SongInfo> getPlaylist(String name) {
+        CompactSongList songs = playlists.get(name);
+        if (songs == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return songs.copy();
+    }
+
+    // --- Loads, stored only if nothing changed since `since` was taken ---
+
+    static synchronized void putAllSongs(List<SongManager.SongInfo> songs, long since) {
+        if (since != generation) return;
+        CompactSongList compact = new CompactSongList(songs);
+        if (compact.estimatedBytes() > MAX_BYTES) {
+            return;
+        }
+        allSongs = compact;
+        evictPlaylists();
+    }
+
+    static synchronized void putPlaylist(String name, List<SongManager.SongInfo> songs, long since) {
+        if (since != generation) return;
+        CompactSongList compact = new CompactSongList(songs);
+        CompactSongList previous = playlists.put(name, compact);
+        if (previous != null) {
+            playlistBytes -= previous.estimatedBytes();
+        }
+        playlistBytes += compact.estimatedBytes();
+        evictPlaylists();
+    }
+
+    // --- Invalidation, called by the write paths after commit ---
+
+    static synchronized void apply(LibraryEvent event) {
+        generation++;
+        switch (event.type) {
+            case SONGS_ADDED -> {
+                for (SongManager.SongInfo song : event.songs) {
+                    addSong(song);
+                }
+                if (songBytes() > MAX_BYTES) {
+                    dropSongs();
+                }
+            }
+            case SONGS_REMOVED -> {
+                Set<Long> ids = new HashSet<>(event.ids);
+                for (Long id : ids) {
+                    removeSong(id);
+                }
+                removeFromPlaylists(null, ids);
+            }
+            case SONGS_UPDATED -> {
+                for (SongManager.SongInfo song : event.songs) {
+                    removeSong(song.id);
+                    addSong(song);
+                    for (CompactSongList members : playlists.values()) {
+                        int index = members.indexOf(song);
+                        if (index >= 0) {
+                            playlistBytes -= members.estimatedBytes();
+                            members.set(index, song);
+                            playlistBytes += members.estimatedBytes();
+                        }
+                    }
+                }
+            }
+            case PLAYLIST_CHANGED -> {
+                if (event.isRemovalOnly()) {
+                    removeFromPlaylists(event.playlistName, new HashSet<>(event.ids));
+                } else {
+                    // Additions and moves need the stored order; read the playlist again next time
+                    CompactSongList dropped = playlists.remove(event.playlistName);
+                    if (dropped != null) {
+                        playlistBytes -= dropped.estimatedBytes();
+                    }
+                }
+            }
+            case LIBRARY_REPLACED -> {
+                dropSongs();
+                playlists.clear();
+                playlistBytes = 0;
+            }
+        }
+    }
+
+    private static void addSong(SongManager.SongInfo song) {
+        if (allSongs == null || allSongs.getById(song.id) != null) return;
+        allSongs.add(upperBound(song.fileName, song.id), song);
+    }
+
+    private static void removeSong(long id) {
+        if (allSongs == null) return;
+        SongManager.SongInfo song = allSongs.getById(id);
+        if (song == null) return;
+        int index = upperBound(song.fileName, song.id) - 1;
+        if (index < 0 || allSongs.id(index) != id) {
+            index = allSongs.indexOf(song);
+        }
+        allSongs.remove(index);
+    }
+
+    private static void removeFromPlaylists(String name, Set<Long> ids) {
+        for (Map.Entry<String, CompactSongList> entry : playlists.entrySet()) {
+            if (name == null || name.equals(entry.getKey())) {
+                CompactSongList members = entry.getValue();
+                long before = members.estimatedBytes();
+                for (int i = members.size() - 1; i >= 0; i--) {
+                    if (ids.contains(members.id(i))) {
+                        members.remove(i);
+                    }
+                }
+                playlistBytes += members.estimatedBytes() - before;
+            }
+        }
+    }
+
+    private static void dropSongs() {
+        allSongs = null;
+    }
+
+    private static long songBytes() {
+        return allSongs == null ? 0 : allSongs.estimatedBytes();
+    }
+
+    private static void evictPlaylists() {
+        Iterator<CompactSongList> it = playlists.values().iterator();
+        while (songBytes() + playlistBytes > MAX_BYTES && it.hasNext()) {
+            playlistBytes -= it.next().estimatedBytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    // First index in allSongs that sorts after (fileName, id)
+    private static int upperBound(String fileName, long id) {
+        int lo = 0;
+        int hi = allSongs.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareBinary(allSongs.fileName(mid), fileName);
+            if (cmp < 0 || (cmp == 0 && allSongs.id(mid) <= id)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // SQLite's BINARY collation compares UTF-8 bytes, which is code point order.
+    // String.compareTo compares UTF-16 units and disagrees above U+FFFF.
+    public static int compareBinary(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
@@ -0,0 +1,75 @@
+package com;
+
+import java.util.Collection;
+import java.util.List;
+
+// A committed change to the library, published through LibraryEventBus so views can patch
+// the rows involved instead of re-querying everything.
+public class LibraryEvent {
+
+    public enum Type {
+        SONGS_ADDED,
+        SONGS_REMOVED,
+        SONGS_UPDATED,
+        // Plays of these songs were added to the play history, changing their play counts
+        PLAYS_RECORDED,
+        // Membership or order of one playlist changed, or the playlist was created or deleted
+        PLAYLIST_CHANGED,
+        // The whole database was swapped (restored from a snapshot); anything loaded from it is stale
+        LIBRARY_REPLACED
+    }
+
+    public final Type type;
+    // Added or updated songs, or songs added to the playlist for PLAYLIST_CHANGED
+    public final List<SongManager.SongInfo> songs;
+    // Ids of removed or played songs, or of songs taken out of the playlist for PLAYLIST_CHANGED
+    public final List<Long> ids;
+    public final String playlistName;
+
+    private LibraryEvent(Type type, List<SongManager.SongInfo> songs, List<Long> ids, String playlistName) {
+        this.type = type;
+        this.songs = songs;
+        this.ids = ids;
+        this.playlistName = playlistName;
+    }
+
+    public static LibraryEvent songsAdded(Collection<SongManager.SongInfo> songs) {
+        return new LibraryEvent(Type.SONGS_ADDED, List.copyOf(songs), List.of(), null);
+    }
+
+    public static LibraryEvent songsRemoved(Collection<Long> ids) {
+        return new LibraryEvent(Type.SONGS_REMOVED, List.of(), List.copyOf(ids), null);
+    }
+
+    public static LibraryEvent songsUpdated(Collection<SongManager.SongInfo> songs) {
+        return new LibraryEvent(Type.SONGS_UPDATED, List.copyOf(songs), List.of(), null);
+    }
+
+    public static LibraryEvent playsRecorded(Collection<Long> ids) {
+        return new LibraryEvent(Type.PLAYS_RECORDED, List.of(), List.copyOf(ids), null);
+    }
+
+    // Songs removed from the playlist, with nothing else changing; views can drop just those rows
+    public static LibraryEvent playlistSongsRemoved(String playlistName, Collection<Long> ids) {
+        return new LibraryEvent(Type.PLAYLIST_CHANGED, List.of(), List.copyOf(ids), playlistName);
+    }
+
+    // Any other playlist change (songs added or moved, playlist created or deleted); views reload that playlist
+    public static LibraryEvent playlistChanged(String playlistName) {
+        return new LibraryEvent(Type.PLAYLIST_CHANGED, List.of(), List.of(), playlistName);
+    }
+
+    public static LibraryEvent libraryReplaced() {
+        return new LibraryEvent(Type.LIBRARY_REPLACED, List.of(), List.of(), null);
+    }
+
+    // True if the only thing that happened is that ids left the playlist
+    public boolean isRemovalOnly() {
+        return type == Type.PLAYLIST_CHANGED && songs.isEmpty() && !ids.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return type + (playlistName != null ? " " + playlistName : "") + " songs=" + songs.size() + " ids=" + ids.size();
+    }
+}
@@ -0,0 +1,40 @@
+package com;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Fan-out of LibraryEvents to subscribers. Events are published once the write is committed and
+// delivered in order on a single background thread, so a slow subscriber never holds up the writer.
+// Subscribers that touch the UI must hop over with Platform.runLater.
+public class LibraryEventBus {
+
+    private static final List<Consumer<LibraryEvent>> SUBSCRIBERS = new CopyOnWriteArrayList<>();
+    private static final ExecutorService DISPATCHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LibraryEvents");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static void subscribe(Consumer<LibraryEvent> subscriber) {
+        SUBSCRIBERS.add(subscriber);
+    }
+
+    public static void unsubscribe(Consumer<LibraryEvent> subscriber) {
+        SUBSCRIBERS.remove(subscriber);
+    }
+
+    public static void publish(LibraryEvent event) {
+        DISPATCHER.execute(() -> {
+            for (Consumer<LibraryEvent> subscriber : SUBSCRIBERS) {
+                try {
+                    subscriber.accept(event);
+                } catch (RuntimeException e) {
+                    System.err.println("Error delivering library event " + event + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package com;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+// The whole library as a play queue, in SortKey order, without reading all of it up front. It starts
+// from the songs a page has already loaded and MusicPlayerManager fetches the next page from the
+// store when playback runs past the last of them. It is a snapshot taken when playback starts:
+// songs added later aren't in it, and one removed since fails to play like any missing file.
+// For the FX thread, like the rest of the player.
+public class LibraryQueue extends AbstractList<SongManager.SongInfo> {
+
+    private final SongPage.SortKey sortKey;
+    private final int pageSize;
+    private final List<SongManager.SongInfo> songs;
+    private SongPage.Cursor next;
+
+    // loaded is copied; next is the cursor of the page that follows it, null if it is the whole library
+    public LibraryQueue(SongPage.SortKey sortKey, List<SongManager.SongInfo> loaded, SongPage.Cursor next, int pageSize) {
+        this.sortKey = sortKey;
+        this.pageSize = pageSize;
+        this.songs = new ArrayList<>(loaded);
+        this.next = next;
+    }
+
+    @Override
+    public SongManager.SongInfo get(int index) {
+        return songs.get(index);
+    }
+
+    @Override
+    public int size() {
+        return songs.size();
+    }
+
+    // Whether the library goes on past the loaded songs
+    public boolean hasMore() {
+        return next != null;
+    }
+
+    // Appends the next page of the library. False once there is nothing more to load.
+    public boolean loadMore() {
+        if (next == null) {
+            return false;
+        }
+        SongPage page = LibraryStores.get().querySongs(sortKey, next, pageSize);
+        songs.addAll(page.songs);
+        next = page.next;
+        return !page.songs.isEmpty();
+    }
+}
@@ -0,0 +1,564 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Imports files and folders into the library as a pipeline of stages, each on its own threads:
+//
+//   discover   walks the roots and emits supported audio files with the size and mtime the walk read
+//   classify   looks the paths up in batches (one getStampedSongs call each) and drops files whose
+//              size and mtime match the stored FileStamp, so an unchanged file is never opened
+//   parse      on a pool of one worker per core: a new file whose signature matches a song whose
+//              file is gone is that song, moved; anything else new or modified has its tags read
+//   persist    inserts new songs and rewrites changed or moved ones in batches, with one batch in
+//              flight while the next fills
+//
+// Stages hand off through bounded queues, so a stage that falls behind blocks the ones feeding it
+// instead of letting parsed songs pile up in memory. A scan can be cancelled at any point; whatever
+// was written before that stays in the library.
+//
+// rescan() also removes the songs under the roots whose files are gone, once everything else is
+// written (so a song that moved within the roots is relinked rather than removed).
+public class LibraryScanner {
+
+    private static final int DISCOVER_QUEUE_SIZE = 4096;
+    private static final int CLASSIFY_BATCH_SIZE = 500;
+    private static final int PARSE_QUEUE_PER_WORKER = 64;
+    private static final int PERSIST_BATCH_SIZE = 500;
+    // A partial batch is written once no parsed song has arrived for this long
+    private static final long PERSIST_FLUSH_MILLIS = 200;
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    // A file the walk found, as the walk saw it
+    private static class Found {
+        final File file;
+        final long size;
+        final long mtime;
+        // The song already stored at this path, if any
+        final SongManager.SongInfo existing;
+
+        Found(File file, long size, long mtime, SongManager.SongInfo existing) {
+            this.file = file;
+            this.size = size;
+            this.mtime = mtime;
+            this.existing = existing;
+        }
+
+        Found withExisting(SongManager.SongInfo existing) {
+            return new Found(file, size, mtime, existing);
+        }
+    }
+
+    // A song ready to be written, and what writing it means: INSERTED, UPDATED or MOVED
+    private static class Parsed {
+        final SongManager.SongInfo song;
+        final SqliteDBManager.InsertStatus status;
+
+        Parsed(SongManager.SongInfo song, SqliteDBManager.InsertStatus status) {
+            this.song = song;
+            this.status = status;
+        }
+    }
+
+    // Marks the end of a queue; compared by identity
+    private static final Found END_OF_FILES = new Found(new File(""), 0, 0, null);
+    private static final Parsed END_OF_SONGS = new Parsed(null, null);
+
+    // Counters of one scan at a point in time
+    public static class Progress {
+        public final int discovered;
+        // Already in the library and unchanged on disk, or found twice under the given roots
+        public final int duplicates;
+        public final int parsed;
+        // Tags or signature couldn't be read, or the write failed
+        public final int failed;
+        public final int inserted;
+        // Already in the library; the file changed, so its tags were read again
+        public final int updated;
+        // Already in the library under a path whose file is gone
+        public final int moved;
+        // Songs under the rescanned roots whose files are gone
+        public final int removed;
+        public final boolean done;
+        public final boolean cancelled;
+
+        Progress(int discovered, int duplicates, int parsed, int failed, int inserted, int updated, int moved,
+                 int removed, boolean done, boolean cancelled) {
+            this.discovered = discovered;
+            this.duplicates = duplicates;
+            this.parsed = parsed;
+            this.failed = failed;
+            this.inserted = inserted;
+            this.updated = updated;
+            this.moved = moved;
+            this.removed = removed;
+            this.done = done;
+            this.cancelled = cancelled;
+        }
+
+        // Files that have been through the pipeline one way or another
+        public int processed() {
+            return duplicates + failed + inserted + updated + moved;
+        }
+
+        @Override
+        public String toString() {
+            return "discovered=" + discovered + " duplicates=" + duplicates + " parsed=" + parsed + " failed=" + failed
+                    + " inserted=" + inserted + " updated=" + updated + " moved=" + moved + " removed=" + removed
+                    + (cancelled ? " cancelled" : done ? " done" : "");
+        }
+    }
+
+    // Starts scanning the given files and directories into the current store. Progress goes to the
+    // listener (may be null) from the scanner's threads, at most every PROGRESS_INTERVAL_MILLIS and
+    // once more when the scan ends; listeners that touch the UI must hop over with Platform.runLater.
+    public static Scan start(Collection<File> roots, Consumer<Progress> listener) {
+        return start(roots, false, LibraryStores.get(), Runtime.getRuntime().availableProcessors(), listener);
+    }
+
+    // Brings the library in line with what is under the given directories now: new files are added,
+    // changed ones re-read, moved ones relinked, and songs whose files are gone removed. A directory
+    // that doesn't exist (an unplugged drive) is left alone. Unchanged files cost a stat each.
+    public static Scan rescan(Collection<File> roots, Consumer<Progress> listener) {
+        return start(roots, true, LibraryStores.get(), Runtime.getRuntime().availableProcessors(), listener);
+    }
+
+    static Scan start(Collection<File> roots, boolean removeMissing, LibraryStore store, int workers,
+                      Consumer<Progress> listener) {
+        Scan scan = new Scan(List.copyOf(roots), removeMissing, store, Math.max(1, workers), listener);
+        scan.startStages();
+        return scan;
+    }
+
+    public static class Scan {
+        private final List<File> roots;
+        private final boolean removeMissing;
+        private final LibraryStore store;
+        private final int workers;
+        private final Consumer<Progress> listener;
+
+        private final BlockingQueue<Found> discovered = new ArrayBlockingQueue<>(DISCOVER_QUEUE_SIZE);
+        private final BlockingQueue<Found> toParse;
+        private final BlockingQueue<Parsed> toPersist = new ArrayBlockingQueue<>(PERSIST_BATCH_SIZE * 2);
+        // Every path the walk found; written by classify, read by persist once classify is done
+        private final Set<String> seen = new HashSet<>();
+        // Songs a moved file has been matched to, so two copies of it can't both take the same one
+        private final Set<Long> claimed = ConcurrentHashMap.newKeySet();
+
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger workersLeft;
+        private final List<SqliteDBManager.InsertResult> results = Collections.synchronizedList(new ArrayList<>());
+        private final CompletableFuture<List<SqliteDBManager.InsertResult>> completion = new CompletableFuture<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        private final AtomicInteger discoveredCount = new AtomicInteger();
+        private final AtomicInteger duplicateCount = new AtomicInteger();
+        private final AtomicInteger parsedCount = new AtomicInteger();
+        private final AtomicInteger failedCount = new AtomicInteger();
+        private final AtomicInteger insertedCount = new AtomicInteger();
+        private final AtomicInteger updatedCount = new AtomicInteger();
+        private final AtomicInteger movedCount = new AtomicInteger();
+        private final AtomicInteger removedCount = new AtomicInteger();
+        private volatile long lastReport;
+
+        private Scan(List<File> roots, boolean removeMissing, LibraryStore store, int workers, Consumer<Progress> listener) {
+            this.roots = roots;
+            this.removeMissing = removeMissing;
+            this.store = store;
+            this.workers = workers;
+            this.listener = listener;
+            this.toParse = new ArrayBlockingQueue<>(workers * PARSE_QUEUE_PER_WORKER);
+            this.workersLeft = new AtomicInteger(workers);
+        }
+
+        // Stops every stage as soon as it notices; a batch already handed to the store still completes
+        public void cancel() {
+            if (cancelled || completion.isDone()) {
+                return;
+            }
+            cancelled = true;
+            synchronized (threads) {
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        // Completes with one result per file that went through the pipeline, in no particular order,
+        // once every stage has stopped. A cancelled scan completes normally with what it got to.
+        public CompletableFuture<List<SqliteDBManager.InsertResult>> completion() {
+            return completion;
+        }
+
+        // Blocks until the scan ends; rethrows whatever stopped a stage
+        public List<SqliteDBManager.InsertResult> await() {
+            return completion.join();
+        }
+
+        // Blocks until the scan ends and returns its final counts; rethrows like await()
+        public Progress awaitProgress() {
+            await();
+            return progress();
+        }
+
+        public Progress progress() {
+            return new Progress(discoveredCount.get(), duplicateCount.get(), parsedCount.get(), failedCount.get(),
+                    insertedCount.get(), updatedCount.get(), movedCount.get(), removedCount.get(), completion.isDone(),
+                    cancelled);
+        }
+
+        private void startStages() {
+            // Held until every stage is up, so one that ends at once can't finish the scan early
+            running.incrementAndGet();
+            stage("LibraryScan-discover", this::discover);
+            stage("LibraryScan-classify", this::classify);
+            for (int i = 0; i < workers; i++) {
+                stage("LibraryScan-parse-" + (i + 1), this::parse);
+            }
+            stage("LibraryScan-persist", this::persist);
+            if (running.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        private void stage(String name, Stage body) {
+            Thread thread = new Thread(() -> {
+                try {
+                    body.run();
+                } catch (InterruptedException e) {
+                    // Cancelled, or another stage failed
+                } catch (Throwable t) {
+                    // A store call cut short by cancel() is not a failure
+                    if (!cancelled && failure.compareAndSet(null, t)) {
+                        System.err.println("Library scan failed in " + Thread.currentThread().getName() + ": " + t);
+                    }
+                    cancel();
+                } finally {
+                    if (running.decrementAndGet() == 0) {
+                        finish();
+                    }
+                }
+            }, name);
+            thread.setDaemon(true);
+            if (name.startsWith("LibraryScan-parse")) {
+                // Tag parsing may take every core; keep it behind the UI and playback
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+            }
+            running.incrementAndGet();
+            synchronized (threads) {
+                threads.add(thread);
+            }
+            thread.start();
+        }
+
+        private void finish() {
+            Throwable t = failure.get();
+            if (t != null) {
+                completion.completeExceptionally(t);
+            } else {
+                synchronized (results) {
+                    completion.complete(new ArrayList<>(results));
+                }
+            }
+            report(true);
+        }
+
+        // --- Stages ---
+
+        private void discover() throws InterruptedException {
+            try {
+                for (File root : roots) {
+                    if (cancelled) {
+                        return;
+                    }
+                    walk(root.toPath());
+                }
+            } finally {
+                // Let the rest of the pipeline drain even if the walk stopped early
+                if (!cancelled) {
+                    discovered.put(END_OF_FILES);
+                }
+            }
+        }
+
+        private void walk(Path root) throws InterruptedException {
+            InterruptedException[] interrupted = new InterruptedException[1];
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        File f = file.toFile();
+                        if (attrs.isRegularFile() && SongManager.isSupportedAudioFile(f)) {
+                            try {
+                                discovered.put(new Found(f, attrs.size(), attrs.lastModifiedTime().toMillis(), null));
+                            } catch (InterruptedException e) {
+                                interrupted[0] = e;
+                                return FileVisitResult.TERMINATE;
+                            }
+                            discoveredCount.incrementAndGet();
+                            report(false);
+                        }
+                        return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        System.err.println("Skipping unreadable path during scan: " + file + " (" + e.getMessage() + ")");
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Error scanning " + root + ": " + e.getMessage());
+            }
+            if (interrupted[0] != null) {
+                throw interrupted[0];
+            }
+        }
+
+        private void classify() throws InterruptedException {
+            List<Found> batch = new ArrayList<>(CLASSIFY_BATCH_SIZE);
+            boolean end = false;
+            while (!end) {
+                batch.add(discovered.take());
+                discovered.drainTo(batch, CLASSIFY_BATCH_SIZE - 1);
+                if (batch.get(batch.size() - 1) == END_OF_FILES) {
+                    batch.remove(batch.size() - 1);
+                    end = true;
+                }
+
+                List<String> paths = new ArrayList<>(batch.size());
+                for (Found found : batch) {
+                    paths.add(found.file.getAbsolutePath());
+                }
+                Map<String, SongManager.SongInfo> stored = paths.isEmpty() ? Map.of() : store.getStampedSongs(paths);
+                for (int i = 0; i < batch.size(); i++) {
+                    Found found = batch.get(i);
+                    String path = paths.get(i);
+                    SongManager.SongInfo existing = stored.get(path);
+                    boolean unchanged = existing != null && existing.stamp != null
+                            && existing.stamp.matches(found.size, found.mtime);
+                    if (unchanged || !seen.add(path)) {
+                        results.add(new SqliteDBManager.InsertResult(path, existing, SqliteDBManager.InsertStatus.DUPLICATE));
+                        duplicateCount.incrementAndGet();
+                    } else {
+                        // New, or stored without a stamp (before v9) or with a different one
+                        toParse.put(found.withExisting(existing));
+                    }
+                }
+                batch.clear();
+                report(false);
+            }
+            // One marker per worker, each stops at the first it takes
+            for (int i = 0; i < workers; i++) {
+                toParse.put(END_OF_FILES);
+            }
+        }
+
+        private void parse() throws InterruptedException {
+            try {
+                while (true) {
+                    Found found = toParse.take();
+                    if (found == END_OF_FILES) {
+                        return;
+                    }
+                    Parsed parsed = parse(found);
+                    if (cancelled) {
+                        // The read may have been cut short by the interrupt; don't count it as a bad file
+                        return;
+                    }
+                    if (parsed == null) {
+                        results.add(new SqliteDBManager.InsertResult(found.file.getAbsolutePath(), found.existing,
+                                SqliteDBManager.InsertStatus.FAILED));
+                        failedCount.incrementAndGet();
+                    } else {
+                        toPersist.put(parsed);
+                        parsedCount.incrementAndGet();
+                    }
+                    report(false);
+                }
+            } finally {
+                // The last worker out closes the persist queue
+                if (workersLeft.decrementAndGet() == 0 && !cancelled) {
+                    toPersist.put(END_OF_SONGS);
+                }
+            }
+        }
+
+        // null if the file can't be read
+        private Parsed parse(Found found) {
+            FileStamp stamp;
+            try {
+                stamp = FileStamp.of(found.file, found.size, found.mtime);
+            } catch (IOException e) {
+                System.err.println("Error reading file signature of " + found.file + ": " + e.getMessage());
+                return null;
+            }
+            if (found.existing == null) {
+                SongManager.SongInfo moved = movedFrom(found.file, stamp);
+                if (moved != null) {
+                    // Same bytes, so the stored tags still hold; no need to parse
+                    return new Parsed(moved.movedTo(found.file, stamp), SqliteDBManager.InsertStatus.MOVED);
+                }
+            }
+            SongManager.SongInfo info = SongManager.readMp3(found.file, stamp);
+            if (info == null) {
+                return null;
+            }
+            return found.existing == null
+                    ? new Parsed(info, SqliteDBManager.InsertStatus.INSERTED)
+                    : new Parsed(info.withId(found.existing.id), SqliteDBManager.InsertStatus.UPDATED);
+        }
+
+        // A stored song with the same size and signature whose own file is gone, if there is one
+        private SongManager.SongInfo movedFrom(File file, FileStamp stamp) {
+            for (SongManager.SongInfo candidate : store.findSongsBySignature(stamp.size, stamp.signature)) {
+                if (!candidate.path.equals(file.getAbsolutePath()) && !new File(candidate.path).exists()
+                        && claimed.add(candidate.id)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private void persist() throws InterruptedException {
+            CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+            List<Parsed> batch = new ArrayList<>(PERSIST_BATCH_SIZE);
+            boolean end = false;
+            try {
+                while (!end) {
+                    Parsed parsed = toPersist.take();
+                    while (parsed != END_OF_SONGS) {
+                        batch.add(parsed);
+                        if (batch.size() >= PERSIST_BATCH_SIZE) {
+                            break;
+                        }
+                        parsed = toPersist.poll(PERSIST_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                        if (parsed == null) {
+                            break;
+                        }
+                    }
+                    end = parsed == END_OF_SONGS;
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                    // Wait for the previous batch so at most one is queued at the writer behind this one
+                    inFlight.join();
+                    inFlight = write(List.copyOf(batch));
+                    batch.clear();
+                }
+            } finally {
+                // Even when cancelled: the batch is committed either way, and its results belong in the scan
+                inFlight.join();
+            }
+            if (removeMissing && !cancelled) {
+                removeMissing();
+            }
+        }
+
+        private CompletableFuture<Void> write(List<Parsed> batch) {
+            List<SongManager.SongInfo> inserts = new ArrayList<>();
+            List<Parsed> updates = new ArrayList<>();
+            for (Parsed parsed : batch) {
+                if (parsed.status == SqliteDBManager.InsertStatus.INSERTED) {
+                    inserts.add(parsed.song);
+                } else {
+                    updates.add(parsed);
+                }
+            }
+            CompletableFuture<Void> inserted = store.insertSongsAsync(inserts).thenAccept(this::recordWritten);
+            CompletableFuture<Void> updated = store.updateSongsAsync(updates.stream().map(u -> u.song).toList())
+                    .thenAccept(results -> {
+                        // Tell moves from re-reads; the store reports both as UPDATED
+                        List<SqliteDBManager.InsertResult> relabelled = new ArrayList<>(results.size());
+                        for (int i = 0; i < results.size(); i++) {
+                            SqliteDBManager.InsertResult r = results.get(i);
+                            relabelled.add(r.status == SqliteDBManager.InsertStatus.UPDATED
+                                    ? new SqliteDBManager.InsertResult(r.path, r.song, updates.get(i).status) : r);
+                        }
+                        recordWritten(relabelled);
+                    });
+            return CompletableFuture.allOf(inserted, updated);
+        }
+
+        private void recordWritten(List<SqliteDBManager.InsertResult> written) {
+            results.addAll(written);
+            for (SqliteDBManager.InsertResult r : written) {
+                switch (r.status) {
+                    case INSERTED -> insertedCount.incrementAndGet();
+                    case UPDATED -> updatedCount.incrementAndGet();
+                    case MOVED -> movedCount.incrementAndGet();
+                    case DUPLICATE -> duplicateCount.incrementAndGet();
+                    case FAILED -> failedCount.incrementAndGet();
+                }
+            }
+            report(false);
+        }
+
+        // Deletes the songs under the roots that the walk didn't find and that aren't on disk. The
+        // stat guards against a subdirectory the walk couldn't read.
+        private void removeMissing() {
+            List<Long> missing = new ArrayList<>();
+            for (File root : roots) {
+                if (!root.isDirectory()) {
+                    continue;
+                }
+                for (SongManager.SongInfo song : store.getSongsUnder(root.getAbsolutePath())) {
+                    if (!seen.contains(song.path) && !new File(song.path).exists()) {
+                        missing.add(song.id);
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                removedCount.addAndGet(store.deleteSongs(missing).join());
+            }
+        }
+
+        private void report(boolean last) {
+            if (listener == null || !last && System.currentTimeMillis() - lastReport < PROGRESS_INTERVAL_MILLIS) {
+                return;
+            }
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (!last && now - lastReport < PROGRESS_INTERVAL_MILLIS) {
+                    return;
+                }
+                lastReport = now;
+                try {
+                    listener.accept(progress());
+                } catch (RuntimeException e) {
+                    System.err.println("Error reporting scan progress: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,124 @@
+package com;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+// Songs, playlists and search, as the UI sees them. Pages and services get the current store from
+// LibraryStores instead of calling SqliteDBManager, so the same code can run against
+// InMemoryLibraryStore (benchmarks, experiments) without touching the user's library.
+// Writes complete their future once the change is visible to reads, and announce it on the
+// LibraryEventBus like SqliteDBManager does.
+public interface LibraryStore {
+
+    // --- Songs ---
+
+    // Every song, in SortKey.FILE_NAME order. The list is the caller's to modify.
+    List<SongManager.SongInfo> getAllSongs();
+
+    // null if there is no such song
+    SongManager.SongInfo getSong(long songId);
+
+    // 0 if there is no song at path
+    long getSongId(String path);
+
+    boolean songExists(String path);
+
+    // The subset of paths that are already in the library
+    Set<String> findExistingPaths(Collection<String> paths);
+
+    // Keyset pagination, see SongPage. Pass the previous page's next cursor to continue.
+    SongPage querySongs(SongPage.SortKey sortKey, SongPage.Cursor afterKey, int limit);
+
+    // A first page that can be shown before the store is ready, possibly out of date; null if there is
+    // none. Callers should follow up with querySongs() and replace it.
+    default SongPage cachedFirstPage(SongPage.SortKey sortKey, int limit) {
+        return null;
+    }
+
+    // Every word must match the start of a word in the song's name or artist; best matches first
+    List<SongManager.SongInfo> search(String query, int limit);
+
+    // Completes with the stored song (carrying its id), or null if it was invalid or already present
+    CompletableFuture<SongManager.SongInfo> insertNewSong(SongManager.SongInfo song);
+
+    // Results come back in input order
+    CompletableFuture<List<SqliteDBManager.InsertResult>> insertSongsAsync(Collection<SongManager.SongInfo> songs);
+
+    default List<SqliteDBManager.InsertResult> insertSongs(Collection<SongManager.SongInfo> songs) {
+        return insertSongsAsync(songs).join();
+    }
+
+    // --- File stamps, for rescans (songs returned here carry SongInfo.stamp) ---
+
+    // The songs stored at any of the given paths, by path
+    Map<String, SongManager.SongInfo> getStampedSongs(Collection<String> paths);
+
+    // Every song whose path lies under the directory
+    List<SongManager.SongInfo> getSongsUnder(String directory);
+
+    // Songs whose file had this size and signature when last parsed
+    List<SongManager.SongInfo> findSongsBySignature(long size, long signature);
+
+    // Rewrites stored songs, matched by id, with new tags, path and stamp. Results come back in input
+    // order, UPDATED or FAILED; updates are announced as SONGS_UPDATED.
+    CompletableFuture<List<SqliteDBManager.InsertResult>> updateSongsAsync(Collection<SongManager.SongInfo> songs);
+
+    // Up to limit songs whose stored metadata was read by the given SongMetadata version (0: never
+    // read), with ids above afterId, in id order
+    List<SongManager.SongInfo> getSongsWithMetadataVersion(int version, long afterId, int limit);
+
+    // Stores the metadata and stamp of songs matched by id, leaving what the library lists alone; no
+    // event. Completes with the number updated.
+    CompletableFuture<Integer> updateMetadataAsync(Collection<SongManager.SongInfo> songs);
+
+    // Completes with true if the song was there
+    CompletableFuture<Boolean> deleteSong(SongManager.SongInfo song);
+
+    // Completes with the number of songs deleted
+    CompletableFuture<Integer> deleteSongs(Collection<Long> songIds);
+
+    // --- Playlists ---
+
+    // By name
+    List<SqliteDBManager.PlaylistInfo> getAllPlaylists();
+
+    // In playlist order; empty for an unknown playlist
+    List<SongManager.SongInfo> getSongsForPlaylist(String playlistName);
+
+    // Creates the built-in liked_songs playlist if it is missing
+    CompletableFuture<Void> insertDefaultPlaylist();
+
+    CompletableFuture<Void> insertNewPlaylist(String name);
+
+    CompletableFuture<Void> deletePlaylist(String name);
+
+    // Appends to the end; a song already in the playlist stays where it is
+    CompletableFuture<Void> addSongToPlaylist(SongManager.SongInfo song, String playlistName);
+
+    // Appends in the given order. Completes with the number of songs added.
+    CompletableFuture<Integer> addSongsToPlaylist(String playlistName, Collection<Long> songIds);
+
+    CompletableFuture<Void> removeSongFromPlaylist(SongManager.SongInfo song, String playlistName);
+
+    // Completes with the number of songs that were in the playlist
+    CompletableFuture<Integer> removeSongsFromPlaylist(String playlistName, Collection<Long> songIds);
+
+    // Inserts so the first song ends up at index (past the end appends). Completes with the number added.
+    CompletableFuture<Integer> insertSongsIntoPlaylist(String playlistName, List<Long> songIds, int index);
+
+    // Completes with false if from is out of range or nothing moved
+    CompletableFuture<Boolean> moveSongInPlaylist(String playlistName, int from, int to);
+
+    // --- Lifecycle ---
+
+    // Optional background warm-up right after startup
+    default void warmUp() {
+    }
+
+    // Flushes and releases everything; the store can't be used afterwards
+    default void close() {
+    }
+}
@@ -0,0 +1,181 @@
+package com;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// Runs the same synthetic workload against InMemoryLibraryStore and SqliteLibraryStore and prints
+// throughput side by side: import, paging in each sort order, search, playlist edits, and search plus
+// paging from several threads at once. The SQLite store runs in a scratch home directory, so the
+// user's library is never touched.
+//
+//   java com.LibraryStoreBenchmark [songs] [threads]
+public class LibraryStoreBenchmark {
+
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final int PAGE_SIZE = 100;
+    private static final int SEARCH_ROUNDS = 20;
+    private static final int SEARCH_LIMIT = 50;
+    private static final int PLAYLIST_SIZE = 1000;
+    private static final String[] QUERIES = {"a", "lo", "night", "blue rain", "mo", "summer love", "zz", "dr", "ki", "the"};
+    private static final String[] WORDS = {"night", "blue", "rain", "summer", "love", "city", "lights", "dream", "moon",
+            "river", "golden", "hour", "drive", "slow", "morning", "coffee", "echo", "paper", "kite", "ocean", "the"};
+
+    public static void main(String[] args) throws Exception {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        // Must happen before SqliteDBManager is loaded: it resolves its paths from user.home once
+        Path home = Files.createTempDirectory("library-benchmark");
+        System.setProperty("user.home", home.toString());
+
+        List<SongManager.SongInfo> songs = generate(songCount);
+        System.out.printf("%d songs, %d reader threads%n%n", songCount, threads);
+        System.out.printf("%-28s %14s %14s%n", "", "in-memory", "sqlite");
+
+        // Let the JIT compile the shared Java paths first, or whichever store runs first pays for it
+        LibraryStore warmUp = new InMemoryLibraryStore();
+        importSongs(warmUp, songs);
+        pageThrough(warmUp, SongPage.SortKey.FILE_NAME);
+        search(warmUp);
+
+        LibraryStore memory = new InMemoryLibraryStore();
+        LibraryStore sqlite = new SqliteLibraryStore();
+        try {
+            report("import (songs/s)", importSongs(memory, songs), importSongs(sqlite, songs));
+            for (SongPage.SortKey key : SongPage.SortKey.values()) {
+                report("page " + key + " (rows/s)", pageThrough(memory, key), pageThrough(sqlite, key));
+            }
+            report("search (queries/s)", search(memory), search(sqlite));
+            report("playlist add+read (ops/s)", playlists(memory), playlists(sqlite));
+            report("concurrent reads (ops/s)", concurrentReads(memory, threads), concurrentReads(sqlite, threads));
+        } finally {
+            sqlite.close();
+            deleteRecursively(home);
+        }
+        System.exit(0);
+    }
+
+    private static List<SongManager.SongInfo> generate(int count) {
+        Random random = new Random(42);
+        List<SongManager.SongInfo> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            String artist = random.nextInt(20) == 0 ? null : "Artist " + random.nextInt(count / 20 + 1);
+            songs.add(new SongManager.SongInfo(title + ".mp3", "/music/" + i + "/" + title + ".mp3", artist,
+                    60 + random.nextInt(400)));
+        }
+        return songs;
+    }
+
+    private static double importSongs(LibraryStore store, List<SongManager.SongInfo> songs) {
+        long start = System.nanoTime();
+        for (int i = 0; i < songs.size(); i += IMPORT_BATCH_SIZE) {
+            List<SongManager.SongInfo> batch = songs.subList(i, Math.min(i + IMPORT_BATCH_SIZE, songs.size()));
+            store.findExistingPaths(batch.stream().map(s -> s.path).toList());
+            store.insertSongs(batch);
+        }
+        return perSecond(songs.size(), start);
+    }
+
+    private static double pageThrough(LibraryStore store, SongPage.SortKey key) {
+        long start = System.nanoTime();
+        int rows = 0;
+        SongPage.Cursor cursor = null;
+        do {
+            SongPage page = store.querySongs(key, cursor, PAGE_SIZE);
+            rows += page.songs.size();
+            cursor = page.next;
+        } while (cursor != null);
+        return perSecond(rows, start);
+    }
+
+    private static double search(LibraryStore store) {
+        // One untimed round so both stores start warm
+        for (String query : QUERIES) {
+            store.search(query, SEARCH_LIMIT);
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < SEARCH_ROUNDS; round++) {
+            for (String query : QUERIES) {
+                store.search(query, SEARCH_LIMIT);
+            }
+        }
+        return perSecond(SEARCH_ROUNDS * QUERIES.length, start);
+    }
+
+    private static double playlists(LibraryStore store) {
+        List<Long> ids = new ArrayList<>();
+        for (SongManager.SongInfo song : store.querySongs(SongPage.SortKey.DURATION, null, PLAYLIST_SIZE).songs) {
+            ids.add(song.id);
+        }
+        long start = System.nanoTime();
+        int ops = 0;
+        for (int i = 0; i < 10; i++) {
+            String name = "benchmark " + i;
+            store.insertNewPlaylist(name).join();
+            // One song at a time, then the rest in one call, then a read of the whole playlist
+            for (Long id : ids.subList(0, 100)) {
+                store.addSongsToPlaylist(name, List.of(id)).join();
+                ops++;
+            }
+            store.addSongsToPlaylist(name, ids).join();
+            store.moveSongInPlaylist(name, 0, ids.size() / 2).join();
+            store.getSongsForPlaylist(name);
+            store.getAllPlaylists();
+            ops += 4;
+        }
+        return perSecond(ops, start);
+    }
+
+    private static double concurrentReads(LibraryStore store, int threads) throws Exception {
+        int perThread = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                SongPage.Cursor cursor = null;
+                for (int i = 0; i < perThread; i++) {
+                    if (i % 2 == 0) {
+                        store.search(QUERIES[random.nextInt(QUERIES.length)], SEARCH_LIMIT);
+                    } else {
+                        SongPage page = store.querySongs(SongPage.SortKey.ARTIST, cursor, PAGE_SIZE);
+                        cursor = page.next;
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        return perSecond(threads * perThread, start);
+    }
+
+    private static double perSecond(int count, long startNanos) {
+        return count / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    private static void report(String label, double memory, double sqlite) {
+        System.out.printf("%-28s %14.0f %14.0f%n", label, memory, sqlite);
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com;
+
+// Holds the LibraryStore the app runs against. It is SQLite unless something swaps it before the
+// UI starts (a benchmark, or a run against InMemoryLibraryStore).
+public class LibraryStores {
+
+    private static volatile LibraryStore current = new SqliteLibraryStore();
+
+    public static LibraryStore get() {
+        return current;
+    }
+
+    public static void set(LibraryStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("store must not be null");
+        }
+        current = store;
+    }
+}
@@ -0,0 +1,301 @@
+package com;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Removes songs whose files have disappeared from disk, off the UI thread.
+// Songs are grouped by their parent directory (a "root"). A root whose mtime matches the one
+// recorded in verified_roots has had no entries added, removed or renamed since the last pass and
+// is skipped; the others are listed once each, in parallel, instead of stat-ing every file.
+public class LibraryVerifier {
+
+    public static class Summary {
+        public final int rootsChecked;
+        public final int rootsSkipped;
+        public final int songsChecked;
+        public final List<Long> removedIds;
+        public final long elapsedMillis;
+
+        Summary(int rootsChecked, int rootsSkipped, int songsChecked, List<Long> removedIds, long elapsedMillis) {
+            this.rootsChecked = rootsChecked;
+            this.rootsSkipped = rootsSkipped;
+            this.songsChecked = songsChecked;
+            this.removedIds = removedIds;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int songsRemoved() {
+            return removedIds.size();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("roots checked=%d, skipped=%d, songs checked=%d, removed=%d in %d ms",
+                    rootsChecked, rootsSkipped, songsChecked, removedIds.size(), elapsedMillis);
+        }
+    }
+
+    private static class SongRef {
+        final long id;
+        final String path;
+
+        SongRef(long id, String path) {
+            this.id = id;
+            this.path = path;
+        }
+    }
+
+    private static class RootResult {
+        final String root;
+        final boolean skipped;
+        // mtime taken before listing, or 0 when the directory is gone (nothing to remember then)
+        final long mtime;
+        final int songsChecked;
+        final List<SongRef> missing;
+
+        RootResult(String root, boolean skipped, long mtime, int songsChecked, List<SongRef> missing) {
+            this.root = root;
+            this.skipped = skipped;
+            this.mtime = mtime;
+            this.songsChecked = songsChecked;
+            this.missing = missing;
+        }
+    }
+
+    // Listing directories is I/O bound (and slow on network mounts), so use more threads than cores
+    private static final int THREADS = 8;
+
+    private static final List<Consumer<Summary>> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final AtomicBoolean RUNNING = new AtomicBoolean(false);
+
+    // Listeners are called on the verifier thread; UI code must hop over with Platform.runLater.
+    // Removed songs are also announced as a SONGS_REMOVED LibraryEvent.
+    public static void addListener(Consumer<Summary> listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Consumer<Summary> listener) {
+        LISTENERS.remove(listener);
+    }
+
+    // Starts a pass on a daemon thread. Returns false if one is already running.
+    public static boolean runInBackground() {
+        if (!RUNNING.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                Summary summary = verify();
+                System.out.println("Library verification: " + summary);
+                for (Consumer<Summary> listener : LISTENERS) {
+                    try {
+                        listener.accept(summary);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error in library verification listener: " + e.getMessage());
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Error verifying song database: " + e.getMessage());
+            } finally {
+                RUNNING.set(false);
+            }
+        }, "LibraryVerifier");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    // Runs a full pass on the calling thread and deletes missing songs in a single write transaction
+    public static Summary verify() throws SQLException {
+        long start = System.currentTimeMillis();
+        Map<String, List<SongRef>> songsByRoot = new HashMap<>();
+        Map<String, Long> verified = new HashMap<>();
+
+        try (Connection conn = SqliteDBManager.connect(); Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT id, path FROM songs")) {
+                while (rs.next()) {
+                    String path = rs.getString("path");
+                    String parent = new File(path).getParent();
+                    songsByRoot.computeIfAbsent(parent == null ? "" : parent, k -> new ArrayList<>())
+                            .add(new SongRef(rs.getLong("id"), path));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT root, mtime FROM verified_roots")) {
+                while (rs.next()) {
+                    verified.put(rs.getString("root"), rs.getLong("mtime"));
+                }
+            }
+        }
+
+        // Watched folders are LibraryWatcher's: its rescan removes what is gone from them and relinks
+        // what was moved within them, which a delete here would turn into a new song
+        List<File> watched = LibraryWatcher.roots();
+        List<Callable<RootResult>> checks = new ArrayList<>();
+        for (Map.Entry<String, List<SongRef>> entry : songsByRoot.entrySet()) {
+            if (isUnder(entry.getKey(), watched)) {
+                continue;
+            }
+            checks.add(() -> checkRoot(entry.getKey(), entry.getValue(), verified.get(entry.getKey())));
+        }
+
+        List<RootResult> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS, daemonThreads());
+        try {
+            for (Future<RootResult> future : pool.invokeAll(checks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Library verification interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Library verification failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int rootsChecked = 0;
+        int rootsSkipped = 0;
+        int songsChecked = 0;
+        List<SongRef> missing = new ArrayList<>();
+        for (RootResult result : results) {
+            if (result.skipped) {
+                rootsSkipped++;
+            } else {
+                rootsChecked++;
+                songsChecked += result.songsChecked;
+                missing.addAll(result.missing);
+            }
+        }
+
+        // Nothing changed on disk: skip the write entirely
+        List<Long> removed = List.of();
+        if (rootsChecked > 0 || !songsByRoot.keySet().containsAll(verified.keySet())) {
+            List<Long> deleted = persist(results, missing, songsByRoot.keySet()).join();
+            if (deleted != null) {
+                removed = Collections.unmodifiableList(deleted);
+            }
+        }
+
+        return new Summary(rootsChecked, rootsSkipped, songsChecked, removed, System.currentTimeMillis() - start);
+    }
+
+    private static RootResult checkRoot(String root, List<SongRef> songs, Long verifiedMtime) {
+        File dir = new File(root);
+        long mtime = dir.lastModified();
+        if (mtime != 0 && verifiedMtime != null && verifiedMtime == mtime) {
+            return new RootResult(root, true, mtime, 0, List.of());
+        }
+
+        // One directory read instead of one stat per song
+        String[] names = dir.list();
+        Set<String> present = names == null ? Set.of() : new HashSet<>(Arrays.asList(names));
+        List<SongRef> missing = new ArrayList<>();
+        for (SongRef song : songs) {
+            File file = new File(song.path);
+            // Confirm with a stat before deleting, in case the listing and the stored path differ in case or form
+            if (!present.contains(file.getName()) && !file.exists()) {
+                missing.add(song);
+            }
+        }
+        return new RootResult(root, false, names == null ? 0 : mtime, songs.size(), missing);
+    }
+
+    // Completes with the ids of the songs deleted, or null if the write failed. The removal is
+    // announced on the writer thread as soon as it has committed, like every other write.
+    private static CompletableFuture<List<Long>> persist(List<RootResult> results, List<SongRef> missing, Set<String> liveRoots) {
+        return SqliteDBManager.write(conn -> {
+            // Only songs still at the path found missing: one relinked or re-imported since the listing
+            // (a rescan finding it moved, say) is no longer this song's to delete. Cascades clear
+            // playlist membership and the triggers keep songs_fts in step.
+            List<Long> deleted = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM songs WHERE id = ? AND path = ?")) {
+                for (SongRef song : missing) {
+                    pstmt.setLong(1, song.id);
+                    pstmt.setString(2, song.path);
+                    if (pstmt.executeUpdate() > 0) {
+                        deleted.add(song.id);
+                    }
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT OR REPLACE INTO verified_roots (root, mtime, verified_at) VALUES (?, ?, ?)")) {
+                for (RootResult result : results) {
+                    if (!result.skipped && result.mtime != 0) {
+                        pstmt.setString(1, result.root);
+                        pstmt.setLong(2, result.mtime);
+                        pstmt.setLong(3, now);
+                        pstmt.addBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+
+            // Forget directories that no longer hold any songs (or have disappeared)
+            Set<String> keep = new HashSet<>(liveRoots);
+            for (RootResult result : results) {
+                if (result.mtime == 0) {
+                    keep.remove(result.root);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "DELETE FROM verified_roots WHERE root NOT IN (SELECT value FROM json_each(?))")) {
+                pstmt.setString(1, SqliteDBManager.toJsonArray(keep));
+                pstmt.executeUpdate();
+            }
+            return deleted;
+        }).thenApply(deleted -> {
+            if (!deleted.isEmpty()) {
+                SqliteDBManager.committed(LibraryEvent.songsRemoved(deleted));
+            }
+            return deleted;
+        }).exceptionally(e -> {
+            System.err.println("Error removing missing songs: " + e.getMessage());
+            return null;
+        });
+    }
+
+    private static boolean isUnder(String dir, List<File> roots) {
+        Path path = Path.of(dir);
+        for (File root : roots) {
+            if (path.startsWith(root.toPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "LibraryVerifier-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
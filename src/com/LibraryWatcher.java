@@ -0,0 +1,363 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the library in step with the watched folders (UserProperties.getWatchedFolders) while the
+// app runs, so files that yt-dlp or a file manager drops into them show up without another import.
+//
+// WatchService only watches single directories, so every directory under a root is registered.
+// Events are collected into a batch until the folders have been quiet for DEBOUNCE_MILLIS (or at
+// most MAX_DELAY_MILLIS, for a long copy), then the batch is applied on a separate thread while
+// the next one collects:
+//   created or modified files   imported through LibraryScanner, which skips files it already has
+//                               unchanged, re-reads changed ones and relinks moved ones
+//   deleted files and folders   their songs are removed, unless the path is back by then
+//   new folders, OVERFLOW       LibraryScanner.rescan of just that folder
+// Imports go first, so a rename (a delete and a create in the same batch) relinks the song
+// instead of removing and re-adding it.
+public class LibraryWatcher {
+
+    private static final long DEBOUNCE_MILLIS = 1500;
+    private static final long MAX_DELAY_MILLIS = 10_000;
+
+    private static final UserProperties PROPERTIES = new UserProperties();
+    private static final Map<WatchKey, Path> KEYS = new ConcurrentHashMap<>();
+    private static final ExecutorService APPLIER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LibraryWatcher-apply");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private static WatchService service;
+    private static Thread thread;
+
+    // What happened in the watched folders since the last batch was applied
+    private static class Batch {
+        final Set<Path> changed = new LinkedHashSet<>();
+        final Set<Path> deleted = new LinkedHashSet<>();
+        final Set<Path> rescans = new LinkedHashSet<>();
+        long firstEventAt;
+        long lastEventAt;
+
+        boolean isEmpty() {
+            return changed.isEmpty() && deleted.isEmpty() && rescans.isEmpty();
+        }
+
+        void touched(long now) {
+            if (isEmpty()) {
+                firstEventAt = now;
+            }
+            lastEventAt = now;
+        }
+
+        long dueAt() {
+            return Math.min(lastEventAt + DEBOUNCE_MILLIS, firstEventAt + MAX_DELAY_MILLIS);
+        }
+    }
+
+    // Starts watching the configured folders and catches up on whatever changed in them while the
+    // app was closed. Completes once the catch-up has been applied (at once if the watcher was already
+    // running or couldn't start). Later calls do nothing.
+    public static synchronized CompletableFuture<Void> start() {
+        if (thread != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            System.err.println("Error starting library watcher: " + e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        thread = new Thread(LibraryWatcher::run, "LibraryWatcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        List<File> roots = roots();
+        return CompletableFuture.runAsync(() -> {
+            for (File root : roots) {
+                register(root.toPath());
+            }
+            if (!roots.isEmpty()) {
+                System.out.println("Library watcher catch-up: " + LibraryScanner.rescan(roots, null).awaitProgress());
+            }
+        }, APPLIER).exceptionally(e -> {
+            System.err.println("Error catching up on watched folders: " + e.getMessage());
+            return null;
+        });
+    }
+
+    public static synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            service.close();
+        } catch (IOException e) {
+            System.err.println("Error stopping library watcher: " + e.getMessage());
+        }
+        thread.interrupt();
+        thread = null;
+        KEYS.clear();
+    }
+
+    public static List<File> roots() {
+        List<File> roots = new ArrayList<>();
+        for (String folder : PROPERTIES.getWatchedFolders()) {
+            roots.add(new File(folder).getAbsoluteFile());
+        }
+        return roots;
+    }
+
+    // Adds the folder to the watched ones and starts watching it. Doesn't import what is already in
+    // it; callers that want that run LibraryScanner themselves. Does nothing for a folder already
+    // watched or inside one that is; a folder that contains watched ones replaces them.
+    public static void addRoot(File folder) {
+        File root = folder.getAbsoluteFile();
+        List<String> folders = new ArrayList<>();
+        for (File existing : roots()) {
+            if (root.toPath().startsWith(existing.toPath())) {
+                return;
+            }
+            if (!existing.toPath().startsWith(root.toPath())) {
+                folders.add(existing.getPath());
+            }
+        }
+        folders.add(root.getPath());
+        try {
+            PROPERTIES.setWatchedFolders(folders);
+        } catch (IOException e) {
+            System.err.println("Error saving watched folders: " + e.getMessage());
+        }
+        if (isRunning()) {
+            // Folders already registered under it just get their keys back
+            APPLIER.execute(() -> register(root.toPath()));
+        }
+    }
+
+    // Stops watching the folder from the next start on. Its songs stay in the library.
+    public static void removeRoot(File folder) {
+        String root = folder.getAbsoluteFile().getPath();
+        List<String> folders = new ArrayList<>(PROPERTIES.getWatchedFolders());
+        if (folders.removeIf(f -> new File(f).getAbsoluteFile().getPath().equals(root))) {
+            try {
+                PROPERTIES.setWatchedFolders(folders);
+            } catch (IOException e) {
+                System.err.println("Error saving watched folders: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<WatchKey, Path> entry : KEYS.entrySet()) {
+            if (entry.getValue().startsWith(root)) {
+                entry.getKey().cancel();
+                KEYS.remove(entry.getKey());
+            }
+        }
+    }
+
+    private static synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    // --- Watching ---
+
+    private static void run() {
+        WatchService watchService;
+        synchronized (LibraryWatcher.class) {
+            watchService = service;
+        }
+        Batch batch = new Batch();
+        try {
+            while (true) {
+                WatchKey key;
+                if (batch.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    key = watchService.poll(Math.max(0, batch.dueAt() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+                // Take everything already queued before deciding whether the batch is due
+                while (key != null) {
+                    collect(key, batch);
+                    key = watchService.poll();
+                }
+                if (!batch.isEmpty() && System.currentTimeMillis() >= batch.dueAt()) {
+                    Batch due = batch;
+                    APPLIER.execute(() -> apply(due));
+                    batch = new Batch();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stop()
+        }
+    }
+
+    private static void collect(WatchKey key, Batch batch) {
+        Path dir = KEYS.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            batch.touched(now);
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were dropped; only a listing can tell what happened in this folder now
+                batch.rescans.add(dir);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                batch.deleted.add(path);
+            } else if (Files.isDirectory(path)) {
+                // A new folder (or one moved in) may have filled up before it could be registered
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    batch.rescans.add(path);
+                }
+            } else if (SongManager.isSupportedAudioFile(path.toFile())) {
+                batch.changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            // The folder itself is gone; its own delete event is in its parent's key
+            KEYS.remove(key);
+        }
+    }
+
+    private static void register(Path root) {
+        if (!Files.isDirectory(root)) {
+            System.err.println("Watched folder is not available: " + root);
+            return;
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    WatchService watchService;
+                    synchronized (LibraryWatcher.class) {
+                        watchService = service;
+                    }
+                    if (watchService == null) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    KEYS.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException | ClosedWatchServiceException e) {
+            // Typically the per-user inotify limit; the folders already registered stay live
+            System.err.println("Error watching " + root + ": " + e.getMessage());
+        }
+    }
+
+    // --- Applying a batch ---
+
+    private static void apply(Batch batch) {
+        try {
+            long start = System.currentTimeMillis();
+            List<File> rescans = new ArrayList<>();
+            for (Path dir : outermost(batch.rescans)) {
+                if (Files.isDirectory(dir)) {
+                    register(dir);
+                    rescans.add(dir.toFile());
+                }
+            }
+            List<File> changed = new ArrayList<>();
+            for (Path path : batch.changed) {
+                // Covered by a rescan, or already gone again
+                if (!underAny(path, batch.rescans) && Files.isRegularFile(path)) {
+                    changed.add(path.toFile());
+                }
+            }
+
+            LibraryScanner.Progress rescanned = rescans.isEmpty() ? null : LibraryScanner.rescan(rescans, null).awaitProgress();
+            LibraryScanner.Progress imported = changed.isEmpty() ? null : LibraryScanner.start(changed, null).awaitProgress();
+            int removed = removeDeleted(batch.deleted);
+
+            System.out.println("Library watcher: " + changed.size() + " changed, " + batch.deleted.size() + " deleted, "
+                    + rescans.size() + " rescanned folders in " + (System.currentTimeMillis() - start) + " ms"
+                    + (imported != null ? "; import " + imported : "") + (rescanned != null ? "; rescan " + rescanned : "")
+                    + (removed > 0 ? "; removed " + removed : ""));
+        } catch (RuntimeException e) {
+            System.err.println("Error applying library watcher changes: " + e.getMessage());
+        }
+    }
+
+    // Removes the songs at deleted paths, or under deleted folders, that are still gone
+    private static int removeDeleted(Set<Path> deleted) {
+        LibraryStore store = LibraryStores.get();
+        List<String> files = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (Path path : deleted) {
+            if (Files.exists(path)) {
+                continue;
+            }
+            if (SongManager.isSupportedAudioFile(path.toFile())) {
+                files.add(path.toString());
+            } else {
+                // Most likely a folder; whatever was under it went with it
+                for (SongManager.SongInfo song : store.getSongsUnder(path.toString())) {
+                    if (!new File(song.path).exists()) {
+                        ids.add(song.id);
+                    }
+                }
+            }
+        }
+        for (SongManager.SongInfo song : store.getStampedSongs(files).values()) {
+            ids.add(song.id);
+        }
+        return ids.isEmpty() ? 0 : store.deleteSongs(ids).join();
+    }
+
+    private static List<Path> outermost(Set<Path> dirs) {
+        List<Path> outer = new ArrayList<>();
+        for (Path dir : dirs) {
+            boolean nested = false;
+            for (Path other : dirs) {
+                if (!other.equals(dir) && dir.startsWith(other)) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                outer.add(dir);
+            }
+        }
+        return outer;
+    }
+
+    private static boolean underAny(Path path, Set<Path> dirs) {
+        for (Path dir : dirs) {
+            if (path.startsWith(dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
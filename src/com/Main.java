@@ -157,6 +157,9 @@ public class Main extends Application {
     @Override
     public void stop() throws Exception {
         MusicPlayerManager.getInstance().shutdown();
+        LibraryWatcher.stop();
+        MetadataBackfill.stop();
+        LibraryStores.get().close();
         super.stop();
     }
 
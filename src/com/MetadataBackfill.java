@@ -0,0 +1,108 @@
+package com;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+// Fills in SongMetadata for songs stored before it was read, or by an older SongMetadata.VERSION,
+// by re-reading their files in the background. Runs once per start on a single minimum-priority
+// thread, a batch at a time with a pause in between, so playback and the UI don't notice it.
+//
+// Per song:
+//   file gone                     skipped; LibraryVerifier or the watcher deals with it, and a later
+//                                 start retries it if it comes back
+//   unreadable                    stored with SongMetadata.EMPTY, so it isn't retried every start
+//   name, artist, duration same   only the metadata and stamp are written (updateMetadataAsync),
+//                                 which publishes no event
+//   anything else changed         the whole song is rewritten (updateSongsAsync), as a rescan would
+public class MetadataBackfill {
+
+    private static final int BATCH_SIZE = 200;
+    private static final long PAUSE_MILLIS = 100;
+
+    private static Thread thread;
+
+    // Starts the backfill unless it is already running
+    public static synchronized void start() {
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        thread = new Thread(MetadataBackfill::run, "MetadataBackfill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // Stops after the batch in progress; what is left is picked up on the next start
+    public static synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private static void run() {
+        LibraryStore store = LibraryStores.get();
+        long start = System.currentTimeMillis();
+        int read = 0;
+        int updated = 0;
+        int missing = 0;
+        try {
+            for (int version = 0; version < SongMetadata.VERSION; version++) {
+                long afterId = 0;
+                List<SongManager.SongInfo> batch;
+                while (!(batch = store.getSongsWithMetadataVersion(version, afterId, BATCH_SIZE)).isEmpty()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    afterId = batch.get(batch.size() - 1).id;
+                    List<SongManager.SongInfo> metadataOnly = new ArrayList<>();
+                    List<SongManager.SongInfo> rewritten = new ArrayList<>();
+                    for (SongManager.SongInfo stored : batch) {
+                        File file = new File(stored.path);
+                        if (!file.isFile()) {
+                            missing++;
+                            continue;
+                        }
+                        read++;
+                        SongManager.SongInfo fresh = SongManager.readMp3(file);
+                        if (fresh == null) {
+                            metadataOnly.add(new SongManager.SongInfo(stored.id, stored.fileName, stored.path, stored.artist,
+                                    stored.duration, stored.stamp, SongMetadata.EMPTY));
+                        } else if (sameListing(stored, fresh)) {
+                            metadataOnly.add(fresh.withId(stored.id));
+                        } else {
+                            rewritten.add(fresh.withId(stored.id));
+                        }
+                    }
+                    CompletableFuture<Integer> metadata = store.updateMetadataAsync(metadataOnly);
+                    CompletableFuture<List<SqliteDBManager.InsertResult>> songs = store.updateSongsAsync(rewritten);
+                    updated += metadata.join();
+                    for (SqliteDBManager.InsertResult result : songs.join()) {
+                        if (result.status == SqliteDBManager.InsertStatus.UPDATED) {
+                            updated++;
+                        }
+                    }
+                    Thread.sleep(PAUSE_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop()
+        } catch (RuntimeException e) {
+            System.err.println("Error backfilling song metadata: " + e.getMessage());
+        } finally {
+            if (read > 0 || missing > 0) {
+                System.out.println("Metadata backfill: " + read + " read, " + updated + " updated, " + missing
+                        + " missing in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        }
+    }
+
+    // Whether the library would list the song just as it does now
+    private static boolean sameListing(SongManager.SongInfo stored, SongManager.SongInfo fresh) {
+        return Objects.equals(stored.fileName, fresh.fileName) && Objects.equals(stored.path, fresh.path)
+                && Objects.equals(stored.artist, fresh.artist) && Objects.equals(stored.duration, fresh.duration);
+    }
+}
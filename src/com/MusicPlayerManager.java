@@ -24,6 +24,10 @@ public class MusicPlayerManager {
     private double savedPosition = 0.0;
     private boolean wasPlayingBeforeError = false;
 
+    // The play being timed for PlayHistory; null when nothing is playing
+    private SongManager.SongInfo playingSong;
+    private long playStartedAt;
+
     // --- JavaFX Properties for UI Binding ---
     private final ReadOnlyObjectWrapper<SongManager.SongInfo> currentSong = new ReadOnlyObjectWrapper<>();
     private final ReadOnlyBooleanWrapper isPlaying = new ReadOnlyBooleanWrapper(false);
@@ -103,6 +107,14 @@ public class MusicPlayerManager {
             Media media = new Media(file.toURI().toString());
             mediaPlayer = new MediaPlayer(media);
 
+            // Recovering from an error restarts the same song mid-way; that is still the same play
+            boolean resuming = savedPosition > 0 && song.equals(playingSong);
+            if (!resuming) {
+                finishPlay(false);
+                playingSong = song;
+                playStartedAt = System.currentTimeMillis();
+            }
+
             // Add error handler to catch sleep/wake issues
             mediaPlayer.setOnError(() -> {
                 MediaException error = mediaPlayer.getError();
@@ -139,13 +151,30 @@ public class MusicPlayerManager {
                 currentTime.set(newTime);
             });
 
-            mediaPlayer.setOnEndOfMedia(this::next);
+            mediaPlayer.setOnEndOfMedia(() -> {
+                finishPlay(true);
+                next();
+            });
             mediaPlayer.setVolume(volume.get());
 
         } catch (Exception e) {
             System.err.println("Error playing song: " + e.getMessage());
             isPlaying.set(false);
-            SqliteDBManager.deleteSong(song.path);
+            // A song that never started isn't history, but whatever was playing before it has ended
+            if (song.equals(playingSong)) {
+                playingSong = null;
+            } else {
+                finishPlay(false);
+            }
+            LibraryStores.get().deleteSong(song);
+        }
+    }
+
+    // Records the current play, if any. Anything that ends it before the end of the media is a skip.
+    private void finishPlay(boolean completed) {
+        if (playingSong != null) {
+            PlayHistory.record(playingSong, playStartedAt, System.currentTimeMillis(), completed);
+            playingSong = null;
         }
     }
 
@@ -219,6 +248,11 @@ public class MusicPlayerManager {
     public void next() {
         if (songQueue.isEmpty()) return;
         savedPosition = 0.0; // Reset saved position for new song
+        resyncCurrentIndex();
+        // A LibraryQueue holds the library a page at a time; fetch the next one before wrapping
+        if (currentSongIndex + 1 >= songQueue.size() && songQueue instanceof LibraryQueue library) {
+            library.loadMore();
+        }
         currentSongIndex = (currentSongIndex + 1) % songQueue.size(); // Wrap around
         playSong(currentSongIndex);
     }
@@ -226,10 +260,25 @@ public class MusicPlayerManager {
     public void previous() {
         if (songQueue.isEmpty()) return;
         savedPosition = 0.0; // Reset saved position for new song
+        resyncCurrentIndex();
+        // Wrapping back from the start of a LibraryQueue would mean reading the whole library first;
+        // restart the first song instead
+        if (currentSongIndex <= 0 && songQueue instanceof LibraryQueue library && library.hasMore()) {
+            playSong(0);
+            return;
+        }
         currentSongIndex = (currentSongIndex - 1 + songQueue.size()) % songQueue.size(); // Wrap around
         playSong(currentSongIndex);
     }
 
+    // A page may hand over its live list, which shifts as library changes are patched in
+    private void resyncCurrentIndex() {
+        int index = songQueue.indexOf(currentSong.get());
+        if (index >= 0) {
+            currentSongIndex = index;
+        }
+    }
+
     public void seek(Duration duration) {
         if (mediaPlayer != null) {
             try {
@@ -242,6 +291,7 @@ public class MusicPlayerManager {
     }
 
     public void shutdown() {
+        finishPlay(false);
         if (mediaPlayer != null) {
             try {
                 mediaPlayer.stop();
@@ -0,0 +1,167 @@
+package com;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// What was played, and how often. Plays are recorded from the player thread into an in-memory
+// buffer and written in batches (every FLUSH_INTERVAL_SECONDS, or as soon as BATCH_SIZE plays are
+// waiting), so playback never waits on disk. The read methods only see flushed plays.
+public class PlayHistory {
+
+    private static class Play {
+        final long songId;
+        final long startedAt;
+        final long endedAt;
+        final boolean completed;
+
+        Play(long songId, long startedAt, long endedAt, boolean completed) {
+            this.songId = songId;
+            this.startedAt = startedAt;
+            this.endedAt = endedAt;
+            this.completed = completed;
+        }
+    }
+
+    private static final int BATCH_SIZE = 32;
+    private static final long FLUSH_INTERVAL_SECONDS = 10;
+
+    private static final List<Play> BUFFER = new ArrayList<>();
+    private static final ScheduledExecutorService FLUSHER = createFlusher();
+
+    private static ScheduledExecutorService createFlusher() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PlayHistory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(PlayHistory::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        return executor;
+    }
+
+    // Records one playback of song between the two timestamps (epoch millis). Never blocks on the database.
+    public static void record(SongManager.SongInfo song, long startedAt, long endedAt, boolean completed) {
+        if (song == null || song.id == 0) return;
+        boolean full;
+        synchronized (BUFFER) {
+            BUFFER.add(new Play(song.id, startedAt, endedAt, completed));
+            full = BUFFER.size() >= BATCH_SIZE;
+        }
+        if (full) {
+            FLUSHER.execute(PlayHistory::flush);
+        }
+    }
+
+    // Writes everything buffered so far in one write task and announces it as PLAYS_RECORDED.
+    // Completes with the number of plays stored; plays of songs deleted in the meantime are dropped.
+    public static CompletableFuture<Integer> flush() {
+        List<Play> batch;
+        synchronized (BUFFER) {
+            if (BUFFER.isEmpty()) {
+                return CompletableFuture.completedFuture(0);
+            }
+            batch = new ArrayList<>(BUFFER);
+            BUFFER.clear();
+        }
+        return SqliteDBManager.write(conn -> insertPlays(conn, batch)).thenApply(stored -> {
+            if (stored > 0) {
+                Set<Long> ids = new LinkedHashSet<>();
+                for (Play play : batch) {
+                    ids.add(play.songId);
+                }
+                SqliteDBManager.committed(LibraryEvent.playsRecorded(ids));
+            }
+            return stored;
+        }).exceptionally(e -> {
+            System.err.println("Error saving play history: " + e.getMessage());
+            return 0;
+        });
+    }
+
+    private static int insertPlays(Connection conn, List<Play> batch) throws SQLException {
+        // The play_history_ai trigger keeps song_stats in step
+        String sql = """
+            INSERT INTO play_history (song_id, started_at, ended_at, completed)
+            SELECT ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM songs WHERE id = ?)
+        """;
+        int stored = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Play play : batch) {
+                pstmt.setLong(1, play.songId);
+                pstmt.setLong(2, play.startedAt);
+                pstmt.setLong(3, play.endedAt);
+                pstmt.setInt(4, play.completed ? 1 : 0);
+                pstmt.setLong(5, play.songId);
+                pstmt.addBatch();
+            }
+            for (int rows : pstmt.executeBatch()) {
+                stored += Math.max(rows, 0);
+            }
+        }
+        return stored;
+    }
+
+    // Songs played to the end most often, most played first
+    public static List<SongManager.SongInfo> mostPlayed(int limit) {
+        return querySongs("""
+            SELECT s.id, s.fileName, s.path, s.artist, s.duration
+            FROM song_stats st
+            JOIN songs s ON s.id = st.song_id
+            WHERE st.play_count > 0
+            ORDER BY st.play_count DESC, st.song_id DESC
+            LIMIT ?
+        """, limit, "most played songs");
+    }
+
+    // Songs by the start of their latest play (completed or skipped), newest first
+    public static List<SongManager.SongInfo> recentlyPlayed(int limit) {
+        return querySongs("""
+            SELECT s.id, s.fileName, s.path, s.artist, s.duration
+            FROM song_stats st
+            JOIN songs s ON s.id = st.song_id
+            ORDER BY st.last_played DESC, st.song_id DESC
+            LIMIT ?
+        """, limit, "recently played songs");
+    }
+
+    // Songs never played to the end, in SortKey.FILE_NAME order
+    public static List<SongManager.SongInfo> neverPlayed(int limit) {
+        return querySongs("""
+            SELECT s.id, s.fileName, s.path, s.artist, s.duration
+            FROM songs s
+            WHERE NOT EXISTS (SELECT 1 FROM song_stats st WHERE st.song_id = s.id AND st.play_count > 0)
+            ORDER BY s.fileName, s.id
+            LIMIT ?
+        """, limit, "never played songs");
+    }
+
+    private static List<SongManager.SongInfo> querySongs(String sql, int limit, String what) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        try (Connection conn = SqliteDBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(new SongManager.SongInfo(
+                            rs.getLong(1),
+                            rs.getString(2),
+                            rs.getString(3),
+                            rs.getString(4),
+                            rs.getInt(5)
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting " + what + ": " + e.getMessage());
+        }
+        return songs;
+    }
+}
@@ -0,0 +1,360 @@
+package com;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency and row counts for every statement run against the library, grouped by the operation that
+// issued it ("SqliteDBManager.getAllSongs", "PlayHistory.mostPlayed", ...; see caller()).
+// instrument() wraps a connection so that its statements and result sets are timed: a query's time
+// includes stepping through its rows, but not what the caller does between rows. Statements slower
+// than the threshold are logged once with their EXPLAIN QUERY PLAN.
+public class QueryMetrics {
+
+    // Upper bounds of the histogram buckets in microseconds; the last bucket is open-ended
+    private static final long[] BUCKET_MICROS = {
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+    };
+
+    public static class OperationStats {
+        public final String operation;
+        public final long calls;
+        public final long errors;
+        public final long rows;
+        public final long totalNanos;
+        public final long maxNanos;
+        // counts[i] is the number of calls that took at most bucketUpperMillis(i)
+        public final long[] histogram;
+
+        OperationStats(String operation, long calls, long errors, long rows, long totalNanos, long maxNanos, long[] histogram) {
+            this.operation = operation;
+            this.calls = calls;
+            this.errors = errors;
+            this.rows = rows;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+        }
+
+        // Infinity for the last, open-ended bucket
+        public static double bucketUpperMillis(int bucket) {
+            return bucket < BUCKET_MICROS.length ? BUCKET_MICROS[bucket] / 1000.0 : Double.POSITIVE_INFINITY;
+        }
+
+        public double totalMillis() {
+            return totalNanos / 1_000_000.0;
+        }
+
+        public double meanMillis() {
+            return calls == 0 ? 0.0 : totalMillis() / calls;
+        }
+
+        public double maxMillis() {
+            return maxNanos / 1_000_000.0;
+        }
+
+        // Upper bound of the bucket holding the given percentile (0-100), capped at the observed maximum
+        public double percentileMillis(double percentile) {
+            long rank = (long) Math.ceil(calls * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(bucketUpperMillis(i), maxMillis());
+                }
+            }
+            return maxMillis();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: calls=%d, errors=%d, rows=%d, total=%.1f ms, mean=%.3f ms, p95<=%.3f ms, max=%.3f ms",
+                    operation, calls, errors, rows, totalMillis(), meanMillis(), percentileMillis(95), maxMillis());
+        }
+    }
+
+    private static class Recorder {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKET_MICROS.length + 1);
+
+        void record(long nanos, long rowCount, boolean failed) {
+            calls.increment();
+            if (failed) errors.increment();
+            rows.add(rowCount);
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            histogram.incrementAndGet(bucket(nanos / 1000));
+        }
+
+        OperationStats stats(String operation) {
+            long[] counts = new long[histogram.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = histogram.get(i);
+            }
+            return new OperationStats(operation, calls.sum(), errors.sum(), rows.sum(), totalNanos.sum(), maxNanos.get(), counts);
+        }
+    }
+
+    // One execution of a statement, finished when its rows have been read (or right away for updates)
+    private static class Execution {
+        final String operation;
+        final String sql;
+        final Connection physical;
+        long nanos;
+        long rows;
+        boolean done;
+
+        Execution(String operation, String sql, Connection physical) {
+            this.operation = operation;
+            this.sql = sql;
+            this.physical = physical;
+        }
+
+        void finish(boolean failed) {
+            if (done) return;
+            done = true;
+            record(this, failed);
+        }
+    }
+
+    private static final long DEFAULT_SLOW_QUERY_MS = 100;
+
+    private static final Map<String, Recorder> RECORDERS = new ConcurrentHashMap<>();
+    // Statements whose plan has already been logged; a slow query is explained once, not on every run
+    private static final Set<String> EXPLAINED = ConcurrentHashMap.newKeySet();
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    private static volatile long slowQueryNanos = loadThreshold();
+
+    private static long loadThreshold() {
+        long millis = new UserProperties().getSlowQueryThresholdMs();
+        return (millis > 0 ? millis : DEFAULT_SLOW_QUERY_MS) * 1_000_000L;
+    }
+
+    // Busiest operations (by total time) first
+    public static List<OperationStats> getStats() {
+        List<OperationStats> stats = new ArrayList<>();
+        for (Map.Entry<String, Recorder> entry : RECORDERS.entrySet()) {
+            stats.add(entry.getValue().stats(entry.getKey()));
+        }
+        stats.sort(Comparator.comparingLong((OperationStats s) -> s.totalNanos).reversed());
+        return stats;
+    }
+
+    public static OperationStats getStats(String operation) {
+        Recorder recorder = RECORDERS.get(operation);
+        return recorder == null ? null : recorder.stats(operation);
+    }
+
+    public static void reset() {
+        RECORDERS.clear();
+        EXPLAINED.clear();
+    }
+
+    public static long getSlowQueryThresholdMs() {
+        return slowQueryNanos / 1_000_000L;
+    }
+
+    // Takes effect immediately; the saved setting (UserProperties) is read once at startup
+    public static void setSlowQueryThresholdMs(long millis) {
+        slowQueryNanos = Math.max(1, millis) * 1_000_000L;
+    }
+
+    // Returns a connection whose statements are timed. Closing it closes physical.
+    public static Connection instrument(Connection physical) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(physical, method, args);
+            if (result instanceof Statement stmt) {
+                String sql = method.getName().equals("prepareStatement") ? (String) args[0] : null;
+                return wrapStatement(stmt, physical, sql, caller());
+            }
+            return result;
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static Statement wrapStatement(Statement stmt, Connection physical, String preparedSql, String operation) {
+        InvocationHandler handler = new InvocationHandler() {
+            // Query whose rows are still being read
+            private Execution open;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (!name.startsWith("execute")) {
+                    if (name.equals("close") && open != null) {
+                        open.finish(false);
+                    }
+                    return QueryMetrics.invoke(stmt, method, args);
+                }
+
+                if (open != null) {
+                    // Re-executing implicitly closes the previous result set
+                    open.finish(false);
+                    open = null;
+                }
+                String sql = preparedSql != null ? preparedSql : args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                Execution execution = new Execution(operation, sql, physical);
+                long start = System.nanoTime();
+                Object result;
+                try {
+                    result = QueryMetrics.invoke(stmt, method, args);
+                } catch (Throwable t) {
+                    execution.nanos = System.nanoTime() - start;
+                    execution.finish(true);
+                    throw t;
+                }
+                execution.nanos = System.nanoTime() - start;
+
+                if (result instanceof ResultSet rs) {
+                    open = execution;
+                    return wrapResultSet(rs, execution);
+                }
+                if (result instanceof Integer count) {
+                    execution.rows = Math.max(count, 0);
+                } else if (result instanceof Long count) {
+                    execution.rows = Math.max(count, 0);
+                } else if (result instanceof int[] counts) {
+                    for (int count : counts) {
+                        execution.rows += Math.max(count, 0);
+                    }
+                }
+                execution.finish(false);
+                return result;
+            }
+        };
+        Class<?> type = stmt instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static ResultSet wrapResultSet(ResultSet rs, Execution execution) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long start = System.nanoTime();
+                boolean more;
+                try {
+                    more = (Boolean) invoke(rs, method, args);
+                } catch (Throwable t) {
+                    execution.nanos += System.nanoTime() - start;
+                    execution.finish(true);
+                    throw t;
+                }
+                execution.nanos += System.nanoTime() - start;
+                if (more) {
+                    execution.rows++;
+                } else {
+                    execution.finish(false);
+                }
+                return more;
+            }
+            if (name.equals("close")) {
+                execution.finish(false);
+            }
+            return invoke(rs, method, args);
+        };
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, handler);
+    }
+
+    private static void record(Execution execution, boolean failed) {
+        RECORDERS.computeIfAbsent(execution.operation, k -> new Recorder()).record(execution.nanos, execution.rows, failed);
+        if (execution.nanos >= slowQueryNanos && execution.sql != null && EXPLAINED.add(execution.sql)) {
+            logSlowQuery(execution);
+        }
+    }
+
+    private static void logSlowQuery(Execution execution) {
+        StringBuilder log = new StringBuilder(String.format("Slow query in %s: %.1f ms, %d rows%n  %s",
+                execution.operation, execution.nanos / 1_000_000.0, execution.rows, oneLine(execution.sql)));
+        // Parameters are left unbound; the plan doesn't depend on their values here
+        try (Statement stmt = execution.physical.createStatement();
+             ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + execution.sql)) {
+            while (rs.next()) {
+                log.append(System.lineSeparator()).append("  plan: ").append(rs.getString("detail"));
+            }
+        } catch (SQLException e) {
+            log.append(System.lineSeparator()).append("  (no plan: ").append(e.getMessage()).append(')');
+        }
+        System.err.println(log);
+    }
+
+    // The operation a statement belongs to: the innermost method outside the database plumbing, followed
+    // outwards through its own class, so helpers (lastInsertId, getPlaylistId) and write lambdas are
+    // credited to the public method that called or queued them
+    private static String caller() {
+        return WALKER.walk(frames -> {
+            StackWalker.StackFrame operation = null;
+            for (StackWalker.StackFrame frame : (Iterable<StackWalker.StackFrame>) frames::iterator) {
+                if (operation == null) {
+                    if (isAppClass(frame.getClassName())) {
+                        operation = frame;
+                    }
+                } else if (frame.getClassName().equals(operation.getClassName())) {
+                    operation = frame;
+                } else {
+                    break;
+                }
+            }
+            return operation == null ? "unknown"
+                    : simpleName(operation.getClassName()) + "." + enclosingMethod(operation.getMethodName());
+        });
+    }
+
+    private static boolean isAppClass(String className) {
+        return (className.startsWith("com.") || className.startsWith("pages."))
+                && !className.startsWith("com.QueryMetrics")
+                && !className.startsWith("com.ConnectionPool");
+    }
+
+    private static String simpleName(String className) {
+        String name = className.substring(className.lastIndexOf('.') + 1);
+        int nested = name.indexOf('$');
+        return nested < 0 ? name : name.substring(0, nested);
+    }
+
+    // "lambda$insertNewSong$12" -> "insertNewSong"
+    private static String enclosingMethod(String methodName) {
+        if (methodName.startsWith("lambda$")) {
+            int end = methodName.indexOf('$', 7);
+            return end < 0 ? methodName.substring(7) : methodName.substring(7, end);
+        }
+        return methodName;
+    }
+
+    private static String oneLine(String sql) {
+        return sql.strip().replaceAll("\\s+", " ");
+    }
+
+    private static int bucket(long micros) {
+        for (int i = 0; i < BUCKET_MICROS.length; i++) {
+            if (micros <= BUCKET_MICROS[i]) return i;
+        }
+        return BUCKET_MICROS.length;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
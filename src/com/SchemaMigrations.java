@@ -0,0 +1,499 @@
+package com;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Versioned schema for library.db, driven by PRAGMA user_version.
+// Each step runs in its own IMMEDIATE transaction together with the version bump,
+// so a crash leaves the database at the previous version and the step simply runs again.
+public class SchemaMigrations {
+
+    interface Migration {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static class Step {
+        final int version;
+        final String description;
+        final Migration migration;
+
+        Step(int version, String description, Migration migration) {
+            this.version = version;
+            this.description = description;
+            this.migration = migration;
+        }
+    }
+
+    // Databases used before the unified schema. They are left on disk untouched after being imported.
+    private static final String LEGACY_SONGS_DB = "songs.db";
+    private static final String LEGACY_PLAYLISTS_DB = "playlists.db";
+
+    private static final List<Step> STEPS = new ArrayList<>();
+
+    // Re-indexes a song's text only when it changes. Stamp, metadata and path-only updates, which
+    // rescans and MetadataBackfill issue for every song, leave songs_fts alone.
+    private static final String SONGS_FTS_UPDATE_TRIGGER = """
+        CREATE TRIGGER IF NOT EXISTS songs_fts_au AFTER UPDATE OF fileName, artist ON songs
+        WHEN old.fileName IS NOT new.fileName OR old.artist IS NOT new.artist BEGIN
+            INSERT INTO songs_fts (songs_fts, rowid, fileName, artist) VALUES ('delete', old.id, old.fileName, old.artist);
+            INSERT INTO songs_fts (rowid, fileName, artist) VALUES (new.id, new.fileName, new.artist);
+        END
+    """;
+
+    static {
+        STEPS.add(new Step(1, "unified songs/playlists schema", SchemaMigrations::unifiedSchema));
+        STEPS.add(new Step(2, "sort indexes for paginated song queries", SchemaMigrations::sortIndexes));
+        STEPS.add(new Step(3, "full-text search index", SchemaMigrations::fullTextSearch));
+        STEPS.add(new Step(4, "verified roots for incremental library verification", SchemaMigrations::verifiedRoots));
+        STEPS.add(new Step(5, "stored playlist aggregates", SchemaMigrations::playlistAggregates));
+        STEPS.add(new Step(6, "user-defined playlist order", SchemaMigrations::playlistPositions));
+        STEPS.add(new Step(7, "play history and per-song play counts", SchemaMigrations::playHistory));
+        STEPS.add(new Step(8, "smart playlist rules", SchemaMigrations::smartPlaylists));
+        STEPS.add(new Step(9, "file stamps for incremental rescans", SchemaMigrations::fileStamps));
+        STEPS.add(new Step(10, "song metadata columns", SchemaMigrations::songMetadata));
+        STEPS.add(new Step(11, "full-text index updates only on text changes", SchemaMigrations::ftsTextUpdates));
+        STEPS.add(new Step(12, "full-text search over song tags", SchemaMigrations::ftsTagColumns));
+    }
+
+    public static int latestVersion() {
+        return STEPS.get(STEPS.size() - 1).version;
+    }
+
+    public static void migrate(Connection conn, String appDir) throws SQLException {
+        int current = getUserVersion(conn);
+        if (current >= latestVersion()) {
+            return;
+        }
+
+        // ATTACH is not allowed inside a transaction, so legacy files are attached up front
+        boolean legacyAttached = false;
+        if (current == 0) {
+            legacyAttached = attachLegacy(conn, appDir);
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            for (Step step : STEPS) {
+                stmt.execute("BEGIN IMMEDIATE");
+                try {
+                    // Another process may have migrated while we waited for the write lock
+                    if (getUserVersion(conn) >= step.version) {
+                        stmt.execute("COMMIT");
+                        continue;
+                    }
+                    step.migration.apply(conn);
+                    stmt.execute("PRAGMA user_version = " + step.version);
+                    stmt.execute("COMMIT");
+                    System.out.println("Migrated library schema to v" + step.version + " (" + step.description + ")");
+                } catch (SQLException e) {
+                    stmt.execute("ROLLBACK");
+                    throw e;
+                }
+            }
+        } finally {
+            if (legacyAttached) {
+                detachLegacy(conn);
+            }
+        }
+    }
+
+    private static int getUserVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static boolean attachLegacy(Connection conn, String appDir) throws SQLException {
+        boolean attached = false;
+        File songsDb = new File(appDir, LEGACY_SONGS_DB);
+        File playlistsDb = new File(appDir, LEGACY_PLAYLISTS_DB);
+        try (Statement stmt = conn.createStatement()) {
+            if (songsDb.isFile()) {
+                stmt.execute("ATTACH DATABASE '" + songsDb.getAbsolutePath().replace("'", "''") + "' AS legacy_songs");
+                attached = true;
+            }
+            if (playlistsDb.isFile()) {
+                stmt.execute("ATTACH DATABASE '" + playlistsDb.getAbsolutePath().replace("'", "''") + "' AS legacy_playlists");
+                attached = true;
+            }
+        }
+        return attached;
+    }
+
+    private static void detachLegacy(Connection conn) {
+        for (String schema : List.of("legacy_songs", "legacy_playlists")) {
+            if (hasSchema(conn, schema)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DETACH DATABASE " + schema);
+                } catch (SQLException e) {
+                    System.err.println("Error detaching " + schema + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static boolean hasSchema(Connection conn, String schema) {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA database_list")) {
+            while (rs.next()) {
+                if (schema.equals(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error listing attached databases: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private static boolean hasTable(Connection conn, String schema, String table) throws SQLException {
+        if (!hasSchema(conn, schema)) {
+            return false;
+        }
+        String sql = "SELECT 1 FROM " + schema + ".sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // --- Migrations ---
+
+    // v1: songs and playlists in one file with enforceable foreign keys, carrying over songs.db / playlists.db
+    private static void unifiedSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS songs (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    fileName TEXT NOT NULL,
+                    path TEXT NOT NULL UNIQUE,
+                    artist TEXT,
+                    duration INTEGER
+                )
+            """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_fileName ON songs(fileName)");
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS playlists (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    name TEXT NOT NULL UNIQUE
+                )
+            """);
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS playlist_songs (
+                    playlist_id INTEGER NOT NULL REFERENCES playlists(id) ON DELETE CASCADE,
+                    song_id INTEGER NOT NULL REFERENCES songs(id) ON DELETE CASCADE,
+                    PRIMARY KEY (playlist_id, song_id)
+                ) WITHOUT ROWID
+            """);
+            // The primary key covers lookups by playlist; this one covers cascades and lookups by song
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_playlist_songs_song ON playlist_songs(song_id)");
+
+            // Ids are preserved so existing playlist membership keeps pointing at the right rows
+            if (hasTable(conn, "legacy_songs", "songs")) {
+                int n = stmt.executeUpdate("""
+                    INSERT OR IGNORE INTO songs (id, fileName, path, artist, duration)
+                    SELECT id, fileName, path, artist, duration FROM legacy_songs.songs
+                """);
+                System.out.println("Imported " + n + " songs from " + LEGACY_SONGS_DB);
+            }
+            if (hasTable(conn, "legacy_playlists", "playlists")) {
+                stmt.executeUpdate("""
+                    INSERT OR IGNORE INTO playlists (id, name)
+                    SELECT id, name FROM legacy_playlists.playlists
+                """);
+            }
+            if (hasTable(conn, "legacy_playlists", "playlist_songs")) {
+                // The old tables could not enforce their foreign keys, so drop dangling rows on the way in
+                stmt.executeUpdate("""
+                    INSERT OR IGNORE INTO playlist_songs (playlist_id, song_id)
+                    SELECT ps.playlist_id, ps.song_id FROM legacy_playlists.playlist_songs ps
+                    WHERE ps.playlist_id IN (SELECT id FROM playlists)
+                      AND ps.song_id IN (SELECT id FROM songs)
+                """);
+            }
+
+            stmt.execute("INSERT OR IGNORE INTO playlists (name) VALUES ('liked_songs')");
+        }
+    }
+
+    // v2: indexes behind SongPage.SortKey. The expressions must match SortKey exactly;
+    // fileName is already covered by idx_songs_fileName (the rowid is implicitly the tie-breaker).
+    private static void sortIndexes(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_artist ON songs(IFNULL(artist, ''))");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_duration ON songs(IFNULL(duration, 0))");
+        }
+    }
+
+    // v3: FTS5 index over the searchable song fields. It is an external-content table,
+    // so it stores only the index and the triggers below keep it in step with songs.
+    private static void fullTextSearch(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE VIRTUAL TABLE IF NOT EXISTS songs_fts USING fts5(
+                    fileName, artist,
+                    content = 'songs', content_rowid = 'id',
+                    tokenize = 'unicode61 remove_diacritics 2',
+                    prefix = '2 3'
+                )
+            """);
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS songs_fts_ai AFTER INSERT ON songs BEGIN
+                    INSERT INTO songs_fts (rowid, fileName, artist) VALUES (new.id, new.fileName, new.artist);
+                END
+            """);
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS songs_fts_ad AFTER DELETE ON songs BEGIN
+                    INSERT INTO songs_fts (songs_fts, rowid, fileName, artist) VALUES ('delete', old.id, old.fileName, old.artist);
+                END
+            """);
+            stmt.execute(SONGS_FTS_UPDATE_TRIGGER);
+            stmt.execute("INSERT INTO songs_fts (songs_fts) VALUES ('rebuild')");
+        }
+    }
+
+    // v4: directory mtimes as of the last successful LibraryVerifier pass over them.
+    // A directory whose mtime still matches has had nothing added, removed or renamed since.
+    private static void verifiedRoots(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS verified_roots (
+                    root TEXT PRIMARY KEY,
+                    mtime INTEGER NOT NULL,
+                    verified_at INTEGER NOT NULL
+                ) WITHOUT ROWID
+            """);
+        }
+    }
+
+    // v5: song_count / total_duration stored on each playlist so listing playlists is a plain scan.
+    // Membership triggers also fire for rows removed by the ON DELETE CASCADE from songs, but by then
+    // the song row is gone, so a deleted song's duration is subtracted by the BEFORE DELETE trigger instead.
+    private static void playlistAggregates(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE playlists ADD COLUMN song_count INTEGER NOT NULL DEFAULT 0");
+            stmt.execute("ALTER TABLE playlists ADD COLUMN total_duration INTEGER NOT NULL DEFAULT 0");
+            stmt.executeUpdate("""
+                UPDATE playlists SET
+                    song_count = (SELECT COUNT(*) FROM playlist_songs ps WHERE ps.playlist_id = playlists.id),
+                    total_duration = (SELECT IFNULL(SUM(s.duration), 0) FROM playlist_songs ps
+                                      JOIN songs s ON s.id = ps.song_id WHERE ps.playlist_id = playlists.id)
+            """);
+
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS playlist_songs_ai AFTER INSERT ON playlist_songs BEGIN
+                    UPDATE playlists SET
+                        song_count = song_count + 1,
+                        total_duration = total_duration + IFNULL((SELECT duration FROM songs WHERE id = new.song_id), 0)
+                    WHERE id = new.playlist_id;
+                END
+            """);
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS playlist_songs_ad AFTER DELETE ON playlist_songs BEGIN
+                    UPDATE playlists SET
+                        song_count = song_count - 1,
+                        total_duration = total_duration - IFNULL((SELECT duration FROM songs WHERE id = old.song_id), 0)
+                    WHERE id = old.playlist_id;
+                END
+            """);
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS songs_playlists_bd BEFORE DELETE ON songs BEGIN
+                    UPDATE playlists SET total_duration = total_duration - IFNULL(old.duration, 0)
+                    WHERE id IN (SELECT playlist_id FROM playlist_songs WHERE song_id = old.id);
+                END
+            """);
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS songs_playlists_au AFTER UPDATE OF duration ON songs BEGIN
+                    UPDATE playlists SET total_duration = total_duration - IFNULL(old.duration, 0) + IFNULL(new.duration, 0)
+                    WHERE id IN (SELECT playlist_id FROM playlist_songs WHERE song_id = new.id);
+                END
+            """);
+        }
+    }
+
+    // v6: explicit track order within a playlist. Positions are sparse (multiples of
+    // SqliteDBManager.POSITION_GAP) so a move or insert only writes the rows involved.
+    // Existing playlists keep the order they were shown in until now (by file name).
+    private static void playlistPositions(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE playlist_songs ADD COLUMN position INTEGER NOT NULL DEFAULT 0");
+            stmt.executeUpdate("""
+                UPDATE playlist_songs SET position = r.rank * %d
+                FROM (
+                    SELECT ps.playlist_id AS pid, ps.song_id AS sid,
+                           ROW_NUMBER() OVER (PARTITION BY ps.playlist_id ORDER BY s.fileName, s.id) AS rank
+                    FROM playlist_songs ps JOIN songs s ON s.id = ps.song_id
+                ) AS r
+                WHERE playlist_songs.playlist_id = r.pid AND playlist_songs.song_id = r.sid
+            """.formatted(SqliteDBManager.POSITION_GAP));
+            // The table has no rowid, so this index also carries song_id and covers ORDER BY position, song_id
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_playlist_songs_position ON playlist_songs(playlist_id, position)");
+        }
+    }
+
+    // v7: one row per playback in play_history, summed per song into song_stats by a trigger so the
+    // "most played" / "recently played" lists are index scans. completed = 0 means the play was skipped.
+    // song_stats.song_id is the rowid, so the two stats indexes also cover the id tie-breaker.
+    private static void playHistory(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS play_history (
+                    id INTEGER PRIMARY KEY,
+                    song_id INTEGER NOT NULL REFERENCES songs(id) ON DELETE CASCADE,
+                    started_at INTEGER NOT NULL,
+                    ended_at INTEGER NOT NULL,
+                    completed INTEGER NOT NULL
+                )
+            """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_play_history_started ON play_history(started_at)");
+            // Also serves the ON DELETE CASCADE from songs
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_play_history_song ON play_history(song_id, started_at)");
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS song_stats (
+                    song_id INTEGER PRIMARY KEY REFERENCES songs(id) ON DELETE CASCADE,
+                    play_count INTEGER NOT NULL DEFAULT 0,
+                    skip_count INTEGER NOT NULL DEFAULT 0,
+                    last_played INTEGER NOT NULL
+                )
+            """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_song_stats_play_count ON song_stats(play_count)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_song_stats_last_played ON song_stats(last_played)");
+
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS play_history_ai AFTER INSERT ON play_history BEGIN
+                    INSERT INTO song_stats (song_id, play_count, skip_count, last_played)
+                    VALUES (new.song_id, new.completed, 1 - new.completed, new.started_at)
+                    ON CONFLICT(song_id) DO UPDATE SET
+                        play_count = play_count + excluded.play_count,
+                        skip_count = skip_count + excluded.skip_count,
+                        last_played = MAX(last_played, excluded.last_played);
+                END
+            """);
+        }
+    }
+
+    // v8: rule-based playlists. A playlist with rows in smart_playlist_rules is "smart": its members
+    // are every song matching all of its rules, materialized into playlist_songs by SmartPlaylists.
+    // value has no declared type so numbers stay numbers and text stays text.
+    // Songs imported before this version have added_at = 0 (unknown).
+    private static void smartPlaylists(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE songs ADD COLUMN added_at INTEGER NOT NULL DEFAULT 0");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_added_at ON songs(added_at)");
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS smart_playlist_rules (
+                    playlist_id INTEGER NOT NULL REFERENCES playlists(id) ON DELETE CASCADE,
+                    seq INTEGER NOT NULL,
+                    condition TEXT NOT NULL,
+                    value NOT NULL,
+                    PRIMARY KEY (playlist_id, seq)
+                ) WITHOUT ROWID
+            """);
+        }
+    }
+
+    // v9: size, mtime and content signature of each song's file as of its last parse (see FileStamp).
+    // A rescan skips files whose size and mtime still match, and relinks a song whose file reappears
+    // elsewhere with the same size and signature. Rows from before this version have NULLs and are
+    // re-parsed, and stamped, the next time their folder is scanned.
+    private static void fileStamps(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE songs ADD COLUMN file_size INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN file_mtime INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN signature INTEGER");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_signature ON songs(file_size, signature) WHERE signature IS NOT NULL");
+        }
+    }
+
+    // v10: tags and stream properties of each song (see SongMetadata), and the SongMetadata.VERSION
+    // they were read with. Rows from before this version are at version 0 with NULLs and are filled
+    // in by MetadataBackfill. Columns a view would sort, group or filter on are indexed; album is
+    // indexed with disc and track so an album lists in order straight from the index. bitrate,
+    // sample_rate and channels take only a handful of values each and aren't.
+    private static void songMetadata(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE songs ADD COLUMN title TEXT");
+            stmt.execute("ALTER TABLE songs ADD COLUMN album TEXT");
+            stmt.execute("ALTER TABLE songs ADD COLUMN album_artist TEXT");
+            stmt.execute("ALTER TABLE songs ADD COLUMN track_number INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN disc_number INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN year INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN genre TEXT");
+            stmt.execute("ALTER TABLE songs ADD COLUMN bitrate INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN sample_rate INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN channels INTEGER");
+            stmt.execute("ALTER TABLE songs ADD COLUMN codec TEXT");
+            stmt.execute("ALTER TABLE songs ADD COLUMN metadata_version INTEGER NOT NULL DEFAULT 0");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_title ON songs(title)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_album ON songs(album, disc_number, track_number)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_album_artist ON songs(album_artist)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_year ON songs(year)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_genre ON songs(genre)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_codec ON songs(codec)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_songs_metadata_version ON songs(metadata_version)");
+        }
+    }
+
+    // v11: databases from v3 to v10 have songs_fts_au firing on every update of songs; replace it
+    // with the narrower trigger v3 now creates
+    private static void ftsTextUpdates(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TRIGGER IF EXISTS songs_fts_au");
+            stmt.execute(SONGS_FTS_UPDATE_TRIGGER);
+        }
+    }
+
+    // v12: songs_fts over the tag columns from v10 as well. FTS5 tables can't gain columns, so the
+    // index and its triggers are recreated and rebuilt from songs. The column order is the order of
+    // the bm25 weights in SqliteDBManager.search.
+    private static void ftsTagColumns(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TRIGGER IF EXISTS songs_fts_ai");
+            stmt.execute("DROP TRIGGER IF EXISTS songs_fts_ad");
+            stmt.execute("DROP TRIGGER IF EXISTS songs_fts_au");
+            stmt.execute("DROP TABLE IF EXISTS songs_fts");
+            stmt.execute("""
+                CREATE VIRTUAL TABLE songs_fts USING fts5(
+                    fileName, artist, title, album, album_artist, genre,
+                    content = 'songs', content_rowid = 'id',
+                    tokenize = 'unicode61 remove_diacritics 2',
+                    prefix = '2 3'
+                )
+            """);
+            stmt.execute("""
+                CREATE TRIGGER songs_fts_ai AFTER INSERT ON songs BEGIN
+                    INSERT INTO songs_fts (rowid, fileName, artist, title, album, album_artist, genre)
+                    VALUES (new.id, new.fileName, new.artist, new.title, new.album, new.album_artist, new.genre);
+                END
+            """);
+            stmt.execute("""
+                CREATE TRIGGER songs_fts_ad AFTER DELETE ON songs BEGIN
+                    INSERT INTO songs_fts (songs_fts, rowid, fileName, artist, title, album, album_artist, genre)
+                    VALUES ('delete', old.id, old.fileName, old.artist, old.title, old.album, old.album_artist, old.genre);
+                END
+            """);
+            // As in v11, stamp and stream property updates leave the index alone
+            stmt.execute("""
+                CREATE TRIGGER songs_fts_au AFTER UPDATE OF fileName, artist, title, album, album_artist, genre ON songs
+                WHEN old.fileName IS NOT new.fileName OR old.artist IS NOT new.artist OR old.title IS NOT new.title
+                    OR old.album IS NOT new.album OR old.album_artist IS NOT new.album_artist OR old.genre IS NOT new.genre
+                BEGIN
+                    INSERT INTO songs_fts (songs_fts, rowid, fileName, artist, title, album, album_artist, genre)
+                    VALUES ('delete', old.id, old.fileName, old.artist, old.title, old.album, old.album_artist, old.genre);
+                    INSERT INTO songs_fts (rowid, fileName, artist, title, album, album_artist, genre)
+                    VALUES (new.id, new.fileName, new.artist, new.title, new.album, new.album_artist, new.genre);
+                END
+            """);
+            stmt.execute("INSERT INTO songs_fts (songs_fts) VALUES ('rebuild')");
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Playlists whose members are defined by rules instead of picked by hand.
+// Rules are stored in smart_playlist_rules and compiled to a parameterized WHERE clause over songs;
+// the matching songs are materialized into playlist_songs, so a smart playlist is read (and cached,
+// and counted) exactly like any other playlist. After that, library changes only re-evaluate the
+// songs they touched: apply() is handed every committed LibraryEvent and queues one follow-up write
+// that adds the touched songs that now match and drops the ones that no longer do. Membership is owned
+// by the rules: a song added or removed by hand is put back in line the next time it changes.
+public class SmartPlaylists {
+
+    public enum Condition {
+        ARTIST_IS("IFNULL(s.artist, '') = ?", false),
+        ARTIST_CONTAINS("instr(lower(IFNULL(s.artist, '')), lower(?)) > 0", false),
+        // Seconds
+        MIN_DURATION("IFNULL(s.duration, 0) >= ?", true),
+        MAX_DURATION("IFNULL(s.duration, 0) <= ?", true),
+        // Epoch millis
+        ADDED_SINCE("s.added_at >= ?", true),
+        // Completed plays, see PlayHistory
+        MIN_PLAY_COUNT("IFNULL((SELECT st.play_count FROM song_stats st WHERE st.song_id = s.id), 0) >= ?", true);
+
+        // Predicate on songs s with a single parameter
+        final String predicate;
+        final boolean numeric;
+
+        Condition(String predicate, boolean numeric) {
+            this.predicate = predicate;
+            this.numeric = numeric;
+        }
+    }
+
+    public static class Rule {
+        public final Condition condition;
+        // Long for numeric conditions, String otherwise
+        public final Object value;
+
+        public Rule(Condition condition, Object value) {
+            if (condition.numeric ? !(value instanceof Number) : !(value instanceof String)) {
+                throw new IllegalArgumentException(condition + " needs a " + (condition.numeric ? "number" : "string"));
+            }
+            this.condition = condition;
+            this.value = condition.numeric ? (Object) ((Number) value).longValue() : value;
+        }
+
+        @Override
+        public String toString() {
+            return condition + " " + value;
+        }
+    }
+
+    private static class Definition {
+        final long playlistId;
+        final String name;
+        final List<Rule> rules = new ArrayList<>();
+
+        Definition(long playlistId, String name) {
+            this.playlistId = playlistId;
+            this.name = name;
+        }
+
+        boolean dependsOnPlays() {
+            for (Rule rule : rules) {
+                if (rule.condition == Condition.MIN_PLAY_COUNT) return true;
+            }
+            return false;
+        }
+    }
+
+    // Smart playlist name -> whether it has a play count rule; null until first loaded. Kept up to
+    // date by the rule writes (create, update, deletePlaylist) rather than re-read, because apply()
+    // runs on the writer thread and must not wait on a read connection. Concurrent, as isSmart()
+    // reads it outside the lock. Only used to decide whether an event needs a follow-up write at all.
+    private static Map<String, Boolean> known;
+
+    private static class Refresh {
+        final Map<String, Boolean> smart = new ConcurrentHashMap<>();
+        final List<String> changed = new ArrayList<>();
+    }
+
+    // Creates a smart playlist and fills it. Completes with the number of songs in it,
+    // or -1 if a playlist with that name already exists or the rules are empty.
+    public static CompletableFuture<Integer> create(String name, List<Rule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return CompletableFuture.completedFuture(-1);
+        }
+        List<Rule> copy = List.copyOf(rules);
+        return write("Error creating smart playlist", -1, conn -> {
+            if (SqliteDBManager.getPlaylistId(conn, name) != null) {
+                return -1;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO playlists (name) VALUES (?)")) {
+                pstmt.setString(1, name);
+                pstmt.executeUpdate();
+            }
+            Definition definition = new Definition(SqliteDBManager.getPlaylistId(conn, name), name);
+            definition.rules.addAll(copy);
+            storeRules(conn, definition);
+            sync(conn, definition, null);
+            return SqliteDBManager.getPlaylistSize(conn, definition.playlistId);
+        }, name, dependsOnPlays(copy));
+    }
+
+    // Replaces the rules of an existing smart playlist (or turns a plain playlist into one) and
+    // re-evaluates the whole library against them. Songs already in the playlist keep their place.
+    // Completes with the number of songs in it, or -1 if there is no such playlist or the rules are empty.
+    public static CompletableFuture<Integer> update(String name, List<Rule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return CompletableFuture.completedFuture(-1);
+        }
+        List<Rule> copy = List.copyOf(rules);
+        return write("Error updating smart playlist", -1, conn -> {
+            Long playlistId = SqliteDBManager.getPlaylistId(conn, name);
+            if (playlistId == null) {
+                return -1;
+            }
+            Definition definition = new Definition(playlistId, name);
+            definition.rules.addAll(copy);
+            storeRules(conn, definition);
+            sync(conn, definition, null);
+            return SqliteDBManager.getPlaylistSize(conn, playlistId);
+        }, name, dependsOnPlays(copy));
+    }
+
+    // Rules of the playlist in the order they were given; empty for a plain (or unknown) playlist
+    public static List<Rule> getRules(String name) {
+        String sql = """
+            SELECT r.condition, r.value FROM smart_playlist_rules r
+            JOIN playlists p ON p.id = r.playlist_id
+            WHERE p.name = ?
+            ORDER BY r.seq
+        """;
+        List<Rule> rules = new ArrayList<>();
+        try (Connection conn = SqliteDBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rules.add(toRule(rs.getString(1), rs.getObject(2)));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting smart playlist rules: " + e.getMessage());
+        }
+        return rules;
+    }
+
+    // Not for the writer thread: a cold set is loaded through a read connection
+    public static boolean isSmart(String name) {
+        Map<String, Boolean> smart = load();
+        return smart != null && smart.containsKey(name);
+    }
+
+    // Called by SqliteDBManager.committed() for every change, on the thread that committed it
+    static void apply(LibraryEvent event) {
+        boolean playsOnly;
+        List<Long> ids = new ArrayList<>();
+        switch (event.type) {
+            case SONGS_ADDED, SONGS_UPDATED -> {
+                playsOnly = false;
+                for (SongManager.SongInfo song : event.songs) {
+                    ids.add(song.id);
+                }
+            }
+            case PLAYS_RECORDED -> {
+                playsOnly = true;
+                ids.addAll(event.ids);
+            }
+            // Membership changes, including the ones refresh() announces; rule changes update known themselves
+            case PLAYLIST_CHANGED -> {
+                return;
+            }
+            case LIBRARY_REPLACED -> {
+                invalidate();
+                return;
+            }
+            // Removed songs leave every playlist through ON DELETE CASCADE
+            default -> {
+                return;
+            }
+        }
+        if (ids.isEmpty() || !anyAffected(playsOnly)) {
+            return;
+        }
+        refresh(ids, playsOnly);
+    }
+
+    // Re-evaluates the given songs against every smart playlist (only those with a play count rule
+    // if playsOnly) and announces each playlist whose membership changed
+    private static void refresh(List<Long> songIds, boolean playsOnly) {
+        String ids = SqliteDBManager.toJsonArray(songIds);
+        SqliteDBManager.write(conn -> {
+            Refresh refresh = new Refresh();
+            for (Definition definition : loadDefinitions(conn)) {
+                refresh.smart.put(definition.name, definition.dependsOnPlays());
+                if (playsOnly && !definition.dependsOnPlays()) continue;
+                if (sync(conn, definition, ids)) {
+                    refresh.changed.add(definition.name);
+                }
+            }
+            return refresh;
+        }).thenAccept(refresh -> {
+            // Read in commit order on the writer connection, so this is as current as known can be
+            loaded(refresh.smart);
+            for (String name : refresh.changed) {
+                SqliteDBManager.committed(LibraryEvent.playlistChanged(name));
+            }
+        }).exceptionally(e -> {
+            System.err.println("Error updating smart playlists: " + e.getMessage());
+            return null;
+        });
+    }
+
+    // Brings the playlist's membership in line with its rules, for the songs in the JSON array ids
+    // (or the whole library if null). New members are appended in file name order.
+    // Returns true if anything was added or removed.
+    private static boolean sync(Connection conn, Definition definition, String ids) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String matches = compile(definition.rules, params);
+        String scope = ids == null ? "" : " AND s.id IN (SELECT value FROM json_each(?))";
+
+        String delete = """
+            DELETE FROM playlist_songs
+            WHERE playlist_id = ?%s
+            AND song_id NOT IN (SELECT s.id FROM songs s WHERE %s%s)
+        """.formatted(ids == null ? "" : " AND song_id IN (SELECT value FROM json_each(?))", matches, scope);
+        int removed;
+        try (PreparedStatement pstmt = conn.prepareStatement(delete)) {
+            int i = 1;
+            pstmt.setLong(i++, definition.playlistId);
+            if (ids != null) pstmt.setString(i++, ids);
+            i = bind(pstmt, i, params);
+            if (ids != null) pstmt.setString(i, ids);
+            removed = pstmt.executeUpdate();
+        }
+
+        String insert = """
+            INSERT OR IGNORE INTO playlist_songs (playlist_id, song_id, position)
+            SELECT ?, s.id, ? + ROW_NUMBER() OVER (ORDER BY s.fileName, s.id) * %d
+            FROM songs s
+            WHERE %s%s
+            AND NOT EXISTS (SELECT 1 FROM playlist_songs ps WHERE ps.playlist_id = ? AND ps.song_id = s.id)
+        """.formatted(SqliteDBManager.POSITION_GAP, matches, scope);
+        int added;
+        try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+            int i = 1;
+            pstmt.setLong(i++, definition.playlistId);
+            pstmt.setLong(i++, SqliteDBManager.getLastPosition(conn, definition.playlistId));
+            i = bind(pstmt, i, params);
+            if (ids != null) pstmt.setString(i++, ids);
+            pstmt.setLong(i, definition.playlistId);
+            added = pstmt.executeUpdate();
+        }
+        return removed + added > 0;
+    }
+
+    // All rules must hold. Values are collected into params in placeholder order.
+    static String compile(List<Rule> rules, List<Object> params) {
+        StringBuilder where = new StringBuilder();
+        for (Rule rule : rules) {
+            if (where.length() > 0) where.append(" AND ");
+            where.append('(').append(rule.condition.predicate).append(')');
+            params.add(rule.value);
+        }
+        return where.toString();
+    }
+
+    private static int bind(PreparedStatement pstmt, int index, List<Object> params) throws SQLException {
+        for (Object param : params) {
+            if (param instanceof Long value) {
+                pstmt.setLong(index++, value);
+            } else {
+                pstmt.setString(index++, (String) param);
+            }
+        }
+        return index;
+    }
+
+    private static void storeRules(Connection conn, Definition definition) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM smart_playlist_rules WHERE playlist_id = ?")) {
+            pstmt.setLong(1, definition.playlistId);
+            pstmt.executeUpdate();
+        }
+        String sql = "INSERT INTO smart_playlist_rules (playlist_id, seq, condition, value) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int seq = 0;
+            for (Rule rule : definition.rules) {
+                pstmt.setLong(1, definition.playlistId);
+                pstmt.setInt(2, seq++);
+                pstmt.setString(3, rule.condition.name());
+                pstmt.setObject(4, rule.value);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static Collection<Definition> loadDefinitions(Connection conn) throws SQLException {
+        String sql = """
+            SELECT r.playlist_id, p.name, r.condition, r.value FROM smart_playlist_rules r
+            JOIN playlists p ON p.id = r.playlist_id
+            ORDER BY r.playlist_id, r.seq
+        """;
+        Map<Long, Definition> definitions = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                long playlistId = rs.getLong(1);
+                String name = rs.getString(2);
+                definitions.computeIfAbsent(playlistId, id -> new Definition(id, name))
+                        .rules.add(toRule(rs.getString(3), rs.getObject(4)));
+            }
+        }
+        return definitions.values();
+    }
+
+    private static Rule toRule(String condition, Object value) {
+        return new Rule(Condition.valueOf(condition), value);
+    }
+
+    private static boolean dependsOnPlays(List<Rule> rules) {
+        Definition definition = new Definition(0, null);
+        definition.rules.addAll(rules);
+        return definition.dependsOnPlays();
+    }
+
+    // --- Which playlists are smart, kept in memory so most events cost nothing ---
+
+    // Cold sets are left to refresh(), which reads the definitions on the writer connection anyway
+    private static synchronized Map<String, Boolean> known() {
+        return known;
+    }
+
+    // Loads a cold set through a read connection; null if it couldn't be read
+    private static Map<String, Boolean> load() {
+        Map<String, Boolean> smart = known();
+        if (smart != null) {
+            return smart;
+        }
+        Map<String, Boolean> loaded = new ConcurrentHashMap<>();
+        try (Connection conn = SqliteDBManager.connect()) {
+            for (Definition definition : loadDefinitions(conn)) {
+                loaded.put(definition.name, definition.dependsOnPlays());
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading smart playlists: " + e.getMessage());
+            return null;
+        }
+        synchronized (SmartPlaylists.class) {
+            // A write may have loaded or changed the set meanwhile; that version is newer
+            if (known == null) {
+                known = loaded;
+            }
+            return known;
+        }
+    }
+
+    private static synchronized void loaded(Map<String, Boolean> smart) {
+        known = smart;
+    }
+
+    private static synchronized void remember(String name, boolean dependsOnPlays) {
+        if (known != null) {
+            known.put(name, dependsOnPlays);
+        }
+    }
+
+    // Called by SqliteDBManager.deletePlaylist once the delete has committed; its rules went with it
+    static synchronized void forget(String name) {
+        if (known != null) {
+            known.remove(name);
+        }
+    }
+
+    private static synchronized void invalidate() {
+        known = null;
+    }
+
+    private static boolean anyAffected(boolean playsOnly) {
+        Map<String, Boolean> smart = known();
+        if (smart == null) {
+            // Let refresh() read the definitions itself
+            return true;
+        }
+        return playsOnly ? smart.containsValue(true) : !smart.isEmpty();
+    }
+
+    // Runs task on the writer thread and, once it has committed, records the playlist in known and
+    // announces it as changed; failures are logged
+    private static CompletableFuture<Integer> write(String errorMessage, int fallback, DBWriter.WriteTask<Integer> task,
+                                                    String name, boolean dependsOnPlays) {
+        return SqliteDBManager.write(task).thenApply(result -> {
+            if (result >= 0) {
+                remember(name, dependsOnPlays);
+                SqliteDBManager.committed(LibraryEvent.playlistChanged(name));
+            }
+            return result;
+        }).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            System.err.println(errorMessage + ": " + cause.getMessage());
+            return fallback;
+        });
+    }
+}
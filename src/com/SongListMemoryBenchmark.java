@@ -0,0 +1,109 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Retained heap of a whole library held the way LibraryCache used to hold it (an ArrayList of
+// SongInfo plus HashMaps by id and by path) against a CompactSongList of the same songs, and the
+// cost of the common operations on each. Rows are built with fresh strings, as JDBC returns them.
+// Run with a fixed heap for stable numbers:
+//
+//   java -Xms1g -Xmx1g com.SongListMemoryBenchmark [songs]
+public class SongListMemoryBenchmark {
+
+    private static final int SONGS_PER_ALBUM = 12;
+    private static final int ARTISTS = 2000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        System.out.printf("%d songs, %d artists, %d songs per directory%n%n", count, ARTISTS, SONGS_PER_ALBUM);
+
+        long base = usedHeap();
+        List<SongManager.SongInfo> objects = generate(count);
+        Map<Long, SongManager.SongInfo> byId = new HashMap<>();
+        Map<String, SongManager.SongInfo> byPath = new HashMap<>();
+        for (SongManager.SongInfo song : objects) {
+            byId.put(song.id, song);
+            byPath.put(song.path, song);
+        }
+        long objectBytes = usedHeap() - base;
+
+        base = usedHeap();
+        CompactSongList compact = new CompactSongList(generate(count));
+        long compactBytes = usedHeap() - base;
+
+        System.out.printf("%-34s %12s %12s%n", "", "objects", "compact");
+        System.out.printf("%-34s %12d %12d%n", "retained heap (KB)", objectBytes / 1024, compactBytes / 1024);
+        System.out.printf("%-34s %12d %12d%n", "bytes per song", objectBytes / count, compactBytes / count);
+        System.out.printf("%-34s %12s %12d%n", "compact estimatedBytes() (KB)", "", compact.estimatedBytes() / 1024);
+        System.out.printf("%-34s %11.1fx%n%n", "reduction", (double) objectBytes / compactBytes);
+
+        Random random = new Random(7);
+        long[] ids = new long[100_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1 + random.nextInt(count);
+        }
+        for (int round = 0; round < 3; round++) {
+            // The last round is reported; the first ones let the JIT settle
+            long t0 = System.nanoTime();
+            long sum = 0;
+            for (SongManager.SongInfo song : objects) {
+                sum += song.duration;
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < compact.size(); i++) {
+                sum += compact.duration(i);
+            }
+            long t2 = System.nanoTime();
+            for (SongManager.SongInfo song : compact) {
+                sum += song.duration;
+            }
+            long t3 = System.nanoTime();
+            for (long id : ids) {
+                sum += byId.get(id).id;
+            }
+            long t4 = System.nanoTime();
+            for (long id : ids) {
+                sum += compact.getById(id).id;
+            }
+            long t5 = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                sum += compact.idOfPath(objects.get(i * (count / 1000)).path);
+            }
+            long t6 = System.nanoTime();
+            if (round == 2) {
+                System.out.printf("%-34s %12.2f %12.2f%n", "scan durations (ms)", (t1 - t0) / 1e6, (t2 - t1) / 1e6);
+                System.out.printf("%-34s %12s %12.2f%n", "iterate as SongInfo (ms)", "", (t3 - t2) / 1e6);
+                System.out.printf("%-34s %12.2f %12.2f%n", "100k lookups by id (ms)", (t4 - t3) / 1e6, (t5 - t4) / 1e6);
+                System.out.printf("%-34s %12s %12.2f%n", "1k lookups by path (ms)", "", (t6 - t5) / 1e6);
+                System.out.println("(checksum " + sum + ")");
+            }
+        }
+    }
+
+    private static List<SongManager.SongInfo> generate(int count) {
+        Random random = new Random(42);
+        List<SongManager.SongInfo> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Every album directory belongs to one artist, as on disk
+            int album = i / SONGS_PER_ALBUM;
+            int artist = (int) ((album * 7919L) % ARTISTS);
+            String fileName = "Track " + (i % SONGS_PER_ALBUM + 1) + " - Song " + i + ".mp3";
+            String path = "/home/user/Music/Artist " + artist + "/Album " + album + "/" + fileName;
+            songs.add(new SongManager.SongInfo(i + 1, new String(fileName), path,
+                    new String("Artist " + artist), 120 + random.nextInt(300)));
+        }
+        return songs;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
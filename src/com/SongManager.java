@@ -7,25 +7,93 @@ import org.jaudiotagger.tag.FieldKey;
 import org.jaudiotagger.tag.Tag;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 
 public class SongManager {
 
     public static class SongInfo{
+        // Primary key in the songs table; 0 for a song that hasn't been stored yet
+        public final long id;
         public final String fileName;
         public final String path;
         public final String artist;
         public final Integer duration;
+        // The file as it was when these tags were read. Set on songs fresh from a scan and on those
+        // loaded for one (LibraryStore.getStampedSongs and friends); null everywhere else.
+        public final FileStamp stamp;
+        // Everything else read from the file. Set on songs fresh from readMp3; null on songs loaded
+        // from the library, which only holds it in the database (see SongMetadata).
+        public final SongMetadata metadata;
 
         SongInfo (String fileName, String path, String artist, Integer duration){
+            this(0, fileName, path, artist, duration);
+        }
+
+        SongInfo (long id, String fileName, String path, String artist, Integer duration){
+            this(id, fileName, path, artist, duration, null);
+        }
+
+        SongInfo (long id, String fileName, String path, String artist, Integer duration, FileStamp stamp){
+            this(id, fileName, path, artist, duration, stamp, null);
+        }
+
+        SongInfo (long id, String fileName, String path, String artist, Integer duration, FileStamp stamp, SongMetadata metadata){
+            this.id = id;
             this.fileName = fileName;
             this.path = path;
             this.artist = artist;
             this.duration = duration;
+            this.stamp = stamp;
+            this.metadata = metadata;
+        }
+
+        // Same song, as stored under the given id
+        SongInfo withId(long id){
+            return new SongInfo(id, fileName, path, artist, duration, stamp, metadata);
+        }
+
+        // Same song and tags, found at another path with the given stamp
+        SongInfo movedTo(File file, FileStamp stamp){
+            return new SongInfo(id, file.getName(), file.getAbsolutePath(), artist, duration, stamp, metadata);
+        }
+
+        // Stored songs are equal by id; unsaved ones (id 0) fall back to their path
+        @Override
+        public boolean equals(Object o){
+            if (this == o) return true;
+            if (!(o instanceof SongInfo other)) return false;
+            if (id != 0 || other.id != 0) {
+                return id == other.id;
+            }
+            return Objects.equals(path, other.path);
+        }
+
+        @Override
+        public int hashCode(){
+            return id != 0 ? Long.hashCode(id) : Objects.hashCode(path);
         }
     }
 
     // Reads the file information and returns SongInfo
     public static SongInfo readMp3(File mp3){
+        return readMp3(mp3, FileStamp.of(mp3));
+    }
+
+    // As above, for a file whose stamp the caller has already taken. Plain files are read from
+    // their headers by FastTagReader; jaudiotagger handles whatever that leaves to it.
+    static SongInfo readMp3(File mp3, FileStamp stamp){
+        FastTagReader.Tags tags = FastTagReader.read(mp3);
+        if (tags != null) {
+            String artist = tags.artist != null && !tags.artist.trim().isBlank() ? tags.artist.trim() : "Unknown Artist";
+            return new SongInfo(0, mp3.getName(), mp3.getAbsolutePath(), artist, Math.max(tags.durationSeconds, 0), stamp, tags.metadata);
+        }
+        return readWithAudioFileIO(mp3, stamp);
+    }
+
+    // The full jaudiotagger parse; null if the file can't be read
+    static SongInfo readWithAudioFileIO(File mp3, FileStamp stamp){
         String fileName = mp3.getName();
         String path = mp3.getAbsolutePath();
         String artist = "Unknown Artist";
@@ -51,6 +119,15 @@ public class SongManager {
                     durationSeconds = Integer.valueOf(len);
             }
 
+            // Everything else, from the same parse
+            SongMetadata metadata = SongMetadata.fromTags(first(tag, FieldKey.TITLE), first(tag, FieldKey.ALBUM),
+                    first(tag, FieldKey.ALBUM_ARTIST), first(tag, FieldKey.TRACK), first(tag, FieldKey.DISC_NO),
+                    first(tag, FieldKey.YEAR), first(tag, FieldKey.GENRE),
+                    header != null ? (int) header.getBitRateAsNumber() : null,
+                    header != null ? header.getSampleRateAsNumber() : null,
+                    header != null ? channels(header.getChannels()) : null,
+                    SongMetadata.codecOf(fileName));
+
             // --- New: Fix for NullPointerException ---
             // Default duration to 0 if it's null or invalid
             if (durationSeconds == null) {
@@ -58,7 +135,7 @@ public class SongManager {
             }
             // --- End New ---
 
-            return new SongInfo(fileName, path, artist, durationSeconds);
+            return new SongInfo(0, fileName, path, artist, durationSeconds, stamp, metadata);
         } catch (Exception e) {
             // --- Updated: Don't crash the app, return null to signal failure ---
             e.printStackTrace(); // Log the error for debugging
@@ -67,6 +144,48 @@ public class SongManager {
         }
     }
 
+    // Tags that don't support a field throw instead of returning nothing (ID3v1 has no album artist)
+    private static String first(Tag tag, FieldKey key){
+        try {
+            return tag != null ? tag.getFirst(key) : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // A count for FLAC and WAV, a channel mode ("Joint Stereo", "Mono") for MP3
+    private static Integer channels(String channels){
+        if (channels == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(channels.trim());
+        } catch (NumberFormatException e) {
+            return channels.trim().equalsIgnoreCase("mono") ? 1 : 2;
+        }
+    }
+
+    public static boolean isSupportedAudioFile(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".mp3") || name.endsWith(".wav") || name.endsWith(".flac");
+    }
+
+    // Imports files, or everything supported under directories, into the library through
+    // LibraryScanner and waits for it: paths already in the DB are skipped before any tag parsing,
+    // the rest are parsed in parallel and inserted in batches. Returns one result per file, in no
+    // particular order.
+    public static List<SqliteDBManager.InsertResult> importFiles(Collection<File> files) {
+        return LibraryScanner.start(files, null).await();
+    }
+
+    public static int count(List<SqliteDBManager.InsertResult> results, SqliteDBManager.InsertStatus status) {
+        int n = 0;
+        for (SqliteDBManager.InsertResult r : results) {
+            if (r.status == status) n++;
+        }
+        return n;
+    }
+
     public static void main(String[] args) {
         // ... (main method is for testing, left as-is)
         File file = new File("Calm Your Anxiety.mp3");
@@ -77,7 +196,7 @@ public class SongManager {
             System.out.println("artist: " + info.artist);
             System.out.println("duration: " + info.duration);
             try {
-                SqliteDBManager.insertNewSong(info);
+                LibraryStores.get().insertNewSong(info).join();
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -0,0 +1,127 @@
+package com;
+
+import org.jaudiotagger.tag.reference.GenreTypes;
+
+import java.util.Objects;
+
+// Tags and stream properties of a song beyond the name, artist and duration the library lists. They
+// are read in the same pass as those (SongManager.readMp3) and stored in their own songs columns
+// (schema v10), so sorting, filtering or grouping by them needs no second pass over the files.
+// Any field is null when the file doesn't say.
+public final class SongMetadata {
+
+    // Bumped when extraction improves enough to be worth re-reading the library for; rows stored by
+    // an older version (0: before v10) are upgraded in the background by MetadataBackfill
+    public static final int VERSION = 1;
+
+    // What is stored for a file that couldn't be read, so the backfill doesn't keep retrying it
+    public static final SongMetadata EMPTY = new SongMetadata(null, null, null, null, null, null, null, null, null, null, null);
+
+    public final String title;
+    public final String album;
+    public final String albumArtist;
+    public final Integer trackNumber;
+    public final Integer discNumber;
+    public final Integer year;
+    public final String genre;
+    // kbit/s; the average for VBR files
+    public final Integer bitrate;
+    // Hz
+    public final Integer sampleRate;
+    public final Integer channels;
+    // MP3, FLAC or WAV
+    public final String codec;
+
+    public SongMetadata(String title, String album, String albumArtist, Integer trackNumber, Integer discNumber,
+                        Integer year, String genre, Integer bitrate, Integer sampleRate, Integer channels, String codec) {
+        this.title = title;
+        this.album = album;
+        this.albumArtist = albumArtist;
+        this.trackNumber = trackNumber;
+        this.discNumber = discNumber;
+        this.year = year;
+        this.genre = genre;
+        this.bitrate = bitrate;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.codec = codec;
+    }
+
+    // From tag values as the file spells them ("3/12" for a track, "2004-05-01" for a year, "(17)"
+    // for a genre), so both tag readers store the same thing for the same file
+    static SongMetadata fromTags(String title, String album, String albumArtist, String track, String disc, String year,
+                                 String genre, Integer bitrate, Integer sampleRate, Integer channels, String codec) {
+        return new SongMetadata(text(title), text(album), text(albumArtist), leadingNumber(track), leadingNumber(disc),
+                leadingNumber(year), genre(genre), positive(bitrate), positive(sampleRate), positive(channels), codec);
+    }
+
+    // Codec name for a file, by extension as both readers pick their parser
+    static String codecOf(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".mp3")) return "MP3";
+        if (name.endsWith(".flac")) return "FLAC";
+        if (name.endsWith(".wav")) return "WAV";
+        return null;
+    }
+
+    private static String text(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static Integer positive(Integer value) {
+        return value != null && value > 0 ? value : null;
+    }
+
+    // The digits a value starts with: 3 for "3/12", 2004 for "2004-05-01"; null if there are none
+    private static Integer leadingNumber(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        int end = 0;
+        while (end < trimmed.length() && end < 9 && Character.isDigit(trimmed.charAt(end))) {
+            end++;
+        }
+        return end == 0 ? null : Integer.valueOf(trimmed.substring(0, end));
+    }
+
+    // ID3 genres are often a numeric reference into the ID3v1 list, "(17)" or "17"; those are stored by name
+    private static String genre(String value) {
+        String genre = text(value);
+        if (genre == null) {
+            return null;
+        }
+        String id = genre.startsWith("(") && genre.indexOf(')') > 1 ? genre.substring(1, genre.indexOf(')')) : genre;
+        if (id.chars().allMatch(Character::isDigit) && id.length() <= 3) {
+            String name = GenreTypes.getInstanceOf().getValueForId(Integer.parseInt(id));
+            if (name != null) {
+                return name;
+            }
+        }
+        return genre;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SongMetadata other)) return false;
+        return Objects.equals(title, other.title) && Objects.equals(album, other.album)
+                && Objects.equals(albumArtist, other.albumArtist) && Objects.equals(trackNumber, other.trackNumber)
+                && Objects.equals(discNumber, other.discNumber) && Objects.equals(year, other.year)
+                && Objects.equals(genre, other.genre) && Objects.equals(bitrate, other.bitrate)
+                && Objects.equals(sampleRate, other.sampleRate) && Objects.equals(channels, other.channels)
+                && Objects.equals(codec, other.codec);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(title, album, albumArtist, trackNumber, discNumber, year, genre, bitrate, sampleRate, channels, codec);
+    }
+
+    @Override
+    public String toString() {
+        return "title=" + title + " album=" + album + " albumArtist=" + albumArtist + " track=" + trackNumber
+                + " disc=" + discNumber + " year=" + year + " genre=" + genre + " bitrate=" + bitrate
+                + " sampleRate=" + sampleRate + " channels=" + channels + " codec=" + codec;
+    }
+}
@@ -0,0 +1,46 @@
+package com;
+
+import java.util.List;
+
+// One page of a keyset-paginated song listing. Pass next back into
+// LibraryStore.querySongs() to get the following page; it is null on the last page.
+public class SongPage {
+
+    public enum SortKey {
+        FILE_NAME("fileName"),
+        ARTIST("IFNULL(artist, '')"),
+        DURATION("IFNULL(duration, 0)");
+
+        // Must match the indexed expression exactly, otherwise SQLite won't use the index
+        final String expression;
+
+        SortKey(String expression) {
+            this.expression = expression;
+        }
+    }
+
+    // Position just after the last row of a page: its sort value, with the id as tie-breaker
+    public static class Cursor {
+        public final SortKey sortKey;
+        final Object sortValue;
+        final long id;
+
+        Cursor(SortKey sortKey, Object sortValue, long id) {
+            this.sortKey = sortKey;
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+    }
+
+    public final List<SongManager.SongInfo> songs;
+    public final Cursor next;
+
+    SongPage(List<SongManager.SongInfo> songs, Cursor next) {
+        this.songs = songs;
+        this.next = next;
+    }
+
+    public boolean hasMore() {
+        return next != null;
+    }
+}
@@ -0,0 +1,272 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// The song list as a binary file next to library.db, so the first screen can be drawn at startup
+// before the JDBC driver is loaded or the database opened. The file is memory-mapped and read in
+// place: opening it checks the header and nothing else, and a song is decoded only when asked for.
+//
+// Layout (big-endian), version 1:
+//   header   int magic, int version, int songCount, int stringCount
+//   records  songCount x RECORD_SIZE, in SortKey.FILE_NAME order:
+//            long id, int fileName, int directory, int pathTail, int artist, int duration
+//            (string indexes into the table below, -1 for null; path = directory + pathTail)
+//   strings  int[stringCount + 1] offsets into the UTF-8 bytes that follow
+// Every distinct string is stored once, so repeated artists and directories cost one entry.
+//
+// library.db stays the source of truth. The snapshot is rewritten in the background a few seconds
+// after the songs change, and a stale or unreadable one only means the first page is replaced
+// once the real one has been queried.
+public class SongSnapshot {
+
+    private static final String APP_DIR = System.getProperty("user.home") + File.separator + ".LofiMusicPlayer";
+    private static final File FILE = new File(APP_DIR, "library.songs");
+    private static final int MAGIC = 0x4C534E50; // "LSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 28;
+    // Imports and deletes come in bursts; wait for them to settle before rewriting the file
+    private static final long REBUILD_DELAY_SECONDS = 5;
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SongSnapshot");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+    private static final AtomicBoolean REBUILD_PENDING = new AtomicBoolean(false);
+
+    private final ByteBuffer buffer;
+    private final int songCount;
+    private final int stringCount;
+    private final int offsetsStart;
+    private final int bytesStart;
+
+    private SongSnapshot(ByteBuffer buffer, int songCount, int stringCount) {
+        this.buffer = buffer;
+        this.songCount = songCount;
+        this.stringCount = stringCount;
+        this.offsetsStart = HEADER_SIZE + songCount * RECORD_SIZE;
+        this.bytesStart = offsetsStart + (stringCount + 1) * 4;
+    }
+
+    // The current snapshot, or null if there is none or it can't be used
+    public static SongSnapshot open() {
+        return open(FILE);
+    }
+
+    static SongSnapshot open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            int songCount = buffer.getInt(8);
+            int stringCount = buffer.getInt(12);
+            long bytesStart = HEADER_SIZE + (long) songCount * RECORD_SIZE + (stringCount + 1L) * 4;
+            if (songCount < 0 || stringCount < 0 || bytesStart > size
+                    || bytesStart + buffer.getInt((int) bytesStart - 4) != size) {
+                return null;
+            }
+            return new SongSnapshot(buffer, songCount, stringCount);
+        } catch (IOException e) {
+            System.err.println("Error opening song snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int size() {
+        return songCount;
+    }
+
+    // All songs in SortKey.FILE_NAME order. Read-only; each get() decodes one record.
+    public List<SongManager.SongInfo> songs() {
+        return new SongView();
+    }
+
+    // The first page of SortKey.FILE_NAME, with a cursor that continues against the store
+    public SongPage firstPage(int limit) {
+        List<SongManager.SongInfo> songs = new ArrayList<>(songs().subList(0, Math.min(limit, songCount)));
+        SongPage.Cursor next = null;
+        if (songCount > songs.size() && !songs.isEmpty()) {
+            SongManager.SongInfo last = songs.get(songs.size() - 1);
+            next = new SongPage.Cursor(SongPage.SortKey.FILE_NAME, last.fileName, last.id);
+        }
+        return new SongPage(songs, next);
+    }
+
+    private SongManager.SongInfo song(int index) {
+        int at = HEADER_SIZE + index * RECORD_SIZE;
+        String directory = string(buffer.getInt(at + 12));
+        String tail = string(buffer.getInt(at + 16));
+        return new SongManager.SongInfo(buffer.getLong(at), string(buffer.getInt(at + 8)),
+                directory == null ? tail : directory + tail, string(buffer.getInt(at + 20)), buffer.getInt(at + 24));
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= stringCount) {
+            return null;
+        }
+        int start = buffer.getInt(offsetsStart + index * 4);
+        int end = buffer.getInt(offsetsStart + index * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytesStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private class SongView extends AbstractList<SongManager.SongInfo> implements RandomAccess {
+        @Override
+        public SongManager.SongInfo get(int index) {
+            if (index < 0 || index >= songCount) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + songCount);
+            }
+            return song(index);
+        }
+
+        @Override
+        public int size() {
+            return songCount;
+        }
+    }
+
+    // --- Keeping it current ---
+
+    // Brings the snapshot in line with the library now, then again a few seconds after every change
+    // to the songs. Call once the database is open; later calls do nothing.
+    static void keepCurrent() {
+        if (!STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        LibraryEventBus.subscribe(event -> {
+            switch (event.type) {
+                case SONGS_ADDED, SONGS_REMOVED, SONGS_UPDATED, LIBRARY_REPLACED -> scheduleRebuild();
+                default -> { }
+            }
+        });
+        EXECUTOR.execute(SongSnapshot::rebuild);
+    }
+
+    // Writes a rebuild that is still waiting out its delay, so the next start sees the final library
+    static void flush() {
+        if (REBUILD_PENDING.compareAndSet(true, false)) {
+            rebuild();
+        }
+    }
+
+    private static void scheduleRebuild() {
+        if (REBUILD_PENDING.compareAndSet(false, true)) {
+            EXECUTOR.schedule(() -> {
+                if (REBUILD_PENDING.compareAndSet(true, false)) {
+                    rebuild();
+                }
+            }, REBUILD_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Rewrites the file from the library unless it already holds exactly these bytes
+    private static synchronized void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+            byte[] encoded = encode(SqliteDBManager.getAllSongs());
+            if (FILE.isFile() && Arrays.equals(Files.readAllBytes(FILE.toPath()), encoded)) {
+                return;
+            }
+            write(encoded, FILE);
+            System.out.println("Song snapshot rebuilt: " + encoded.length / 1024 + " KB in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException | RuntimeException e) {
+            // A mapped file can't be replaced on Windows; the next change tries again
+            System.err.println("Error rebuilding song snapshot: " + e.getMessage());
+        }
+    }
+
+    static void write(byte[] encoded, File target) throws IOException {
+        target.getParentFile().mkdirs();
+        File partial = new File(target.getPath() + ".part");
+        try (FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Songs must already be in SortKey.FILE_NAME order
+    static byte[] encode(List<SongManager.SongInfo> songs) {
+        Map<String, Integer> indexes = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] fields = new int[songs.size() * 4];
+        for (int i = 0; i < songs.size(); i++) {
+            SongManager.SongInfo song = songs.get(i);
+            int cut = song.path == null ? 0 : Math.max(song.path.lastIndexOf('/'), song.path.lastIndexOf('\\')) + 1;
+            fields[i * 4] = intern(song.fileName, indexes, strings);
+            fields[i * 4 + 1] = cut == 0 ? -1 : intern(song.path.substring(0, cut), indexes, strings);
+            fields[i * 4 + 2] = intern(song.path == null ? null : song.path.substring(cut), indexes, strings);
+            fields[i * 4 + 3] = intern(song.artist, indexes, strings);
+        }
+
+        int stringBytes = 0;
+        for (byte[] s : strings) {
+            stringBytes += s.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + songs.size() * RECORD_SIZE
+                + (strings.size() + 1) * 4 + stringBytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(songs.size()).putInt(strings.size());
+        for (int i = 0; i < songs.size(); i++) {
+            SongManager.SongInfo song = songs.get(i);
+            buffer.putLong(song.id).putInt(fields[i * 4]).putInt(fields[i * 4 + 1]).putInt(fields[i * 4 + 2])
+                    .putInt(fields[i * 4 + 3]).putInt(song.duration == null ? 0 : song.duration);
+        }
+        int offset = 0;
+        for (byte[] s : strings) {
+            buffer.putInt(offset);
+            offset += s.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] s : strings) {
+            buffer.put(s);
+        }
+        return buffer.array();
+    }
+
+    private static int intern(String value, Map<String, Integer> indexes, List<byte[]> strings) {
+        if (value == null) {
+            return -1;
+        }
+        return indexes.computeIfAbsent(value, v -> {
+            strings.add(v.getBytes(StandardCharsets.UTF_8));
+            return strings.size() - 1;
+        });
+    }
+}
@@ -1,21 +1,86 @@
 package com;
 
+import org.sqlite.SQLiteConfig;
+
 import java.io.File;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 public class SqliteDBManager {
 
     private static final String APP_DIR = System.getProperty("user.home") + File.separator + ".LofiMusicPlayer";
-    private static final String DB_URL = "jdbc:sqlite:" + APP_DIR + File.separator + "songs.db";
-    private static final String DB_URL_PLAYLIST = "jdbc:sqlite:" + APP_DIR + File.separator + "playlists.db";
-    private static final String SONGS_DB_PATH = APP_DIR + File.separator + "songs.db";
+    private static final String DB_PATH = APP_DIR + File.separator + "library.db";
+    private static final String DB_URL = "jdbc:sqlite:" + DB_PATH;
+    private static final int POOL_SIZE = 4;
+    private static final int INSERT_CHUNK_SIZE = 500;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+    private static final int SEARCH_RANK_LIMIT = 1000;
+    // Spacing between neighbouring playlist positions; a playlist is renumbered only when a gap runs out
+    static final int POSITION_GAP = 1024;
+
+    // All writes go through the writer thread; the pool only hands out read-only connections.
+    // WAL lets those readers run alongside the writer without blocking on it.
+    private static final DBWriter WRITER = createWriter();
+    private static final ConnectionPool POOL = createPool();
+
+    private static DBWriter createWriter() {
+        new File(APP_DIR).mkdirs();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.enforceForeignKeys(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        try {
+            return new DBWriter(openWriter(config));
+        } catch (SQLException e) {
+            // A damaged file would otherwise mean rescanning everything; fall back to the newest good snapshot
+            if (LibraryBackup.isCorruption(e) && LibraryBackup.recover(new File(DB_PATH))) {
+                try {
+                    return new DBWriter(openWriter(config));
+                } catch (SQLException retry) {
+                    e = retry;
+                }
+            }
+            throw new IllegalStateException("Could not open library database: " + e.getMessage(), e);
+        }
+    }
+
+    private static Connection openWriter(SQLiteConfig config) throws SQLException {
+        Connection conn = QueryMetrics.instrument(DriverManager.getConnection(DB_URL, config.toProperties()));
+        try {
+            // Bring the schema (and any pre-v1 songs.db/playlists.db) up to date before anyone reads
+            SchemaMigrations.migrate(conn, APP_DIR);
+            return conn;
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    private static ConnectionPool createPool() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        return new ConnectionPool(DB_URL, config.toProperties(), POOL_SIZE, null);
+    }
 
     public static String getAppDir() {
         return APP_DIR;
     }
 
+    public static String getDbPath() {
+        return DB_PATH;
+    }
+
     public static class PlaylistInfo {
         public final String name;
         public final int songCount;
@@ -28,115 +93,153 @@ public class SqliteDBManager {
         }
     }
 
+    // UPDATED: already in the library, re-read because the file changed. MOVED: already in the
+    // library under another path whose file is gone; the song now points at the new one.
+    public enum InsertStatus { INSERTED, DUPLICATE, UPDATED, MOVED, FAILED }
+
+    public static class InsertResult {
+        public final String path;
+        public final SongManager.SongInfo song;
+        public final InsertStatus status;
+
+        public InsertResult(String path, SongManager.SongInfo song, InsertStatus status) {
+            this.path = path;
+            this.song = song;
+            this.status = status;
+        }
+    }
+
+    // Read-only; use write() for anything that modifies the library
     public static Connection connect() throws SQLException {
-        new File(APP_DIR).mkdirs();
-        return DriverManager.getConnection(DB_URL);
+        return POOL.acquire();
     }
 
+    // Playlists live in the same database as songs now; kept so existing callers don't change
     public static Connection connectPlaylist() throws SQLException {
-        new File(APP_DIR).mkdirs();
-        return DriverManager.getConnection(DB_URL_PLAYLIST);
+        return POOL.acquire();
     }
 
-    public static void createTable() {
-        String sql = """
-        CREATE TABLE IF NOT EXISTS songs (
-            id INTEGER PRIMARY KEY AUTOINCREMENT,
-            fileName TEXT NOT NULL,
-            path TEXT NOT NULL UNIQUE,
-            artist TEXT,
-            duration INTEGER
-        );
-        """;
-        try (Connection conn = connect(); Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-        } catch (SQLException e) {
-            System.err.println("Error creating table: " + e.getMessage());
-        }
+    public static ConnectionPool.Stats getPoolStats() {
+        return POOL.getStats();
     }
 
-    public static void createPlaylistTable() {
-        String sql = """
-        CREATE TABLE IF NOT EXISTS playlists (
-            id INTEGER PRIMARY KEY AUTOINCREMENT,
-            name TEXT NOT NULL UNIQUE
-        );
-        """;
-        try (Connection conn = connectPlaylist(); Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-        } catch (SQLException e) {
-            System.err.println("Error creating playlist table: " + e.getMessage());
+    // Per-operation latency and row counts, busiest first
+    public static List<QueryMetrics.OperationStats> getQueryStats() {
+        return QueryMetrics.getStats();
+    }
+
+    public static void shutdown() {
+        // Queued ahead of the writer shutdown, which still commits everything already submitted
+        PlayHistory.flush();
+        WRITER.shutdown();
+        // Reads the final library, so after everything is committed and before the pool closes
+        SongSnapshot.flush();
+        System.out.println("Connection pool: " + POOL.getStats());
+        System.out.println("Library cache: " + LibraryCache.getStats());
+        List<QueryMetrics.OperationStats> queries = QueryMetrics.getStats();
+        System.out.println("Slowest database operations:");
+        for (QueryMetrics.OperationStats stats : queries.subList(0, Math.min(10, queries.size()))) {
+            System.out.println("  " + stats);
         }
+        POOL.close();
+    }
 
-        sql = """
-        CREATE TABLE IF NOT EXISTS playlist_songs (
-            playlist_id INTEGER,
-            song_id INTEGER,
-            FOREIGN KEY (playlist_id) REFERENCES playlists(id),
-            FOREIGN KEY (song_id) REFERENCES songs(id)
-        );
-        """;
+    // Queues a write on the writer thread. The future completes once the write is committed.
+    public static <T> CompletableFuture<T> write(DBWriter.WriteTask<T> task) {
+        return WRITER.submit(task);
+    }
 
-        try (Connection conn = connectPlaylist(); Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-        } catch (SQLException e) {
-            System.err.println("Error creating playlist_songs table: " + e.getMessage());
-        }
+    // Runs the task on the writer connection outside any transaction (see DBWriter.submitExclusive)
+    static <T> CompletableFuture<T> writeExclusive(DBWriter.WriteTask<T> task) {
+        return WRITER.submitExclusive(task);
+    }
+
+    // Announces a committed change: the cache is patched first (still on the writer thread, before the
+    // write's future completes), smart playlists queue their follow-up write, then subscribers are
+    // notified in the background
+    static void committed(LibraryEvent event) {
+        LibraryCache.apply(event);
+        SmartPlaylists.apply(event);
+        LibraryEventBus.publish(event);
     }
 
-    public static void insertDefaultPlaylist() {
-        createPlaylistTable();
+    // Same as write(), but logs failures and completes with the fallback instead of exceptionally
+    private static <T> CompletableFuture<T> write(String errorMessage, T fallback, DBWriter.WriteTask<T> task) {
+        return write(errorMessage, fallback, task, result -> null);
+    }
+
+    // As above, and publishes the event built from the committed result (if any) on the LibraryEventBus
+    private static <T> CompletableFuture<T> write(String errorMessage, T fallback, DBWriter.WriteTask<T> task,
+                                                  Function<T, LibraryEvent> event) {
+        return WRITER.submit(task).thenApply(result -> {
+            LibraryEvent e = event.apply(result);
+            if (e != null) {
+                committed(e);
+            }
+            return result;
+        }).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            System.err.println(errorMessage + ": " + cause.getMessage());
+            return fallback;
+        });
+    }
+
+    public static CompletableFuture<Void> insertDefaultPlaylist() {
         String sql = "INSERT OR IGNORE INTO playlists (name) VALUES ('liked_songs')";
-        try (Connection conn = connectPlaylist(); Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-        } catch (SQLException e) {
-            System.err.println("Error inserting default playlist: " + e.getMessage());
-        }
+        return write("Error inserting default playlist", null, conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql);
+            }
+            return null;
+        });
     }
 
-    public static void insertNewPlaylist(String name) {
-        createPlaylistTable();
+    public static CompletableFuture<Void> insertNewPlaylist(String name) {
         String sql = "INSERT OR IGNORE INTO playlists (name) VALUES (?)";
-        try (Connection conn = connectPlaylist(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, name);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error inserting new playlist: " + e.getMessage());
-        }
+        return write("Error inserting new playlist", null, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, name);
+                pstmt.executeUpdate();
+            }
+            return null;
+        }, v -> LibraryEvent.playlistChanged(name));
     }
 
-    public static void deletePlaylist(String name) {
+    public static CompletableFuture<Void> deletePlaylist(String name) {
+        // Membership rows go with it through ON DELETE CASCADE
         String sql = "DELETE FROM playlists WHERE name = ?";
-        String sql2 = "DELETE FROM playlist_songs WHERE playlist_id = (SELECT id FROM playlists WHERE name = ?)";
-        try (Connection conn = connectPlaylist()) {
-            PreparedStatement pstmt = conn.prepareStatement(sql);
-            pstmt.setString(1, name);
-            pstmt.executeUpdate();
+        return write("Error deleting playlist", false, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, name);
+                return pstmt.executeUpdate() > 0;
+            }
+        }, deleted -> {
+            // Smart playlist rules go with it too
+            if (deleted) {
+                SmartPlaylists.forget(name);
+            }
+            return LibraryEvent.playlistChanged(name);
+        }).thenApply(deleted -> null);
+    }
 
-            PreparedStatement pstmt2 = conn.prepareStatement(sql2);
-            pstmt2.setString(1, name);
-            pstmt2.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error deleting playlist: " + e.getMessage());
-        }
+    public static CompletableFuture<Void> removeSongFromPlaylist(SongManager.SongInfo song, String playlistName) {
+        return removeSongFromPlaylist(idOf(song), playlistName);
     }
 
-    public static void removeSongFromPlaylist(SongManager.SongInfo song, String playlistName) {
+    public static CompletableFuture<Void> removeSongFromPlaylist(long songId, String playlistName) {
         String sql = """
             DELETE FROM playlist_songs
             WHERE playlist_id = (SELECT id FROM playlists WHERE name = ?)
-            AND song_id = (SELECT id FROM songs_db.songs WHERE path = ?)
+            AND song_id = ?
         """;
-        try (Connection conn = connectPlaylist()) {
-            Statement stmt = conn.createStatement();
-            stmt.execute("ATTACH DATABASE '" + SONGS_DB_PATH + "' AS songs_db");
-            PreparedStatement pstmt = conn.prepareStatement(sql);
-            pstmt.setString(1, playlistName);
-            pstmt.setString(2, song.path);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error removing song from playlist: " + e.getMessage());
-        }
+        return write("Error removing song from playlist", false, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, playlistName);
+                pstmt.setLong(2, songId);
+                return pstmt.executeUpdate() > 0;
+            }
+        }, removed -> removed ? LibraryEvent.playlistSongsRemoved(playlistName, List.of(songId)) : null)
+                .thenApply(removed -> null);
     }
 
     public static boolean songExists(String path) {
@@ -152,95 +255,740 @@ public class SqliteDBManager {
         return false;
     }
 
-    public static void deleteSong(String path) {
-        // First, get the song's ID
-        int songId = -1;
-        String findIdSql = "SELECT id FROM songs WHERE path = ?";
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(findIdSql)) {
+    // Completes with true if a row was removed
+    public static CompletableFuture<Boolean> deleteSong(SongManager.SongInfo song) {
+        return deleteSong(idOf(song));
+    }
+
+    public static CompletableFuture<Boolean> deleteSong(String path) {
+        return deleteSong(getSongId(path));
+    }
+
+    public static CompletableFuture<Boolean> deleteSong(long songId) {
+        // Playlist membership is removed by ON DELETE CASCADE
+        String sql = "DELETE FROM songs WHERE id = ?";
+        return write("Error deleting song", false, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, songId);
+                int rows = pstmt.executeUpdate();
+                if (rows > 0) {
+                    System.out.println("Song removed from database: " + songId);
+                } else {
+                    System.out.println("Song not found in database: " + songId);
+                }
+                return rows > 0;
+            }
+        }, removed -> removed ? LibraryEvent.songsRemoved(List.of(songId)) : null);
+    }
+
+    // The stored song with this id, or null if there is none
+    public static SongManager.SongInfo getSong(long songId) {
+        SongManager.SongInfo cached = LibraryCache.getSong(songId);
+        if (cached != null) {
+            return cached;
+        }
+        String sql = "SELECT id, fileName, path, artist, duration FROM songs WHERE id = ?";
+        try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, songId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new SongManager.SongInfo(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting song: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Deletes all the given songs with one statement. Completes with the number of songs removed.
+    public static CompletableFuture<Integer> deleteSongs(Collection<Long> songIds) {
+        if (songIds == null || songIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<Long> ids = List.copyOf(songIds);
+        // The event names only the rows this delete removed, not ids that were already gone
+        return write("Error deleting songs", List.<Long>of(), conn -> deleteSongs(conn, ids),
+                removed -> removed.isEmpty() ? null : LibraryEvent.songsRemoved(removed)).thenApply(List::size);
+    }
+
+    // Set-based delete for use inside a write task; cascades and triggers take care of playlists and search.
+    // Returns the ids actually removed.
+    static List<Long> deleteSongs(Connection conn, Collection<Long> songIds) throws SQLException {
+        String sql = "DELETE FROM songs WHERE id IN (SELECT value FROM json_each(?)) RETURNING id";
+        List<Long> removed = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, toJsonArray(songIds));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    removed.add(rs.getLong(1));
+                }
+            }
+        }
+        return removed;
+    }
+
+    // Id of the song stored at path, or 0 if there is none
+    public static long getSongId(String path) {
+        Long cached = LibraryCache.getSongId(path);
+        if (cached != null) {
+            return cached;
+        }
+        String sql = "SELECT id FROM songs WHERE path = ?";
+        try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, path);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                songId = rs.getInt("id");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
             }
         } catch (SQLException e) {
-            System.err.println("Error finding song ID for deletion: " + e.getMessage());
-            return; // Exit if we can't find the song
+            System.err.println("Error looking up song id: " + e.getMessage());
         }
+        return 0;
+    }
+
+    // Songs read from the library carry their id; anything else is looked up by path
+    private static long idOf(SongManager.SongInfo song) {
+        return song.id != 0 ? song.id : getSongId(song.path);
+    }
+
 
-        if (songId == -1) {
-            System.out.println("Song not found in database: " + path);
-            return;
+    // Completes with the stored song (carrying its new id), or null if it was invalid or already present
+    public static CompletableFuture<SongManager.SongInfo> insertNewSong(SongManager.SongInfo song) {
+        if (song == null || song.path == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return write("Error inserting new song", null, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SONG_SQL)) {
+                bindSong(pstmt, song);
+                bindMetadata(pstmt, 8, song.metadata);
+                pstmt.setLong(20, System.currentTimeMillis());
+                return pstmt.executeUpdate() > 0 ? song.withId(lastInsertId(conn)) : null;
+            }
+        }, stored -> stored != null ? LibraryEvent.songsAdded(List.of(stored)) : null);
+    }
 
-        // Next, delete from playlist_songs table
-        String deleteFromPlaylistsSql = "DELETE FROM playlist_songs WHERE song_id = ?";
-        try (Connection conn = connectPlaylist();
-             PreparedStatement pstmt = conn.prepareStatement(deleteFromPlaylistsSql)) {
-            pstmt.setInt(1, songId);
-            pstmt.executeUpdate();
+    private static long lastInsertId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Returns the subset of the given paths that are already in the library, using a single query
+    public static Set<String> findExistingPaths(Collection<String> paths) {
+        Set<String> existing = new HashSet<>();
+        if (paths == null || paths.isEmpty()) {
+            return existing;
+        }
+        String sql = "SELECT s.path FROM json_each(?) j JOIN songs s ON s.path = j.value";
+        try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, toJsonArray(paths));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error checking existing songs: " + e.getMessage());
+        }
+        return existing;
+    }
+
+    // Bulk insert for library imports: dedupes against the library in one query,
+    // then inserts in chunks on the writer thread. Results come back in input order.
+    public static List<InsertResult> insertSongs(Collection<SongManager.SongInfo> songs) {
+        return insertSongsAsync(songs).join();
+    }
+
+    public static CompletableFuture<List<InsertResult>> insertSongsAsync(Collection<SongManager.SongInfo> songs) {
+        List<InsertResult> results = new ArrayList<>();
+        if (songs == null || songs.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
+        }
+
+        List<String> paths = new ArrayList<>();
+        for (SongManager.SongInfo song : songs) {
+            if (song != null && song.path != null) {
+                paths.add(song.path);
+            }
+        }
+        Set<String> seen = findExistingPaths(paths);
+
+        // Resolve duplicates and invalid entries up front, leaving nulls for the rows we still have to insert
+        List<SongManager.SongInfo> pending = new ArrayList<>();
+        for (SongManager.SongInfo song : songs) {
+            if (song == null || song.path == null) {
+                results.add(new InsertResult(song == null ? null : song.path, song, InsertStatus.FAILED));
+            } else if (!seen.add(song.path)) {
+                results.add(new InsertResult(song.path, song, InsertStatus.DUPLICATE));
+            } else {
+                results.add(null);
+                pending.add(song);
+            }
+        }
+
+        // Each chunk is one write task; the writer folds queued chunks into shared commits
+        List<CompletableFuture<List<InsertResult>>> chunks = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += INSERT_CHUNK_SIZE) {
+            List<SongManager.SongInfo> chunk = pending.subList(start, Math.min(start + INSERT_CHUNK_SIZE, pending.size()));
+            chunks.add(write(conn -> insertChunk(conn, chunk)).exceptionally(e -> {
+                System.err.println("Error inserting song batch: " + e.getMessage());
+                List<InsertResult> failed = new ArrayList<>();
+                for (SongManager.SongInfo song : chunk) {
+                    failed.add(new InsertResult(song.path, song, InsertStatus.FAILED));
+                }
+                return failed;
+            }));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            int next = 0;
+            List<SongManager.SongInfo> inserted = new ArrayList<>();
+            for (CompletableFuture<List<InsertResult>> chunk : chunks) {
+                for (InsertResult r : chunk.join()) {
+                    while (results.get(next) != null) next++;
+                    results.set(next, r);
+                    if (r.status == InsertStatus.INSERTED) {
+                        inserted.add(r.song);
+                    }
+                }
+            }
+            // One event per import rather than per chunk
+            if (!inserted.isEmpty()) {
+                committed(LibraryEvent.songsAdded(inserted));
+            }
+            return results;
+        });
+    }
+
+    private static List<InsertResult> insertChunk(Connection conn, List<SongManager.SongInfo> chunk) throws SQLException {
+        List<InsertResult> results = new ArrayList<>(chunk.size());
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SONG_SQL)) {
+            for (SongManager.SongInfo song : chunk) {
+                try {
+                    bindSong(pstmt, song);
+                    bindMetadata(pstmt, 8, song.metadata);
+                    pstmt.setLong(20, System.currentTimeMillis());
+                    // OR IGNORE turns a concurrent insert of the same path into a duplicate instead of an error
+                    if (pstmt.executeUpdate() > 0) {
+                        results.add(new InsertResult(song.path, song.withId(lastInsertId(conn)), InsertStatus.INSERTED));
+                    } else {
+                        results.add(new InsertResult(song.path, song, InsertStatus.DUPLICATE));
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Error inserting song " + song.path + ": " + e.getMessage());
+                    results.add(new InsertResult(song.path, song, InsertStatus.FAILED));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static final String METADATA_COLUMNS = "title, album, album_artist, track_number, disc_number, year, genre,"
+            + " bitrate, sample_rate, channels, codec, metadata_version";
+    private static final String METADATA_ASSIGNMENTS = "title = ?, album = ?, album_artist = ?, track_number = ?,"
+            + " disc_number = ?, year = ?, genre = ?, bitrate = ?, sample_rate = ?, channels = ?, codec = ?, metadata_version = ?";
+    private static final String INSERT_SONG_SQL = "INSERT OR IGNORE INTO songs(fileName, path, artist, duration, file_size,"
+            + " file_mtime, signature, " + METADATA_COLUMNS + ", added_at) VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String STAMPED_SONG_COLUMNS = "s.id, s.fileName, s.path, s.artist, s.duration, s.file_size, s.file_mtime, s.signature";
+
+    // Binds the song's fields to parameters 1-7 of INSERT_SONG_SQL or of the UPDATE in updateChunk
+    private static void bindSong(PreparedStatement pstmt, SongManager.SongInfo song) throws SQLException {
+        pstmt.setString(1, song.fileName);
+        pstmt.setString(2, song.path);
+        pstmt.setString(3, song.artist);
+        pstmt.setInt(4, song.duration == null ? 0 : song.duration);
+        if (song.stamp != null) {
+            pstmt.setLong(5, song.stamp.size);
+            pstmt.setLong(6, song.stamp.mtime);
+            pstmt.setLong(7, song.stamp.signature);
+        } else {
+            pstmt.setNull(5, Types.INTEGER);
+            pstmt.setNull(6, Types.INTEGER);
+            pstmt.setNull(7, Types.INTEGER);
+        }
+    }
+
+    // Binds the metadata to the 12 parameters of METADATA_COLUMNS starting at index. A song without
+    // metadata (one not read from its file) is stored at version 0, so MetadataBackfill picks it up.
+    private static void bindMetadata(PreparedStatement pstmt, int index, SongMetadata metadata) throws SQLException {
+        SongMetadata m = metadata != null ? metadata : SongMetadata.EMPTY;
+        pstmt.setString(index, m.title);
+        pstmt.setString(index + 1, m.album);
+        pstmt.setString(index + 2, m.albumArtist);
+        setInteger(pstmt, index + 3, m.trackNumber);
+        setInteger(pstmt, index + 4, m.discNumber);
+        setInteger(pstmt, index + 5, m.year);
+        pstmt.setString(index + 6, m.genre);
+        setInteger(pstmt, index + 7, m.bitrate);
+        setInteger(pstmt, index + 8, m.sampleRate);
+        setInteger(pstmt, index + 9, m.channels);
+        pstmt.setString(index + 10, m.codec);
+        pstmt.setInt(index + 11, metadata != null ? SongMetadata.VERSION : 0);
+    }
+
+    private static void setInteger(PreparedStatement pstmt, int index, Integer value) throws SQLException {
+        if (value != null) {
+            pstmt.setInt(index, value);
+        } else {
+            pstmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    // Reads the columns of STAMPED_SONG_COLUMNS
+    private static SongManager.SongInfo readStampedSong(ResultSet rs) throws SQLException {
+        long size = rs.getLong(6);
+        FileStamp stamp = rs.wasNull() ? null : new FileStamp(size, rs.getLong(7), rs.getLong(8));
+        return new SongManager.SongInfo(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5), stamp);
+    }
+
+    // The songs stored at any of the given paths, by path, with their file stamps; one query
+    public static Map<String, SongManager.SongInfo> getStampedSongs(Collection<String> paths) {
+        Map<String, SongManager.SongInfo> songs = new HashMap<>();
+        if (paths == null || paths.isEmpty()) {
+            return songs;
+        }
+        String sql = "SELECT " + STAMPED_SONG_COLUMNS + " FROM json_each(?) j JOIN songs s ON s.path = j.value";
+        try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, toJsonArray(paths));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    SongManager.SongInfo song = readStampedSong(rs);
+                    songs.put(song.path, song);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading file stamps: " + e.getMessage());
+        }
+        return songs;
+    }
+
+    // Every song whose path lies under the directory, with file stamps. A range scan of the path index.
+    public static List<SongManager.SongInfo> getSongsUnder(String directory) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        String prefix = directory.endsWith(File.separator) ? directory : directory + File.separator;
+        // The first string past every path that starts with prefix: bump its last character
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+        String sql = "SELECT " + STAMPED_SONG_COLUMNS + " FROM songs s WHERE s.path >= ? AND s.path < ?";
+        try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, prefix);
+            pstmt.setString(2, end);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(readStampedSong(rs));
+                }
+            }
         } catch (SQLException e) {
-            System.err.println("Error deleting song from playlists: " + e.getMessage());
+            System.err.println("Error listing songs under " + directory + ": " + e.getMessage());
         }
+        return songs;
+    }
 
-        // Finally, delete from songs table
-        String deleteFromSongsSql = "DELETE FROM songs WHERE id = ?";
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(deleteFromSongsSql)) {
-            pstmt.setInt(1, songId);
-            int rows = pstmt.executeUpdate();
-            if (rows > 0) {
-                System.out.println("Song removed from database: " + path);
+    // Songs whose file had exactly this size and signature when last parsed
+    public static List<SongManager.SongInfo> findSongsBySignature(long size, long signature) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        String sql = "SELECT " + STAMPED_SONG_COLUMNS + " FROM songs s WHERE s.file_size = ? AND s.signature = ?";
+        try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, size);
+            pstmt.setLong(2, signature);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(readStampedSong(rs));
+                }
             }
         } catch (SQLException e) {
-            System.err.println("Error deleting song from main table: " + e.getMessage());
+            System.err.println("Error looking up songs by signature: " + e.getMessage());
         }
+        return songs;
     }
 
+    // Rewrites stored songs (matched by id) with new tags, path and file stamp, keeping their id, so
+    // playlists and play history stay attached. Results come back in input order, UPDATED or FAILED
+    // (no such song, or the new path belongs to another one).
+    public static CompletableFuture<List<InsertResult>> updateSongsAsync(Collection<SongManager.SongInfo> songs) {
+        if (songs == null || songs.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        List<SongManager.SongInfo> pending = List.copyOf(songs);
+        return write(conn -> updateChunk(conn, pending)).thenApply(results -> {
+            List<SongManager.SongInfo> updated = new ArrayList<>();
+            for (InsertResult r : results) {
+                if (r.status == InsertStatus.UPDATED) {
+                    updated.add(r.song);
+                }
+            }
+            if (!updated.isEmpty()) {
+                committed(LibraryEvent.songsUpdated(updated));
+            }
+            return results;
+        }).exceptionally(e -> {
+            System.err.println("Error updating song batch: " + e.getMessage());
+            List<InsertResult> failed = new ArrayList<>();
+            for (SongManager.SongInfo song : pending) {
+                failed.add(new InsertResult(song.path, song, InsertStatus.FAILED));
+            }
+            return failed;
+        });
+    }
 
-    public static void insertNewSong(SongManager.SongInfo song) {
-        if (song == null || song.path == null || songExists(song.path)) {
-            return; // Song is invalid or already exists
+    // Songs carrying metadata (re-read from their file) overwrite the stored metadata; the rest (moved
+    // songs, say) keep it
+    private static List<InsertResult> updateChunk(Connection conn, List<SongManager.SongInfo> songs) throws SQLException {
+        List<InsertResult> results = new ArrayList<>(songs.size());
+        String sql = "UPDATE songs SET fileName = ?, path = ?, artist = ?, duration = ?, file_size = ?, file_mtime = ?, signature = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql + " WHERE id = ?");
+             PreparedStatement withMetadata = conn.prepareStatement(sql + ", " + METADATA_ASSIGNMENTS + " WHERE id = ?")) {
+            for (SongManager.SongInfo song : songs) {
+                try {
+                    PreparedStatement stmt = song.metadata != null ? withMetadata : pstmt;
+                    bindSong(stmt, song);
+                    if (song.metadata != null) {
+                        bindMetadata(stmt, 8, song.metadata);
+                        stmt.setLong(20, song.id);
+                    } else {
+                        stmt.setLong(8, song.id);
+                    }
+                    boolean updated = song.id != 0 && song.path != null && stmt.executeUpdate() > 0;
+                    results.add(new InsertResult(song.path, song, updated ? InsertStatus.UPDATED : InsertStatus.FAILED));
+                } catch (SQLException e) {
+                    System.err.println("Error updating song " + song.path + ": " + e.getMessage());
+                    results.add(new InsertResult(song.path, song, InsertStatus.FAILED));
+                }
+            }
         }
-        createTable(); // Ensure table exists
-        String sql = "INSERT INTO songs(fileName, path, artist, duration) VALUES(?,?,?,?)";
+        return results;
+    }
+
+    // Up to limit songs whose metadata was read by the given SongMetadata version, with ids above
+    // afterId, in id order and with file stamps. MetadataBackfill pages through them this way.
+    public static List<SongManager.SongInfo> getSongsWithMetadataVersion(int version, long afterId, int limit) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        String sql = "SELECT " + STAMPED_SONG_COLUMNS + " FROM songs s WHERE s.metadata_version = ? AND s.id > ? ORDER BY s.id LIMIT ?";
         try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, song.fileName);
-            pstmt.setString(2, song.path);
-            pstmt.setString(3, song.artist);
-            pstmt.setInt(4, song.duration);
-            pstmt.executeUpdate();
+            pstmt.setInt(1, version);
+            pstmt.setLong(2, afterId);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(readStampedSong(rs));
+                }
+            }
         } catch (SQLException e) {
-            System.err.println("Error inserting new song: " + e.getMessage());
+            System.err.println("Error listing songs by metadata version: " + e.getMessage());
+        }
+        return songs;
+    }
+
+    // Stores the metadata and file stamp of stored songs (matched by id) and nothing else. Nothing the
+    // library lists changes, so no event is published. Completes with the number of songs updated.
+    public static CompletableFuture<Integer> updateMetadataAsync(Collection<SongManager.SongInfo> songs) {
+        if (songs == null || songs.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<SongManager.SongInfo> pending = List.copyOf(songs);
+        String sql = "UPDATE songs SET file_size = ?, file_mtime = ?, signature = ?, " + METADATA_ASSIGNMENTS + " WHERE id = ?";
+        return write("Error updating song metadata", 0, conn -> {
+            int updated = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (SongManager.SongInfo song : pending) {
+                    if (song.stamp != null) {
+                        pstmt.setLong(1, song.stamp.size);
+                        pstmt.setLong(2, song.stamp.mtime);
+                        pstmt.setLong(3, song.stamp.signature);
+                    } else {
+                        pstmt.setNull(1, Types.INTEGER);
+                        pstmt.setNull(2, Types.INTEGER);
+                        pstmt.setNull(3, Types.INTEGER);
+                    }
+                    bindMetadata(pstmt, 4, song.metadata);
+                    pstmt.setLong(16, song.id);
+                    updated += pstmt.executeUpdate();
+                }
+            }
+            return updated;
+        });
+    }
+
+    // Encodes values as a JSON array so a whole collection can be bound to one json_each(?) parameter.
+    // Numbers (song ids) are written bare, everything else as a JSON string.
+    static String toJsonArray(Collection<?> values) {
+        StringBuilder sb = new StringBuilder("[");
+        boolean first = true;
+        for (Object item : values) {
+            if (!first) sb.append(',');
+            first = false;
+            if (item instanceof Long || item instanceof Integer) {
+                sb.append(item);
+                continue;
+            }
+            String value = String.valueOf(item);
+            sb.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    default -> {
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                    }
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append(']').toString();
+    }
+
+    // Appends the songs to the end of the playlist in the given order, skipping ones already in it.
+    // One INSERT ... SELECT over json_each. Completes with the number of songs added.
+    public static CompletableFuture<Integer> addSongsToPlaylist(String playlistName, Collection<Long> songIds) {
+        if (songIds == null || songIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        String ids = toJsonArray(songIds);
+        String sql = """
+            INSERT OR IGNORE INTO playlist_songs (playlist_id, song_id, position)
+            SELECT p.id, s.id, ? + (j.key + 1) * %d
+            FROM playlists p, json_each(?) j
+            JOIN songs s ON s.id = j.value
+            WHERE p.name = ?
+            ORDER BY j.key
+        """.formatted(POSITION_GAP);
+        return write("Error adding songs to playlist", 0, conn -> {
+            Long playlistId = getPlaylistId(conn, playlistName);
+            if (playlistId == null) {
+                return 0;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, getLastPosition(conn, playlistId));
+                pstmt.setString(2, ids);
+                pstmt.setString(3, playlistName);
+                return pstmt.executeUpdate();
+            }
+        }, added -> added > 0 ? LibraryEvent.playlistChanged(playlistName) : null);
+    }
+
+    // Completes with the number of songs that were in the playlist and got removed
+    public static CompletableFuture<Integer> removeSongsFromPlaylist(String playlistName, Collection<Long> songIds) {
+        if (songIds == null || songIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<Long> ids = List.copyOf(songIds);
+        String sql = """
+            DELETE FROM playlist_songs
+            WHERE playlist_id = (SELECT id FROM playlists WHERE name = ?)
+            AND song_id IN (SELECT value FROM json_each(?))
+        """;
+        return write("Error removing songs from playlist", 0, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, playlistName);
+                pstmt.setString(2, toJsonArray(ids));
+                return pstmt.executeUpdate();
+            }
+        }, removed -> removed > 0 ? LibraryEvent.playlistSongsRemoved(playlistName, ids) : null);
+    }
+
+    static long getLastPosition(Connection conn, long playlistId) throws SQLException {
+        String sql = "SELECT IFNULL(MAX(position), 0) FROM playlist_songs WHERE playlist_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, playlistId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
         }
     }
 
-    public static void addSongToPlaylist(SongManager.SongInfo song, String playlistName) {
+    // Appends to the end of the playlist
+    public static CompletableFuture<Void> addSongToPlaylist(SongManager.SongInfo song, String playlistName) {
+        return addSongToPlaylist(idOf(song), playlistName);
+    }
+
+    public static CompletableFuture<Void> addSongToPlaylist(long songId, String playlistName) {
+        String sql = """
+            INSERT OR IGNORE INTO playlist_songs (playlist_id, song_id, position)
+            SELECT p.id, s.id,
+                   (SELECT IFNULL(MAX(position), 0) FROM playlist_songs WHERE playlist_id = p.id) + %d
+            FROM playlists p, songs s
+            WHERE p.name = ? AND s.id = ?
+        """.formatted(POSITION_GAP);
+        return write("Error adding song to playlist", false, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, playlistName);
+                pstmt.setLong(2, songId);
+                return pstmt.executeUpdate() > 0;
+            }
+        }, added -> added ? LibraryEvent.playlistChanged(playlistName) : null).thenApply(added -> null);
+    }
+
+    // Inserts songs so the first one ends up at index (0 = top, past the end = append), keeping their order.
+    // Songs already in the playlist are left where they are. Completes with the number of songs added.
+    public static CompletableFuture<Integer> insertSongsIntoPlaylist(String playlistName, List<Long> songIds, int index) {
         String sql = """
-            INSERT INTO playlist_songs (playlist_id, song_id)
-            SELECT p.id, s.id
-            FROM playlists p, songs_db.songs s
-            WHERE p.name = ? AND s.path = ?
+            INSERT OR IGNORE INTO playlist_songs (playlist_id, song_id, position)
+            SELECT ?, id, ? FROM songs WHERE id = ?
         """;
-        try (Connection conn = connectPlaylist()) {
-            Statement stmt = conn.createStatement();
-            stmt.execute("ATTACH DATABASE '" + SONGS_DB_PATH + "' AS songs_db");
-            PreparedStatement pstmt = conn.prepareStatement(sql);
+        return write("Error inserting songs into playlist", 0, conn -> {
+            Long playlistId = getPlaylistId(conn, playlistName);
+            if (playlistId == null || songIds.isEmpty()) {
+                return 0;
+            }
+            int at = Math.max(0, Math.min(index, getPlaylistSize(conn, playlistId)));
+            long[] slots = allocatePositions(conn, playlistId, at, songIds.size());
+
+            int inserted = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < songIds.size(); i++) {
+                    pstmt.setLong(1, playlistId);
+                    pstmt.setLong(2, slots[i]);
+                    pstmt.setLong(3, songIds.get(i));
+                    inserted += pstmt.executeUpdate();
+                }
+            }
+            return inserted;
+        }, inserted -> inserted > 0 ? LibraryEvent.playlistChanged(playlistName) : null);
+    }
+
+    // Moves the song at index from so that it ends up at index to. Only the moved row is rewritten,
+    // unless the gap at the destination is used up and the playlist has to be renumbered first.
+    // Completes with false if from is out of range or nothing moved.
+    public static CompletableFuture<Boolean> moveSongInPlaylist(String playlistName, int from, int to) {
+        String sql = "UPDATE playlist_songs SET position = ? WHERE playlist_id = ? AND song_id = ?";
+        return write("Error moving song in playlist", false, conn -> {
+            Long playlistId = getPlaylistId(conn, playlistName);
+            if (playlistId == null) {
+                return false;
+            }
+            int size = getPlaylistSize(conn, playlistId);
+            if (from < 0 || from >= size) {
+                return false;
+            }
+            int target = Math.max(0, Math.min(to, size - 1));
+            if (target == from) {
+                return false;
+            }
+
+            long[] moved = entryAt(conn, playlistId, from);
+            // Index of the gap in the current order (moved row still in place) that the song goes into
+            int gap = target > from ? target + 1 : target;
+            long position = allocatePositions(conn, playlistId, gap, 1)[0];
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, position);
+                pstmt.setLong(2, playlistId);
+                pstmt.setLong(3, moved[0]);
+                pstmt.executeUpdate();
+            }
+            return true;
+        }, moved -> moved ? LibraryEvent.playlistChanged(playlistName) : null);
+    }
+
+    static Long getPlaylistId(Connection conn, String playlistName) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM playlists WHERE name = ?")) {
             pstmt.setString(1, playlistName);
-            pstmt.setString(2, song.path);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    static int getPlaylistSize(Connection conn, long playlistId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT song_count FROM playlists WHERE id = ?")) {
+            pstmt.setLong(1, playlistId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // {song_id, position} of the row at index in playlist order, or null past the end
+    private static long[] entryAt(Connection conn, long playlistId, int index) throws SQLException {
+        if (index < 0) {
+            return null;
+        }
+        String sql = """
+            SELECT song_id, position FROM playlist_songs
+            WHERE playlist_id = ?
+            ORDER BY position, song_id
+            LIMIT 1 OFFSET ?
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, playlistId);
+            pstmt.setInt(2, index);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new long[]{rs.getLong(1), rs.getLong(2)} : null;
+            }
+        }
+    }
+
+    // Returns count increasing positions that sort between the rows at gap - 1 and gap.
+    // If they don't fit, the playlist is renumbered with a hole of count slots at the gap first.
+    private static long[] allocatePositions(Connection conn, long playlistId, int gap, int count) throws SQLException {
+        long[] slots = spread(entryAt(conn, playlistId, gap - 1), entryAt(conn, playlistId, gap), count);
+        if (slots == null) {
+            renumberPlaylist(conn, playlistId, gap, count);
+            slots = spread(entryAt(conn, playlistId, gap - 1), entryAt(conn, playlistId, gap), count);
+        }
+        return slots;
+    }
+
+    private static long[] spread(long[] before, long[] after, int count) {
+        long[] slots = new long[count];
+        if (after == null) {
+            long base = before == null ? 0 : before[1];
+            for (int i = 0; i < count; i++) {
+                slots[i] = base + (long) (i + 1) * POSITION_GAP;
+            }
+        } else if (before == null) {
+            for (int i = 0; i < count; i++) {
+                slots[i] = after[1] - (long) (count - i) * POSITION_GAP;
+            }
+        } else {
+            long step = (after[1] - before[1]) / (count + 1);
+            if (step < 1) {
+                return null;
+            }
+            for (int i = 0; i < count; i++) {
+                slots[i] = before[1] + (i + 1) * step;
+            }
+        }
+        return slots;
+    }
+
+    // Rewrites every position in the playlist as a multiple of POSITION_GAP, keeping the order,
+    // and leaves room for holeSize extra rows in front of the row currently at index hole
+    private static void renumberPlaylist(Connection conn, long playlistId, int hole, int holeSize) throws SQLException {
+        String sql = """
+            UPDATE playlist_songs SET position = (r.rank + CASE WHEN r.rank > ? THEN ? ELSE 0 END) * %d
+            FROM (
+                SELECT song_id AS sid, ROW_NUMBER() OVER (ORDER BY position, song_id) AS rank
+                FROM playlist_songs WHERE playlist_id = ?
+            ) AS r
+            WHERE playlist_songs.playlist_id = ? AND playlist_songs.song_id = r.sid
+        """.formatted(POSITION_GAP);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, hole);
+            pstmt.setInt(2, holeSize);
+            pstmt.setLong(3, playlistId);
+            pstmt.setLong(4, playlistId);
             pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error adding song to playlist: " + e.getMessage());
         }
     }
 
+    // Served from LibraryCache after the first call
     public static List<SongManager.SongInfo> getAllSongs() {
+        List<SongManager.SongInfo> cached = LibraryCache.getAllSongs();
+        if (cached != null) {
+            return cached;
+        }
+        long generation = LibraryCache.generation();
         List<SongManager.SongInfo> songs = new ArrayList<>();
-        createTable(); // Ensure table exists
-        String sql = "SELECT fileName, path, artist, duration FROM songs ORDER BY fileName ASC";
+        // Same order as SortKey.FILE_NAME, which the cache relies on to serve pages
+        String sql = "SELECT id, fileName, path, artist, duration FROM songs ORDER BY fileName ASC, id ASC";
         try (Connection conn = connect(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
                 songs.add(new SongManager.SongInfo(
+                        rs.getLong("id"),
                         rs.getString("fileName"),
                         rs.getString("path"),
                         rs.getString("artist"),
@@ -249,25 +997,147 @@ public class SqliteDBManager {
             }
         } catch (SQLException e) {
             System.err.println("Error getting all songs: " + e.getMessage());
+            return songs;
         }
+        LibraryCache.putAllSongs(songs, generation);
         return songs;
     }
 
+    // Loads the library into LibraryCache in the background so later page visits don't hit the database
+    public static void preloadLibraryCache() {
+        Thread thread = new Thread(SqliteDBManager::getAllSongs, "LibraryCachePreload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Keyset pagination: each page is an index seek past the previous page's last row,
+    // so cost and memory per page stay the same no matter how deep into the library we are.
+    // Pass null as afterKey for the first page.
+    public static SongPage querySongs(SongPage.SortKey sortKey, SongPage.Cursor afterKey, int limit) {
+        if (afterKey != null && afterKey.sortKey != sortKey) {
+            throw new IllegalArgumentException("Cursor was created for " + afterKey.sortKey + ", not " + sortKey);
+        }
+        if (sortKey == SongPage.SortKey.FILE_NAME) {
+            SongPage cached = LibraryCache.getPage(afterKey, limit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String expr = sortKey.expression;
+        String where = afterKey == null ? "" : " WHERE " + expr + " >= ? AND (" + expr + " > ? OR id > ?)";
+        String sql = "SELECT id, fileName, path, artist, duration, " + expr + " FROM songs" + where
+                + " ORDER BY " + expr + ", id LIMIT ?";
+
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        SongPage.Cursor next = null;
+        try (Connection conn = connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (afterKey != null) {
+                pstmt.setObject(i++, afterKey.sortValue);
+                pstmt.setObject(i++, afterKey.sortValue);
+                pstmt.setLong(i++, afterKey.id);
+            }
+            // One extra row tells us whether there is another page without a COUNT(*)
+            pstmt.setInt(i, limit + 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                long lastId = 0;
+                Object lastValue = null;
+                while (rs.next()) {
+                    if (songs.size() == limit) {
+                        next = new SongPage.Cursor(sortKey, lastValue, lastId);
+                        break;
+                    }
+                    songs.add(new SongManager.SongInfo(
+                            rs.getLong(1),
+                            rs.getString(2),
+                            rs.getString(3),
+                            rs.getString(4),
+                            rs.getInt(5)
+                    ));
+                    lastId = rs.getLong(1);
+                    lastValue = rs.getObject(6);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error querying songs: " + e.getMessage());
+        }
+        return new SongPage(songs, next);
+    }
+
+    // Full-text search over the song index. Every word has to match the start of a word in the song,
+    // so results show up while the user is still typing. Best matches come first.
+    public static List<SongManager.SongInfo> search(String query, int limit) {
+        List<SongManager.SongInfo> songs = new ArrayList<>();
+        String match = toFtsQuery(query);
+        if (match.isEmpty()) {
+            return songs;
+        }
+        try (Connection conn = connect()) {
+            // bm25 has to score every match before LIMIT applies, which gets slow for one- or two-letter
+            // prefixes that hit most of the library. Those are returned in index order instead.
+            boolean ranked = countSearchMatches(conn, match, SEARCH_RANK_LIMIT + 1) <= SEARCH_RANK_LIMIT;
+            // bm25 weights follow the column order of songs_fts (fileName, artist, title, album, album_artist,
+            // genre): a hit in the name or title counts most, then the artists, then the album and the genre
+            String sql = """
+                SELECT s.id, s.fileName, s.path, s.artist, s.duration
+                FROM songs_fts f
+                JOIN songs s ON s.id = f.rowid
+                WHERE songs_fts MATCH ?
+            """ + (ranked ? " ORDER BY bm25(songs_fts, 10.0, 5.0, 10.0, 3.0, 5.0, 1.0)" : "") + " LIMIT ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, match);
+                pstmt.setInt(2, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        songs.add(new SongManager.SongInfo(
+                                rs.getLong(1),
+                                rs.getString(2),
+                                rs.getString(3),
+                                rs.getString(4),
+                                rs.getInt(5)
+                        ));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error searching songs: " + e.getMessage());
+        }
+        return songs;
+    }
+
+    private static int countSearchMatches(Connection conn, String match, int cap) throws SQLException {
+        String sql = "SELECT count(*) FROM (SELECT rowid FROM songs_fts WHERE songs_fts MATCH ? LIMIT ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, match);
+            pstmt.setInt(2, cap);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Turns free text into an FTS5 query: each word becomes a quoted prefix term, so user input
+    // can never be parsed as FTS operators. Words with no letters or digits are dropped.
+    static String toFtsQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            if (term.codePoints().noneMatch(Character::isLetterOrDigit)) {
+                continue;
+            }
+            if (sb.length() > 0) sb.append(' ');
+            sb.append('"').append(term.replace("\"", "\"\"")).append("\"*");
+        }
+        return sb.toString();
+    }
+
     public static List<PlaylistInfo> getAllPlaylists() {
         List<PlaylistInfo> playlists = new ArrayList<>();
-        createPlaylistTable(); // Ensure table exists
-        String sql = """
-            SELECT p.name, COUNT(s.id), SUM(s.duration)
-            FROM playlists p
-            LEFT JOIN playlist_songs ps ON p.id = ps.playlist_id
-            LEFT JOIN songs_db.songs s ON ps.song_id = s.id
-            GROUP BY p.name
-            ORDER BY p.name ASC
-        """;
-        try (Connection conn = connectPlaylist()) {
-            Statement stmt = conn.createStatement();
-            stmt.execute("ATTACH DATABASE '" + SONGS_DB_PATH + "' AS songs_db");
-            ResultSet rs = stmt.executeQuery(sql);
+        // Aggregates are kept current by triggers (schema v5), so this is a scan of the name index
+        String sql = "SELECT name, song_count, total_duration FROM playlists ORDER BY name ASC";
+        try (Connection conn = connectPlaylist(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
                 playlists.add(new PlaylistInfo(
                         rs.getString(1),
@@ -282,62 +1152,47 @@ public class SqliteDBManager {
     }
 
     public static List<SongManager.SongInfo> getSongsForPlaylist(String playlistName) {
+        List<SongManager.SongInfo> cached = LibraryCache.getPlaylist(playlistName);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = LibraryCache.generation();
         List<SongManager.SongInfo> songs = new ArrayList<>();
         String sql = """
-            SELECT s.fileName, s.path, s.artist, s.duration
-            FROM songs_db.songs s
+            SELECT s.id, s.fileName, s.path, s.artist, s.duration
+            FROM songs s
             JOIN playlist_songs ps ON s.id = ps.song_id
             JOIN playlists p ON ps.playlist_id = p.id
             WHERE p.name = ?
-            ORDER BY s.fileName ASC
+            ORDER BY ps.position, ps.song_id
         """;
-        try (Connection conn = connectPlaylist()) {
-            Statement stmt = conn.createStatement();
-            stmt.execute("ATTACH DATABASE '" + SONGS_DB_PATH + "' AS songs_db");
-            PreparedStatement pstmt = conn.prepareStatement(sql);
+        try (Connection conn = connectPlaylist(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, playlistName);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                songs.add(new SongManager.SongInfo(
-                        rs.getString(1),
-                        rs.getString(2),
-                        rs.getString(3),
-                        rs.getInt(4)
-                ));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(new SongManager.SongInfo(
+                            rs.getLong(1),
+                            rs.getString(2),
+                            rs.getString(3),
+                            rs.getString(4),
+                            rs.getInt(5)
+                    ));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error getting songs for playlist: " + e.getMessage());
+            return songs;
         }
+        LibraryCache.putPlaylist(playlistName, songs, generation);
         return songs;
     }
 
+    // Synchronous verification pass; the app runs LibraryVerifier.runInBackground() at startup instead
     public static void verifyAndCleanSongDatabase() {
-        createTable(); // Ensure the table exists before we start.
-        List<String> pathsToDelete = new ArrayList<>();
-        String sql = "SELECT path FROM songs";
-
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                String path = rs.getString("path");
-                if (path != null && !new File(path).exists()) {
-                    pathsToDelete.add(path);
-                }
-            }
+        try {
+            System.out.println("Library verification: " + LibraryVerifier.verify());
         } catch (SQLException e) {
             System.err.println("Error verifying song database: " + e.getMessage());
-            return; // Exit if we can't read the database.
-        }
-
-        // Now, delete all the invalid paths we found.
-        if (!pathsToDelete.isEmpty()) {
-            System.out.println("Found " + pathsToDelete.size() + " missing songs. Cleaning database...");
-            for (String path : pathsToDelete) {
-                deleteSong(path); // Use the existing deleteSong method.
-            }
-            System.out.println("Database cleaning complete.");
         }
     }
 }
@@ -0,0 +1,184 @@
+package com;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+// The app's LibraryStore: library.db through SqliteDBManager, with its cache, single writer and events.
+// Holds no state of its own; nothing is opened until the first call.
+public class SqliteLibraryStore implements LibraryStore {
+
+    @Override
+    public List<SongManager.SongInfo> getAllSongs() {
+        return SqliteDBManager.getAllSongs();
+    }
+
+    @Override
+    public SongManager.SongInfo getSong(long songId) {
+        return SqliteDBManager.getSong(songId);
+    }
+
+    @Override
+    public long getSongId(String path) {
+        return SqliteDBManager.getSongId(path);
+    }
+
+    @Override
+    public boolean songExists(String path) {
+        return SqliteDBManager.songExists(path);
+    }
+
+    @Override
+    public Set<String> findExistingPaths(Collection<String> paths) {
+        return SqliteDBManager.findExistingPaths(paths);
+    }
+
+    @Override
+    public SongPage querySongs(SongPage.SortKey sortKey, SongPage.Cursor afterKey, int limit) {
+        return SqliteDBManager.querySongs(sortKey, afterKey, limit);
+    }
+
+    // Served from the SongSnapshot file, without opening the database
+    @Override
+    public SongPage cachedFirstPage(SongPage.SortKey sortKey, int limit) {
+        if (sortKey != SongPage.SortKey.FILE_NAME) {
+            return null;
+        }
+        SongSnapshot snapshot = SongSnapshot.open();
+        return snapshot == null ? null : snapshot.firstPage(limit);
+    }
+
+    @Override
+    public List<SongManager.SongInfo> search(String query, int limit) {
+        return SqliteDBManager.search(query, limit);
+    }
+
+    @Override
+    public CompletableFuture<SongManager.SongInfo> insertNewSong(SongManager.SongInfo song) {
+        return SqliteDBManager.insertNewSong(song);
+    }
+
+    @Override
+    public CompletableFuture<List<SqliteDBManager.InsertResult>> insertSongsAsync(Collection<SongManager.SongInfo> songs) {
+        return SqliteDBManager.insertSongsAsync(songs);
+    }
+
+    @Override
+    public Map<String, SongManager.SongInfo> getStampedSongs(Collection<String> paths) {
+        return SqliteDBManager.getStampedSongs(paths);
+    }
+
+    @Override
+    public List<SongManager.SongInfo> getSongsUnder(String directory) {
+        return SqliteDBManager.getSongsUnder(directory);
+    }
+
+    @Override
+    public List<SongManager.SongInfo> findSongsBySignature(long size, long signature) {
+        return SqliteDBManager.findSongsBySignature(size, signature);
+    }
+
+    @Override
+    public CompletableFuture<List<SqliteDBManager.InsertResult>> updateSongsAsync(Collection<SongManager.SongInfo> songs) {
+        return SqliteDBManager.updateSongsAsync(songs);
+    }
+
+    @Override
+    public List<SongManager.SongInfo> getSongsWithMetadataVersion(int version, long afterId, int limit) {
+        return SqliteDBManager.getSongsWithMetadataVersion(version, afterId, limit);
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateMetadataAsync(Collection<SongManager.SongInfo> songs) {
+        return SqliteDBManager.updateMetadataAsync(songs);
+    }
+
+    @Override
+    public List<SqliteDBManager.InsertResult> insertSongs(Collection<SongManager.SongInfo> songs) {
+        return SqliteDBManager.insertSongs(songs);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteSong(SongManager.SongInfo song) {
+        return SqliteDBManager.deleteSong(song);
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteSongs(Collection<Long> songIds) {
+        return SqliteDBManager.deleteSongs(songIds);
+    }
+
+    @Override
+    public List<SqliteDBManager.PlaylistInfo> getAllPlaylists() {
+        return SqliteDBManager.getAllPlaylists();
+    }
+
+    @Override
+    public List<SongManager.SongInfo> getSongsForPlaylist(String playlistName) {
+        return SqliteDBManager.getSongsForPlaylist(playlistName);
+    }
+
+    @Override
+    public CompletableFuture<Void> insertDefaultPlaylist() {
+        return SqliteDBManager.insertDefaultPlaylist();
+    }
+
+    @Override
+    public CompletableFuture<Void> insertNewPlaylist(String name) {
+        return SqliteDBManager.insertNewPlaylist(name);
+    }
+
+    @Override
+    public CompletableFuture<Void> deletePlaylist(String name) {
+        return SqliteDBManager.deletePlaylist(name);
+    }
+
+    @Override
+    public CompletableFuture<Void> addSongToPlaylist(SongManager.SongInfo song, String playlistName) {
+        return SqliteDBManager.addSongToPlaylist(song, playlistName);
+    }
+
+    @Override
+    public CompletableFuture<Integer> addSongsToPlaylist(String playlistName, Collection<Long> songIds) {
+        return SqliteDBManager.addSongsToPlaylist(playlistName, songIds);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeSongFromPlaylist(SongManager.SongInfo song, String playlistName) {
+        return SqliteDBManager.removeSongFromPlaylist(song, playlistName);
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeSongsFromPlaylist(String playlistName, Collection<Long> songIds) {
+        return SqliteDBManager.removeSongsFromPlaylist(playlistName, songIds);
+    }
+
+    @Override
+    public CompletableFuture<Integer> insertSongsIntoPlaylist(String playlistName, List<Long> songIds, int index) {
+        return SqliteDBManager.insertSongsIntoPlaylist(playlistName, songIds, index);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> moveSongInPlaylist(String playlistName, int from, int to) {
+        return SqliteDBManager.moveSongInPlaylist(playlistName, from, to);
+    }
+
+    // On a thread of its own: the first call into SqliteDBManager opens and migrates the database,
+    // which must not hold up the first screen
+    @Override
+    public void warmUp() {
+        Thread thread = new Thread(() -> {
+            SqliteDBManager.getAllSongs();
+            SongSnapshot.keepCurrent();
+        }, "LibraryWarmUp");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        SqliteDBManager.shutdown();
+    }
+}
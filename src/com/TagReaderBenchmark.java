@@ -0,0 +1,250 @@
+package com;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Files per second through FastTagReader (falling back to jaudiotagger as readMp3 does) against
+// jaudiotagger alone, and where the two disagree on artist, duration or SongMetadata. Reads the
+// audio files under the given folder, or generates FILES_PER_FORMAT each of MP3 (ID3v2.3 with cover
+// art; CBR, Info and Xing), FLAC and WAV into a temporary one. Files are read once before timing, so
+// the numbers are parse cost over a warm page cache:
+//
+//   java com.TagReaderBenchmark [folder]
+public class TagReaderBenchmark {
+
+    private static final int FILES_PER_FORMAT = 300;
+    private static final int ROUNDS = 3;
+    // Held so the level set on it isn't lost with the logger
+    private static final Logger JAUDIOTAGGER_LOG = Logger.getLogger("org.jaudiotagger");
+
+    public static void main(String[] args) throws IOException {
+        // jaudiotagger logs every FLAC it reads at INFO, which would be most of its time here
+        JAUDIOTAGGER_LOG.setLevel(Level.WARNING);
+
+        Path generated = null;
+        List<File> files;
+        if (args.length > 0) {
+            files = audioFilesUnder(Path.of(args[0]));
+        } else {
+            generated = Files.createTempDirectory("tag-reader-benchmark");
+            files = generate(generated);
+        }
+        System.out.printf("%d files%n%n", files.size());
+
+        try {
+            int fastHits = 0;
+            List<String> mismatches = new ArrayList<>();
+            for (File file : files) {
+                FastTagReader.Tags tags = FastTagReader.read(file);
+                SongManager.SongInfo full = SongManager.readWithAudioFileIO(file, null);
+                if (tags == null) {
+                    continue;
+                }
+                fastHits++;
+                SongManager.SongInfo fast = SongManager.readMp3(file, null);
+                if (full == null) {
+                    mismatches.add(file + ": only the fast reader can read it");
+                } else if (!fast.duration.equals(full.duration)) {
+                    mismatches.add(file + ": duration " + fast.duration + " s, jaudiotagger " + full.duration + " s");
+                } else if (!full.artist.equals("Unknown Artist") && !fast.artist.equals(full.artist)) {
+                    // A WAV's LIST/INFO artist is one jaudiotagger 2.0.1 doesn't read, so only the other way counts
+                    mismatches.add(file + ": artist '" + fast.artist + "', jaudiotagger '" + full.artist + "'");
+                } else if (!covers(fast.metadata, full.metadata)) {
+                    mismatches.add(file + ": " + fast.metadata + ", jaudiotagger " + full.metadata);
+                }
+            }
+
+            double fastRate = 0;
+            double fullRate = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                // The last round is reported; the first ones let the JIT settle
+                long t0 = System.nanoTime();
+                for (File file : files) {
+                    SongManager.readMp3(file, null);
+                }
+                long t1 = System.nanoTime();
+                for (File file : files) {
+                    SongManager.readWithAudioFileIO(file, null);
+                }
+                long t2 = System.nanoTime();
+                fastRate = files.size() / ((t1 - t0) / 1e9);
+                fullRate = files.size() / ((t2 - t1) / 1e9);
+            }
+
+            System.out.printf("%-34s %12s %12s%n", "", "fast path", "jaudiotagger");
+            System.out.printf("%-34s %12.0f %12.0f%n", "files per second", fastRate, fullRate);
+            System.out.printf("%-34s %11.1fx%n", "speed-up", fastRate / fullRate);
+            System.out.printf("%-34s %12d%n", "read by FastTagReader", fastHits);
+            System.out.printf("%-34s %12d%n", "left to jaudiotagger", files.size() - fastHits);
+            System.out.printf("%-34s %12d%n", "disagreements", mismatches.size());
+            for (String mismatch : mismatches.subList(0, Math.min(20, mismatches.size()))) {
+                System.out.println("  " + mismatch);
+            }
+        } finally {
+            if (generated != null) {
+                try (Stream<Path> walk = Files.walk(generated)) {
+                    walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+    }
+
+    // True if every field jaudiotagger found has the same value from the fast reader; as with the
+    // artist, the fast reader may find more (WAV INFO tags)
+    private static boolean covers(SongMetadata fast, SongMetadata full) {
+        Object[][] fields = {
+                {fast.title, full.title}, {fast.album, full.album}, {fast.albumArtist, full.albumArtist},
+                {fast.trackNumber, full.trackNumber}, {fast.discNumber, full.discNumber}, {fast.year, full.year},
+                {fast.genre, full.genre}, {fast.bitrate, full.bitrate}, {fast.sampleRate, full.sampleRate},
+                {fast.channels, full.channels}, {fast.codec, full.codec}};
+        for (Object[] field : fields) {
+            if (field[1] != null && !field[1].equals(field[0])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<File> audioFilesUnder(Path folder) throws IOException {
+        try (Stream<Path> walk = Files.walk(folder)) {
+            return walk.filter(Files::isRegularFile).map(Path::toFile).filter(SongManager::isSupportedAudioFile).toList();
+        }
+    }
+
+    // --- Generated files ---
+
+    private static List<File> generate(Path folder) {
+        Random random = new Random(42);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < FILES_PER_FORMAT; i++) {
+            String artist = "Artist " + random.nextInt(500);
+            String album = "Album " + random.nextInt(2000);
+            String track = (i % 12 + 1) + "/12";
+            String year = String.valueOf(1960 + random.nextInt(60));
+            int seconds = 60 + random.nextInt(300);
+            Map<String, String> id3 = new LinkedHashMap<>();
+            id3.put("TIT2", "Song " + i);
+            id3.put("TPE1", artist);
+            id3.put("TALB", album);
+            id3.put("TPE2", artist);
+            id3.put("TRCK", track);
+            id3.put("TYER", year);
+            id3.put("TCON", "(" + random.nextInt(80) + ")");
+            files.add(write(folder.resolve("track" + i + ".mp3"), mp3(id3, seconds, i % 3)));
+            Map<String, String> vorbis = new LinkedHashMap<>();
+            vorbis.put("TITLE", "Song " + i);
+            vorbis.put("ARTIST", artist);
+            vorbis.put("ALBUM", album);
+            vorbis.put("TRACKNUMBER", track);
+            vorbis.put("DATE", year);
+            vorbis.put("GENRE", "Ambient");
+            files.add(write(folder.resolve("track" + i + ".flac"), flac(vorbis, seconds)));
+            files.add(write(folder.resolve("track" + i + ".wav"), wav(artist, seconds)));
+        }
+        return files;
+    }
+
+    private static File write(Path path, byte[] content) {
+        try {
+            return Files.write(path, content).toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ID3v2.3 with a 64 KB APIC ahead of the text frames, as some taggers write it, then 128 kbit/s
+    // 44.1 kHz frames of silence. vbrFrame 1 makes the first of them an Info frame, 2 a Xing frame.
+    private static byte[] mp3(Map<String, String> textFrames, int seconds, int vbrFrame) {
+        byte[] picture = new byte[64 * 1024];
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.writeBytes(id3Frame("APIC", ByteBuffer.allocate(14 + picture.length)
+                .put((byte) 0).put("image/jpeg\0".getBytes(StandardCharsets.ISO_8859_1)).put((byte) 3).put((byte) 0)
+                .put(picture).array()));
+        textFrames.forEach((id, text) -> {
+            byte[] value = text.getBytes(StandardCharsets.ISO_8859_1);
+            frames.writeBytes(id3Frame(id, ByteBuffer.allocate(1 + value.length).put((byte) 0).put(value).array()));
+        });
+        ByteBuffer tag = ByteBuffer.allocate(10 + frames.size() + 256);
+        tag.put("ID3".getBytes(StandardCharsets.ISO_8859_1)).put((byte) 3).put((byte) 0).put((byte) 0);
+        int tagSize = tag.capacity() - 10;
+        tag.put((byte) (tagSize >>> 21 & 0x7F)).put((byte) (tagSize >>> 14 & 0x7F)).put((byte) (tagSize >>> 7 & 0x7F)).put((byte) (tagSize & 0x7F));
+        tag.put(frames.toByteArray());
+
+        int frameCount = seconds * 44100 / 1152;
+        int frameLength = 144 * 128_000 / 44100;
+        ByteBuffer audio = ByteBuffer.allocate(frameCount * frameLength);
+        for (int i = 0; i < frameCount; i++) {
+            audio.position(i * frameLength);
+            audio.putInt(0xFFFB9000 | 0x40); // MPEG-1 Layer III, 128 kbit/s, 44.1 kHz, joint stereo
+        }
+        if (vbrFrame > 0) {
+            audio.position(36);
+            audio.put((vbrFrame == 1 ? "Info" : "Xing").getBytes(StandardCharsets.ISO_8859_1));
+            audio.putInt(0x3).putInt(frameCount).putInt(audio.capacity());
+        }
+        ByteBuffer file = ByteBuffer.allocate(tag.capacity() + audio.capacity());
+        return file.put(tag.array()).put(audio.array()).array();
+    }
+
+    private static byte[] id3Frame(String id, byte[] body) {
+        return ByteBuffer.allocate(10 + body.length).put(id.getBytes(StandardCharsets.ISO_8859_1))
+                .putInt(body.length).putShort((short) 0).put(body).array();
+    }
+
+    // STREAMINFO and VORBIS_COMMENT, then a block of zeros standing in for the frames
+    private static byte[] flac(Map<String, String> comments, int seconds) {
+        byte[] vendor = "reference libFLAC 1.3.2".getBytes(StandardCharsets.UTF_8);
+        List<byte[]> entries = new ArrayList<>();
+        comments.forEach((key, value) -> entries.add((key + "=" + value).getBytes(StandardCharsets.UTF_8)));
+        int commentsLength = 4 + vendor.length + 4;
+        for (byte[] entry : entries) {
+            commentsLength += 4 + entry.length;
+        }
+        ByteBuffer file = ByteBuffer.allocate(4 + 4 + 34 + 4 + commentsLength + seconds * 4000);
+        file.put("fLaC".getBytes(StandardCharsets.ISO_8859_1));
+        file.putInt(34); // STREAMINFO, not last
+        long totalSamples = seconds * 44100L;
+        file.putShort((short) 4096).putShort((short) 4096).put(new byte[6]);
+        // 44100 Hz, 2 channels, 16 bits, then the sample count
+        file.put((byte) (44100 >>> 12)).put((byte) (44100 >>> 4)).put((byte) ((44100 & 0xF) << 4 | 1 << 1));
+        file.put((byte) (15 << 4 | (int) (totalSamples >>> 32))).putInt((int) totalSamples).put(new byte[16]);
+        file.putInt(0x84 << 24 | commentsLength); // VORBIS_COMMENT, last
+        file.order(ByteOrder.LITTLE_ENDIAN).putInt(vendor.length).put(vendor).putInt(entries.size());
+        for (byte[] entry : entries) {
+            file.putInt(entry.length).put(entry);
+        }
+        return file.array();
+    }
+
+    // 8 kHz 8-bit mono PCM with a LIST/INFO artist after the data
+    private static byte[] wav(String artist, int seconds) {
+        byte[] name = (artist + "\0").getBytes(StandardCharsets.UTF_8);
+        int nameLength = name.length + (name.length & 1);
+        int dataLength = seconds * 8000;
+        int listLength = 4 + 8 + nameLength;
+        ByteBuffer file = ByteBuffer.allocate(12 + 8 + 16 + 8 + dataLength + 8 + listLength).order(ByteOrder.LITTLE_ENDIAN);
+        file.put("RIFF".getBytes(StandardCharsets.ISO_8859_1)).putInt(file.capacity() - 8).put("WAVE".getBytes(StandardCharsets.ISO_8859_1));
+        file.put("fmt ".getBytes(StandardCharsets.ISO_8859_1)).putInt(16);
+        file.putShort((short) 1).putShort((short) 1).putInt(8000).putInt(8000).putShort((short) 1).putShort((short) 8);
+        file.put("data".getBytes(StandardCharsets.ISO_8859_1)).putInt(dataLength).position(file.position() + dataLength);
+        file.put("LIST".getBytes(StandardCharsets.ISO_8859_1)).putInt(listLength).put("INFO".getBytes(StandardCharsets.ISO_8859_1));
+        file.put("IART".getBytes(StandardCharsets.ISO_8859_1)).putInt(name.length).put(name);
+        return file.array();
+    }
+}
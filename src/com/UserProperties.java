@@ -4,6 +4,8 @@ import java.io.File; // Added
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class UserProperties {
@@ -23,6 +25,7 @@ public class UserProperties {
         String default_ytdlp_location = "yt_dlp";
         String default_ffmpeg_location = "ffmpeg";
         String default_download_location = "";
+        String default_slow_query_ms = "100";
 
         // --- New ---
         // Ensure the directory exists before trying to load
@@ -61,6 +64,9 @@ public class UserProperties {
         if(!config.containsKey("download_location")){
             config.setProperty("download_location", default_download_location);
         }
+        if(!config.containsKey("slow_query_ms")){
+            config.setProperty("slow_query_ms", default_slow_query_ms);
+        }
         // --- End Updated ---
 
         return config;
@@ -187,4 +193,42 @@ public class UserProperties {
         }
     }
 
-}
\ No newline at end of file
+    // Set slow query threshold (database statements slower than this are logged)
+    public void setSlowQueryThresholdMs(long ms) throws IOException{
+        Properties config = loadProperties();
+        config.setProperty("slow_query_ms", String.valueOf(ms));
+        saveConfig(config);
+    }
+
+    // Get slow query threshold
+    public long getSlowQueryThresholdMs(){
+        Properties config = loadProperties();
+        String val = config.getProperty("slow_query_ms", "100");
+        try{
+            return Long.parseLong(val.trim());
+        } catch (NumberFormatException e){
+            return 100;
+        }
+    }
+
+    // Set the folders LibraryWatcher keeps the library in step with
+    public void setWatchedFolders(List<String> folders) throws IOException{
+        Properties config = loadProperties();
+        config.setProperty("watched_folders", String.join(File.pathSeparator, folders));
+        saveConfig(config);
+    }
+
+    // Get watched folders (stored as one path list, separated like PATH)
+    public List<String> getWatchedFolders(){
+        Properties config = loadProperties();
+        String val = config.getProperty("watched_folders", "");
+        List<String> folders = new ArrayList<>();
+        for (String folder : val.split(File.pathSeparator)) {
+            if (!folder.isBlank()) {
+                folders.add(folder.trim());
+            }
+        }
+        return folders;
+    }
+
+}
@@ -3,7 +3,7 @@ package pages.all_songs;
 import com.Main;
 import com.MusicPlayerManager;
 import com.SongManager;
-import com.SqliteDBManager;
+import com.LibraryStores;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -23,7 +23,9 @@ import pages.components.Toast;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class AllSongsPageController {
 
@@ -32,7 +34,7 @@ public class AllSongsPageController {
 
     private String playlistName;
     private List<SongManager.SongInfo> allSongs;
-    private List<SongManager.SongInfo> existingSongs;
+    private Set<SongManager.SongInfo> existingSongs;
     private final List<CheckBox> checkBoxes = new ArrayList<>();
     private MusicPlayerManager playerManager;
 
@@ -42,20 +44,23 @@ public class AllSongsPageController {
     }
 
     public void setExistingSongs(List<SongManager.SongInfo> existingSongs) {
-        this.existingSongs = existingSongs;
+        // SongInfo hashes by id, so this is a constant-time check per row
+        this.existingSongs = new HashSet<>(existingSongs);
     }
 
     public void loadSongs() {
         vbox.getChildren().clear();
         checkBoxes.clear();
         playerManager = MusicPlayerManager.getInstance();
-        allSongs = SqliteDBManager.getAllSongs();
+        allSongs = LibraryStores.get().getAllSongs();
         playerManager.setQueue(allSongs);
         populateSongs();
     }
 
     public void populateSongs() {
-        allSongs = SqliteDBManager.getAllSongs();
+        if (allSongs == null) {
+            allSongs = LibraryStores.get().getAllSongs();
+        }
         for (SongManager.SongInfo song : allSongs) {
             vbox.getChildren().add(createSongRow(song));
         }
@@ -67,13 +72,8 @@ public class AllSongsPageController {
         songRow.setPadding(new Insets(5, 10, 5, 10));
 
         CheckBox checkBox = new CheckBox();
-        if (existingSongs != null) {
-            for (SongManager.SongInfo existingSong : existingSongs) {
-                if (existingSong.path.equals(song.path)) {
-                    checkBox.setDisable(true);
-                    break;
-                }
-            }
+        if (existingSongs != null && existingSongs.contains(song)) {
+            checkBox.setDisable(true);
         }
         checkBoxes.add(checkBox);
 
@@ -105,17 +105,18 @@ public class AllSongsPageController {
             return;
         }
 
-        int addedCount = 0;
+        List<Long> selected = new ArrayList<>();
         for (int i = 0; i < checkBoxes.size(); i++) {
             if (checkBoxes.get(i).isSelected()) {
-                SqliteDBManager.addSongToPlaylist(allSongs.get(i), playlistName);
-                addedCount++;
+                selected.add(allSongs.get(i).id);
             }
         }
 
-        if (addedCount > 0) {
-            String message = addedCount + (addedCount == 1 ? " song added" : " songs added");
-            Toast.show(message, (Stage) vbox.getScene().getWindow(), this::goBackSafe);
+        if (!selected.isEmpty()) {
+            LibraryStores.get().addSongsToPlaylist(playlistName, selected).thenAccept(addedCount -> Platform.runLater(() -> {
+                String message = addedCount + (addedCount == 1 ? " song added" : " songs added");
+                Toast.show(message, (Stage) vbox.getScene().getWindow(), this::goBackSafe);
+            }));
         } else {
             goBackSafe();
         }
@@ -0,0 +1,126 @@
+package pages.components;
+
+import com.LibraryScanner;
+import com.Main;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// A progress label in the bottom right corner of a page for a LibraryScanner import; clicking it
+// cancels the import. A toast sums up the result when it is done. New songs reach the pages through
+// the library events. All methods are for the FX thread.
+public class ImportProgress {
+
+    private final Pane parent;
+    private final Label status;
+    private volatile boolean cancelled;
+    private LibraryScanner.Scan scan;
+
+    private ImportProgress(Pane parent, String text) {
+        this.parent = parent;
+        status = new Label(text);
+        status.setStyle(
+                "-fx-background-color: rgba(30, 30, 30, 0.9);" +
+                "-fx-text-fill: white;" +
+                "-fx-font-family: 'monospace';" +
+                "-fx-padding: 6px 12px;" +
+                "-fx-background-radius: 8px;" +
+                "-fx-border-color: #a481ee;" +
+                "-fx-border-width: 1px;" +
+                "-fx-border-radius: 8px;" +
+                "-fx-cursor: hand;"
+        );
+        status.setTooltip(new Tooltip("Click to cancel the import"));
+        // Pages are AnchorPanes; the root page is a StackPane, with the player bar along its bottom
+        AnchorPane.setRightAnchor(status, 35.0);
+        AnchorPane.setBottomAnchor(status, 20.0);
+        StackPane.setAlignment(status, Pos.BOTTOM_RIGHT);
+        StackPane.setMargin(status, new Insets(0, 35, 150, 0));
+        status.setOnMouseClicked(e -> {
+            cancelled = true;
+            if (scan != null) {
+                scan.cancel();
+            }
+            status.setText("Cancelling...");
+        });
+        parent.getChildren().add(status);
+    }
+
+    // Runs the import (or, for rescan, LibraryScanner.rescan) of roots with a progress label on parent
+    public static void run(Pane parent, List<File> roots, boolean rescan) {
+        new ImportProgress(parent, "Scanning...").start(roots, rescan);
+    }
+
+    // Shows the label before there is anything to scan, while the caller prepares the files (copies
+    // them, say); start() takes over from there. Until then a click only marks it cancelled.
+    public static ImportProgress show(Pane parent, String text) {
+        return new ImportProgress(parent, text);
+    }
+
+    // Safe to call from any thread
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void start(List<File> roots, boolean rescan) {
+        if (cancelled) {
+            parent.getChildren().remove(status);
+            Toast.show("Import cancelled", Main.getMainStage());
+            return;
+        }
+        status.setText("Scanning...");
+        Consumer<LibraryScanner.Progress> listener = progress -> Platform.runLater(() -> status.setText(describe(progress)));
+        scan = rescan ? LibraryScanner.rescan(roots, listener) : LibraryScanner.start(roots, listener);
+        scan.completion().whenComplete((results, ex) -> Platform.runLater(() -> {
+            parent.getChildren().remove(status);
+            if (ex != null) {
+                ex.printStackTrace();
+                Toast.show("Import failed", Main.getMainStage());
+                return;
+            }
+            Toast.show(summarize(scan.progress()), Main.getMainStage());
+        }));
+    }
+
+    private static String summarize(LibraryScanner.Progress progress) {
+        List<String> messages = new ArrayList<>();
+        if (progress.cancelled) {
+            messages.add("Import cancelled");
+        }
+        int changed = progress.updated + progress.moved;
+        if (progress.inserted > 0 || messages.isEmpty() && changed + progress.removed == 0) {
+            messages.add(progress.inserted + (progress.inserted == 1 ? " new song added" : " new songs added"));
+        }
+        if (changed > 0) {
+            messages.add(changed + (changed == 1 ? " song updated" : " songs updated"));
+        }
+        if (progress.removed > 0) {
+            messages.add(progress.removed + (progress.removed == 1 ? " missing song removed" : " missing songs removed"));
+        }
+        if (progress.duplicates > 0) {
+            messages.add(progress.duplicates + (progress.duplicates == 1 ? " song already exists" : " songs already exist"));
+        }
+        if (progress.failed > 0) {
+            messages.add(progress.failed + (progress.failed == 1 ? " file couldn't be read" : " files couldn't be read"));
+        }
+        return String.join(". ", messages);
+    }
+
+    private static String describe(LibraryScanner.Progress progress) {
+        if (progress.done) {
+            return progress.cancelled ? "Import cancelled" : "Import finished";
+        }
+        return "Importing " + progress.processed() + " / " + progress.discovered
+                + (progress.inserted > 0 ? " (" + progress.inserted + " new)" : "");
+    }
+}
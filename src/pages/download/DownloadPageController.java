@@ -3,6 +3,7 @@ package pages.download;
 import com.Main;
 import com.UserProperties;
 import com.DownloadManager;
+import com.LibraryWatcher;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -12,6 +13,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 
+import java.io.File;
 import java.io.IOException;
 
 public class DownloadPageController {
@@ -99,6 +101,11 @@ public class DownloadPageController {
         try {
             up.set_download_location(download_location.getText());
             downloadLocation = up.get_download_location();
+            // Downloads land in the library as soon as yt-dlp finishes writing them
+            File folder = new File(downloadLocation);
+            if (!downloadLocation.isBlank() && folder.isDirectory()) {
+                LibraryWatcher.addRoot(folder);
+            }
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
@@ -1,14 +1,20 @@
 package pages.home;
 
+import com.LibraryCache;
+import com.LibraryEvent;
+import com.LibraryEventBus;
+import com.LibraryQueue;
+import com.LibraryWatcher;
+import com.LibraryStore;
 import com.Main;
 import com.MusicPlayerManager;
 import com.SongManager;
-import com.SqliteDBManager;
+import com.SongPage;
+import com.LibraryStores;
 import javafx.animation.*;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.WeakChangeListener; // IMPORT ADDED
-import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -28,6 +34,7 @@ import javafx.scene.text.Text;
 import javafx.stage.*;
 import javafx.util.Duration;
 import org.kordamp.ikonli.javafx.FontIcon;
+import pages.components.ImportProgress;
 import pages.components.Toast;
 import pages.confirmation_dialog.ConfirmationDialogController;
 import pages.root.RootPageController;
@@ -35,26 +42,59 @@ import pages.root.RootPageController;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class HomeController {
 
     @FXML private AnchorPane rootPane;
     @FXML private VBox vbox;
+    @FXML private ScrollPane scrollPane;
+
+    private static final int PAGE_SIZE = 200;
+    private static final int SEARCH_LIMIT = 500;
 
     private MusicPlayerManager playerManager;
     private List<SongManager.SongInfo> loadedSongs;
+    private List<SongManager.SongInfo> searchResults;
+    private SongPage.Cursor nextPage;
+    // Pages are queried off the FX thread, one at a time. While one is on its way, library events
+    // are held here and applied once it has landed, so none falls between the query and the rows.
+    private List<LibraryEvent> pendingEvents;
+    // Bumped by loadSongs(), so a page still on its way for the list it replaces is dropped
+    private int loadGeneration;
+
+    // Library changes are patched into the loaded rows instead of reloading the page
+    private final Consumer<LibraryEvent> libraryListener = event -> Platform.runLater(() -> applyLibraryEvent(event));
 
     @FXML
     private void initialize(){
         playerManager = MusicPlayerManager.getInstance();
         loadSongs();
-        if (loadedSongs != null) {
-            playerManager.setQueue(loadedSongs);
-        }
         setupDragAndDrop();
+
+        // Only listen while the page is on screen
+        rootPane.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (newScene != null) {
+                LibraryEventBus.subscribe(libraryListener);
+            } else {
+                LibraryEventBus.unsubscribe(libraryListener);
+            }
+        });
+
+        // Fetch the next page as the user nears the bottom of what's loaded
+        scrollPane.vvalueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal.doubleValue() >= 0.9 && currentSearchQuery.isEmpty()) {
+                loadNextPage();
+            }
+        });
     }
 
     private void setupDragAndDrop() {
@@ -80,75 +120,7 @@ public class HomeController {
     }
 
     private void processDroppedFiles(List<File> files) {
-        AtomicInteger addedCount = new AtomicInteger(0);
-        AtomicInteger duplicateCount = new AtomicInteger(0);
-
-        Task<Void> task = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                for (File file : files) {
-                    processFileOrDirectory(file, addedCount, duplicateCount);
-                }
-                return null;
-            }
-        };
-
-        task.setOnSucceeded(e -> {
-            Platform.runLater(() -> {
-                Stage stage = (Stage) rootPane.getScene().getWindow();
-                List<String> messages = new ArrayList<>();
-                if (addedCount.get() > 0) {
-                    messages.add(addedCount.get() + (addedCount.get() == 1 ? " new song added" : " new songs added"));
-                }
-                if (duplicateCount.get() > 0) {
-                    messages.add(duplicateCount.get() + (duplicateCount.get() == 1 ? " song already exists" : " songs already exist"));
-                }
-
-                if (!messages.isEmpty()) {
-                    String finalMessage = String.join(". ", messages);
-                    Toast.show(finalMessage, stage, this::loadSongs);
-                }
-
-                if (loadedSongs != null) {
-                    playerManager.setQueue(loadedSongs);
-                }
-            });
-        });
-
-        Thread th = new Thread(task);
-        th.setDaemon(true);
-        th.start();
-    }
-
-    private void processFileOrDirectory(File file, AtomicInteger addedCount, AtomicInteger duplicateCount) {
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    processFileOrDirectory(f, addedCount, duplicateCount);
-                }
-            }
-        } else {
-            List<String> validExtensions = List.of(".mp3", ".wav", ".flac");
-            String fileName = file.getName().toLowerCase();
-            boolean isValidExtension = validExtensions.stream().anyMatch(fileName::endsWith);
-
-            if (isValidExtension) {
-                try {
-                    if (SqliteDBManager.songExists(file.getAbsolutePath())) {
-                        duplicateCount.getAndIncrement();
-                    } else {
-                        SongManager.SongInfo music = SongManager.readMp3(file);
-                        if (music != null) {
-                            SqliteDBManager.insertNewSong(music);
-                            addedCount.getAndIncrement();
-                        }
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
-            }
-        }
+        ImportProgress.run(rootPane, files, false);
     }
 
     @FXML
@@ -251,25 +223,7 @@ public class HomeController {
         Stage stage = (Stage) rootPane.getScene().getWindow();
         List<File> files = fileChooser.showOpenMultipleDialog(stage);
         if (files != null && !files.isEmpty()){
-            int addedCount = 0;
-            for (File file : files) {
-                try {
-                    if (!SqliteDBManager.songExists(file.getAbsolutePath())) {
-                        SongManager.SongInfo music = SongManager.readMp3(file);
-                        if (music != null) {
-                            SqliteDBManager.insertNewSong(music);
-                            addedCount++;
-                        }
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
-            }
-            String message = addedCount + (addedCount == 1 ? " song added" : " songs added");
-            Toast.show(message, (Stage) rootPane.getScene().getWindow(), this::loadSongs);
-            if (loadedSongs != null) {
-                playerManager.setQueue(loadedSongs);
-            }
+            ImportProgress.run(rootPane, files, false);
         }
     }
 
@@ -280,69 +234,223 @@ public class HomeController {
         File dir = dirChooser.showDialog(stage);
         if (dir == null || !dir.isDirectory()) return;
 
-        AtomicInteger importedCount = new AtomicInteger();
-        Task<Void> task = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                scanAndImport(dir, importedCount);
-                return null;
+        // A folder that was imported before is brought up to date: changed files re-read, moved ones
+        // relinked, deleted ones removed, and unchanged ones skipped without being opened.
+        // From then on it is watched, so files added to it later are picked up by themselves.
+        ImportProgress.run(rootPane, List.of(dir), true);
+        LibraryWatcher.addRoot(dir);
+    }
+
+    // Only the first page is queried up front; the rest is streamed in by loadNextPage().
+    // The very first load shows the store's cached first page, if it has one, so the list is on
+    // screen before the database is open; refreshFirstPage() corrects it if it was out of date.
+    // Otherwise the first query, which may have to open and migrate the database, runs in the
+    // background and the rows appear when it is done.
+    public void loadSongs(){
+        LibraryStore store = LibraryStores.get();
+        loadGeneration++;
+        boolean first = loadedSongs == null;
+        if (first) {
+            SongPage cached = store.cachedFirstPage(SongPage.SortKey.FILE_NAME, PAGE_SIZE);
+            if (cached != null) {
+                loadedSongs = new ArrayList<>();
+                appendPage(cached);
+                playerManager.setQueue(libraryQueue());
+                refreshFirstPage(store, cached);
+                return;
             }
-        };
+        }
+        fetchPage(store, null, page -> {
+            loadedSongs = new ArrayList<>();
+            if (currentSearchQuery.isEmpty()) {
+                vbox.getChildren().clear();
+            }
+            appendPage(page);
+            if (first) {
+                playerManager.setQueue(libraryQueue());
+            }
+        });
+    }
+
+    // Queries the real first page and swaps it in if it differs from the cached one
+    private void refreshFirstPage(LibraryStore store, SongPage cached) {
+        fetchPage(store, null, page -> {
+            if (sameSongs(page.songs, cached.songs)) {
+                return;
+            }
+            loadedSongs.clear();
+            if (currentSearchQuery.isEmpty()) {
+                vbox.getChildren().clear();
+            }
+            appendPage(page);
+        });
+    }
 
-        task.setOnSucceeded(e -> {
+    // Queries the page at cursor on a background thread and hands it to show on the FX thread,
+    // followed by the library events that came in meanwhile
+    private void fetchPage(LibraryStore store, SongPage.Cursor cursor, Consumer<SongPage> show) {
+        int generation = loadGeneration;
+        pendingEvents = new ArrayList<>();
+        Thread thread = new Thread(() -> {
+            SongPage page;
+            try {
+                page = store.querySongs(SongPage.SortKey.FILE_NAME, cursor, PAGE_SIZE);
+            } catch (RuntimeException e) {
+                System.err.println("Error loading songs: " + e.getMessage());
+                page = null;
+            }
+            SongPage result = page;
             Platform.runLater(() -> {
-                String message = importedCount.get() + (importedCount.get() == 1 ? " song imported" : " songs imported");
-                Toast.show(message, (Stage) rootPane.getScene().getWindow(), this::loadSongs);
-                if (loadedSongs != null) {
-                    playerManager.setQueue(loadedSongs);
+                if (generation != loadGeneration) {
+                    return;
+                }
+                List<LibraryEvent> missed = pendingEvents;
+                pendingEvents = null;
+                if (result != null) {
+                    show.accept(result);
                 }
+                missed.forEach(this::applyLibraryEvent);
             });
-        });
+        }, "SongPageLoader");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        task.setOnFailed(e -> {
-            Throwable ex = task.getException();
-            if (ex != null) ex.printStackTrace();
-        });
+    private static boolean sameSongs(List<SongManager.SongInfo> a, List<SongManager.SongInfo> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            SongManager.SongInfo x = a.get(i);
+            SongManager.SongInfo y = b.get(i);
+            if (x.id != y.id || !Objects.equals(x.fileName, y.fileName) || !Objects.equals(x.path, y.path)
+                    || !Objects.equals(x.artist, y.artist) || !Objects.equals(x.duration, y.duration)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        Thread th = new Thread(task, "ImportFolderTask");
-        th.setDaemon(true);
-        th.start();
+    private void loadNextPage() {
+        if (nextPage == null || pendingEvents != null) return;
+        fetchPage(LibraryStores.get(), nextPage, this::appendPage);
     }
 
-    private void scanAndImport(File directory, AtomicInteger importedCount) {
-        File[] files = directory.listFiles();
-        if (files == null) return;
-        for (File f : files) {
-            if (f.isDirectory()) {
-                scanAndImport(f, importedCount);
-            } else {
-                String name = f.getName().toLowerCase();
-                if ((name.endsWith(".mp3") || name.endsWith(".wav") || name.endsWith(".flac")) && !SqliteDBManager.songExists(f.getAbsolutePath())) {
-                    try {
-                        SongManager.SongInfo music = SongManager.readMp3(f);
-                        if (music != null) {
-                            SqliteDBManager.insertNewSong(music);
-                            importedCount.getAndIncrement();
-                        }
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
+    private void appendPage(SongPage page) {
+        loadedSongs.addAll(page.songs);
+        nextPage = page.next;
+        if (!currentSearchQuery.isEmpty()) return;
+        for (SongManager.SongInfo s : page.songs) {
+            vbox.getChildren().add(createSongRow(s, this::libraryQueue));
+        }
+    }
+
+    private void applyLibraryEvent(LibraryEvent event) {
+        if (event.type != LibraryEvent.Type.LIBRARY_REPLACED) {
+            if (pendingEvents != null) {
+                pendingEvents.add(event);
+                return;
+            }
+            if (loadedSongs == null) {
+                // The first page failed to load; the next loadSongs() starts over
+                return;
+            }
+        }
+        switch (event.type) {
+            case SONGS_REMOVED -> removeSongs(new HashSet<>(event.ids));
+            case SONGS_ADDED, SONGS_UPDATED -> {
+                Set<Long> ids = new HashSet<>();
+                for (SongManager.SongInfo s : event.songs) {
+                    ids.add(s.id);
+                }
+                // Re-inserting puts a renamed song back in its sorted place. Removing first also makes
+                // an added song that a page fetched meanwhile already holds safe to insert.
+                removeSongs(loadedSongs, ids, currentSearchQuery.isEmpty());
+                insertSongs(event.songs);
+                if (!currentSearchQuery.isEmpty() && searchResults != null) {
+                    replaceSongs(searchResults, event.songs);
                 }
             }
+            case LIBRARY_REPLACED -> loadSongs();
+            default -> { }
         }
     }
 
-    public void loadSongs(){
-        loadedSongs = SqliteDBManager.getAllSongs();
-        vbox.getChildren().clear();
-        int index = 0;
-        for(SongManager.SongInfo s : loadedSongs){
-            vbox.getChildren().add(createSongRow(s, index));
-            index++;
+    // Adds new songs at their sorted position among the loaded rows. Songs that sort past the
+    // last loaded row are left for loadNextPage(); new ids are always above the cursor's, so they
+    // won't be skipped there. Search results are a snapshot and are not extended.
+    private void insertSongs(List<SongManager.SongInfo> songs) {
+        boolean showing = currentSearchQuery.isEmpty();
+        for (SongManager.SongInfo song : songs) {
+            if (nextPage != null && LibraryCache.compareBinary(song.fileName, loadedSongs.get(loadedSongs.size() - 1).fileName) >= 0) {
+                continue;
+            }
+            int index = insertionPoint(loadedSongs, song.fileName);
+            loadedSongs.add(index, song);
+            if (showing) {
+                vbox.getChildren().add(index, createSongRow(song, this::libraryQueue));
+            }
         }
     }
 
-    public HBox createSongRow(SongManager.SongInfo song, int index){
+    private void removeSongs(Set<Long> ids) {
+        removeSongs(loadedSongs, ids, currentSearchQuery.isEmpty());
+        if (!currentSearchQuery.isEmpty() && searchResults != null) {
+            removeSongs(searchResults, ids, true);
+        }
+    }
+
+    private void removeSongs(List<SongManager.SongInfo> songs, Set<Long> ids, boolean showing) {
+        for (int i = songs.size() - 1; i >= 0; i--) {
+            if (ids.contains(songs.get(i).id)) {
+                songs.remove(i);
+                if (showing) {
+                    vbox.getChildren().remove(i);
+                }
+            }
+        }
+    }
+
+    // Search results keep their ranked order; an updated song is swapped in where it already is
+    private void replaceSongs(List<SongManager.SongInfo> songs, List<SongManager.SongInfo> updated) {
+        Map<Long, SongManager.SongInfo> byId = new HashMap<>();
+        for (SongManager.SongInfo song : updated) {
+            byId.put(song.id, song);
+        }
+        for (int i = 0; i < songs.size(); i++) {
+            SongManager.SongInfo song = byId.get(songs.get(i).id);
+            if (song != null) {
+                songs.set(i, song);
+                vbox.getChildren().set(i, createSongRow(song, () -> songs));
+            }
+        }
+    }
+
+    // First index whose fileName sorts after the given one. The list is ordered like SortKey.FILE_NAME,
+    // in SQLite's BINARY order, so comparing with String.compareTo would misplace names above U+FFFF.
+    private static int insertionPoint(List<SongManager.SongInfo> songs, String fileName) {
+        int lo = 0;
+        int hi = songs.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (LibraryCache.compareBinary(songs.get(mid).fileName, fileName) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // What a library row plays: the whole library in list order, from the loaded rows on. The
+    // player gets its own copy, which reads further pages as it goes, not the rows' list.
+    private List<SongManager.SongInfo> libraryQueue() {
+        return new LibraryQueue(SongPage.SortKey.FILE_NAME, loadedSongs, nextPage, PAGE_SIZE);
+    }
+
+    // queue supplies what gets played when the row is clicked. The row looks itself up in it on
+    // click, since rows shift as library changes are patched in.
+    public HBox createSongRow(SongManager.SongInfo song, Supplier<List<SongManager.SongInfo>> queue){
         HBox songRow = new HBox();
         songRow.setPrefHeight(40.0);
         songRow.setMaxWidth(Double.MAX_VALUE);
@@ -351,7 +459,7 @@ public class HomeController {
 
         // --- Active Song Highlight Logic ---
         ChangeListener<SongManager.SongInfo> listener = (obs, oldVal, newVal) -> {
-            if (newVal != null && newVal.path.equals(song.path)) {
+            if (song.equals(newVal)) {
                 if (!songRow.getStyleClass().contains("row-box-playing")) {
                     songRow.getStyleClass().add("row-box-playing");
                 }
@@ -367,7 +475,7 @@ public class HomeController {
 
         // Initial State Check
         SongManager.SongInfo current = playerManager.currentSongProperty().get();
-        if (current != null && current.path.equals(song.path)) {
+        if (song.equals(current)) {
             songRow.getStyleClass().add("row-box-playing");
         }
         // --- End Highlight Logic ---
@@ -376,8 +484,9 @@ public class HomeController {
         // Play song on click, but not if the delete button was the source
         songRow.setOnMouseClicked(e -> {
             if (!(e.getTarget() instanceof Button || e.getTarget() instanceof FontIcon)) {
-                playerManager.setQueue(loadedSongs);
-                playerManager.playSong(index);
+                List<SongManager.SongInfo> songs = queue.get();
+                playerManager.setQueue(songs);
+                playerManager.playSong(songs.indexOf(song));
             }
         });
 
@@ -467,8 +576,8 @@ public class HomeController {
             dialogStage.showAndWait();
 
             if (controller.isConfirmed()) {
-                SqliteDBManager.deleteSong(song.path);
-                Toast.show("Song removed from library", (Stage) rootPane.getScene().getWindow(), this::loadSongs);
+                LibraryStores.get().deleteSong(song).thenRun(() -> Platform.runLater(() ->
+                        Toast.show("Song removed from library", (Stage) rootPane.getScene().getWindow())));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -594,18 +703,16 @@ public class HomeController {
 
     public void searchSongs(String query) {
         currentSearchQuery = query.toLowerCase().trim();
-        vbox.getChildren().clear();
-
-        int index = 0;
-        for (SongManager.SongInfo s : loadedSongs) {
-            // Check if song matches search query
-            if (currentSearchQuery.isEmpty() ||
-                    s.fileName.toLowerCase().contains(currentSearchQuery) ||
-                    s.artist.toLowerCase().contains(currentSearchQuery)) {
+        if (currentSearchQuery.isEmpty()) {
+            loadSongs();
+            return;
+        }
 
-                vbox.getChildren().add(createSongRow(s, index));
-            }
-            index++;
+        // Ranked full-text lookup over the whole library; only the matches get row nodes
+        searchResults = LibraryStores.get().search(currentSearchQuery, SEARCH_LIMIT);
+        vbox.getChildren().clear();
+        for (SongManager.SongInfo s : searchResults) {
+            vbox.getChildren().add(createSongRow(s, () -> searchResults));
         }
     }
 
@@ -1,6 +1,7 @@
 package pages.new_playlist_dialog;
 
-import com.SqliteDBManager;
+import com.LibraryStores;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
@@ -21,13 +22,14 @@ public class NewPlaylistDialogController {
     private void createPlaylist() {
         String playlistName = playlistNameField.getText();
         if (playlistName != null && !playlistName.isEmpty()) {
-            SqliteDBManager.insertNewPlaylist(playlistName);
-            if (playlistsPageController != null) {
-                playlistsPageController.loadPlaylists();
-                Toast.show("Playlist '" + playlistName + "' created", playlistsPageController.getStage(), this::closeDialog);
-            } else {
-                closeDialog();
-            }
+            LibraryStores.get().insertNewPlaylist(playlistName).thenRun(() -> Platform.runLater(() -> {
+                if (playlistsPageController != null) {
+                    playlistsPageController.loadPlaylists();
+                    Toast.show("Playlist '" + playlistName + "' created", playlistsPageController.getStage(), this::closeDialog);
+                } else {
+                    closeDialog();
+                }
+            }));
         }
     }
 
@@ -1,9 +1,11 @@
 package pages.playlist_songs;
 
+import com.LibraryEvent;
+import com.LibraryEventBus;
 import com.Main;
 import com.MusicPlayerManager;
 import com.SongManager;
-import com.SqliteDBManager;
+import com.LibraryStores;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.WeakChangeListener; // IMPORT ADDED
@@ -28,7 +30,10 @@ import pages.components.Toast;
 import pages.confirmation_dialog.ConfirmationDialogController;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class PlaylistSongsPageController {
 
@@ -41,6 +46,8 @@ public class PlaylistSongsPageController {
     private MusicPlayerManager playerManager;
     private List<SongManager.SongInfo> playlistSongs;
 
+    private final Consumer<LibraryEvent> libraryListener = event -> Platform.runLater(() -> applyLibraryEvent(event));
+
     public void setPlaylistName(String name) {
         this.playlistName = name;
         playlistNameText.setText(name);
@@ -51,16 +58,60 @@ public class PlaylistSongsPageController {
     private void initialize() {
         playerManager = MusicPlayerManager.getInstance();
         vbox.prefHeightProperty().bind(scrollPane.heightProperty());
+
+        // Only listen while the page is on screen
+        rootPane.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (newScene != null) {
+                LibraryEventBus.subscribe(libraryListener);
+            } else {
+                LibraryEventBus.unsubscribe(libraryListener);
+            }
+        });
     }
 
     private void loadSongs() {
-        playlistSongs = SqliteDBManager.getSongsForPlaylist(playlistName);
+        playlistSongs = LibraryStores.get().getSongsForPlaylist(playlistName);
         playerManager.setQueue(playlistSongs);
         vbox.getChildren().clear();
-        int index = 0;
         for (SongManager.SongInfo s : playlistSongs) {
-            vbox.getChildren().add(createSongRow(s, index));
-            index++;
+            vbox.getChildren().add(createSongRow(s));
+        }
+    }
+
+    private void applyLibraryEvent(LibraryEvent event) {
+        if (playlistSongs == null) return;
+        switch (event.type) {
+            case SONGS_REMOVED -> removeSongs(new HashSet<>(event.ids));
+            case SONGS_UPDATED -> {
+                for (SongManager.SongInfo updated : event.songs) {
+                    for (int i = 0; i < playlistSongs.size(); i++) {
+                        if (playlistSongs.get(i).equals(updated)) {
+                            playlistSongs.set(i, updated);
+                            vbox.getChildren().set(i, createSongRow(updated));
+                        }
+                    }
+                }
+            }
+            case PLAYLIST_CHANGED -> {
+                if (!playlistName.equals(event.playlistName)) return;
+                if (event.isRemovalOnly()) {
+                    removeSongs(new HashSet<>(event.ids));
+                } else {
+                    // Additions and moves need the stored order; that's one playlist, not the library
+                    loadSongs();
+                }
+            }
+            case LIBRARY_REPLACED -> loadSongs();
+            default -> { }
+        }
+    }
+
+    private void removeSongs(Set<Long> ids) {
+        for (int i = playlistSongs.size() - 1; i >= 0; i--) {
+            if (ids.contains(playlistSongs.get(i).id)) {
+                playlistSongs.remove(i);
+                vbox.getChildren().remove(i);
+            }
         }
     }
 
@@ -75,7 +126,7 @@ public class PlaylistSongsPageController {
         Main.getRootController().setPage(allSongsPage);
     }
 
-    public HBox createSongRow(SongManager.SongInfo song, int index) {
+    public HBox createSongRow(SongManager.SongInfo song) {
         HBox songRow = new HBox();
         songRow.setPrefHeight(40.0);
         songRow.setMaxWidth(Double.MAX_VALUE);
@@ -83,7 +134,7 @@ public class PlaylistSongsPageController {
 
         // --- Active Song Highlight Logic ---
         ChangeListener<SongManager.SongInfo> listener = (obs, oldVal, newVal) -> {
-            if (newVal != null && newVal.path.equals(song.path)) {
+            if (song.equals(newVal)) {
                 if (!songRow.getStyleClass().contains("row-box-playing")) {
                     songRow.getStyleClass().add("row-box-playing");
                 }
@@ -99,7 +150,7 @@ public class PlaylistSongsPageController {
 
         // Initial State Check
         SongManager.SongInfo current = playerManager.currentSongProperty().get();
-        if (current != null && current.path.equals(song.path)) {
+        if (song.equals(current)) {
             songRow.getStyleClass().add("row-box-playing");
         }
         // --- End Highlight Logic ---
@@ -109,8 +160,9 @@ public class PlaylistSongsPageController {
             if (e.getTarget() instanceof Button) {
                 return;
             }
+            // Rows shift as changes are patched in, so look the song up rather than capturing its index
             playerManager.setQueue(playlistSongs);
-            playerManager.playSong(index);
+            playerManager.playSong(playlistSongs.indexOf(song));
         });
 
         GridPane grid = new GridPane();
@@ -178,8 +230,8 @@ public class PlaylistSongsPageController {
                 dialogStage.showAndWait();
 
                 if (controller.isConfirmed()) {
-                    SqliteDBManager.removeSongFromPlaylist(song, playlistName);
-                    Toast.show("Song removed from playlist", (Stage) rootPane.getScene().getWindow(), this::loadSongs);
+                    LibraryStores.get().removeSongFromPlaylist(song, playlistName).thenRun(() -> Platform.runLater(() ->
+                            Toast.show("Song removed from playlist", (Stage) rootPane.getScene().getWindow())));
                 }
             } catch (IOException ioException) {
                 ioException.printStackTrace();
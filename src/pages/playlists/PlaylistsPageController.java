@@ -1,7 +1,9 @@
 package pages.playlists;
 
 import com.Main;
+import com.LibraryStores;
 import com.SqliteDBManager;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -33,7 +35,8 @@ public class PlaylistsPageController {
 
     @FXML
     private void initialize(){
-        SqliteDBManager.insertDefaultPlaylist();
+        // liked_songs is created by the schema migration; this only restores it if it went missing
+        LibraryStores.get().insertDefaultPlaylist();
         loadPlaylists();
     }
 
@@ -73,7 +76,7 @@ public class PlaylistsPageController {
     }
 
     public void loadPlaylists(){
-        List<SqliteDBManager.PlaylistInfo> playlists = SqliteDBManager.getAllPlaylists();
+        List<SqliteDBManager.PlaylistInfo> playlists = LibraryStores.get().getAllPlaylists();
         vbox.getChildren().clear();
         for(SqliteDBManager.PlaylistInfo p : playlists){
             vbox.getChildren().add(createPlaylistRow(p));
@@ -182,8 +185,8 @@ public class PlaylistsPageController {
             dialogStage.showAndWait();
 
             if (controller.isConfirmed()) {
-                SqliteDBManager.deletePlaylist(playlist.name);
-                Toast.show("Playlist deleted", (Stage) rootPane.getScene().getWindow(), this::loadPlaylists);
+                LibraryStores.get().deletePlaylist(playlist.name).thenRun(() -> Platform.runLater(() ->
+                        Toast.show("Playlist deleted", (Stage) rootPane.getScene().getWindow(), this::loadPlaylists)));
             }
         } catch (IOException ioException) {
             ioException.printStackTrace();
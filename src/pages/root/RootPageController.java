@@ -1,10 +1,15 @@
 package pages.root;
 
+import com.LibraryBackup;
+import com.LibraryVerifier;
+import com.LibraryWatcher;
+import com.MetadataBackfill;
 import com.Main;
-import com.SongManager;
+import com.LibraryStores;
 import com.SqliteDBManager;
 import com.UserProperties;
 import javafx.animation.FadeTransition;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -19,7 +24,7 @@ import javafx.scene.layout.VBox;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Screen;
 import javafx.util.Duration;
-import pages.all_songs.AllSongsPageController;
+import pages.components.ImportProgress;
 import pages.download.DownloadPageController;
 import pages.home.HomeController;
 import pages.pomodoro.PomodoroController;
@@ -27,10 +32,14 @@ import pages.pomodoro.PomodoroController;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class RootPageController {
@@ -46,7 +55,13 @@ public class RootPageController {
 
     @FXML
     private void initialize() {
-        SqliteDBManager.verifyAndCleanSongDatabase();
+        LibraryBackup.scheduleSnapshots();
+        LibraryStores.get().warmUp();
+        // Verification runs in the background once the watcher has caught up, so songs moved while the
+        // app was closed are relinked by the rescan before anything finds their old paths missing.
+        // Any songs it removes reach the pages as a SONGS_REMOVED event.
+        LibraryWatcher.start().thenRun(LibraryVerifier::runInBackground);
+        MetadataBackfill.start();
         root.setOpacity(0.0);
 
         try {
@@ -138,29 +153,15 @@ public class RootPageController {
                         })
                         .toList();
 
-                int importedCount = 0;
-                for (File file : supportedFiles) {
-                    try {
-                        File destFile = new File(songsDir, file.getName());
-                        if (!SqliteDBManager.songExists(destFile.getAbsolutePath())) {
-                            Files.copy(file.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                            SongManager.SongInfo songInfo = SongManager.readMp3(destFile);
-                            if (songInfo != null) {
-                                SqliteDBManager.insertNewSong(songInfo);
-                                importedCount++;
-                            }
-                        }
-                    } catch (IOException e) {
-                        System.err.println("Failed to copy imported file: " + file.getAbsolutePath());
-                        e.printStackTrace();
-                    } catch (Exception e) {
-                        System.err.println("Failed to import file: " + file.getAbsolutePath());
-                        e.printStackTrace();
-                    }
-                }
-                System.out.println("Successfully imported " + importedCount + " new files.");
+                // Copying and importing a large drop takes a while; both run off the FX thread
+                ImportProgress progress = ImportProgress.show(root, "Copying " + supportedFiles.size() + " files...");
+                Thread copier = new Thread(() -> {
+                    List<File> copiedFiles = copyInto(supportedFiles, songsDir, progress);
+                    Platform.runLater(() -> progress.start(copiedFiles, false));
+                }, "DropImport");
+                copier.setDaemon(true);
+                copier.start();
                 success = true;
-                refreshCurrentPage();
             }
             event.setDropCompleted(success);
             event.consume();
@@ -174,17 +175,45 @@ public class RootPageController {
         root.getStyleClass().remove("drag-over");
     }
 
-    public void refreshCurrentPage() {
-        if (pageContainer.getChildren().isEmpty()) return;
-
-        Parent currentPage = (Parent) pageContainer.getChildren().get(0);
-        Object controller = currentPage.getProperties().get("controller");
-
-        if (controller instanceof HomeController) {
-            ((HomeController) controller).loadSongs();
-        } else if (controller instanceof AllSongsPageController) {
-            ((AllSongsPageController) controller).loadSongs();
+    // Copies the files into songsDir, skipping those whose copy is already in the library. A file of
+    // the same name that isn't in the library is left alone and the dropped one skipped. If the import
+    // is cancelled meanwhile, the copies this drop made are removed again and nothing is returned.
+    private static List<File> copyInto(List<File> files, String songsDir, ImportProgress progress) {
+        List<String> destPaths = files.stream()
+                .map(f -> new File(songsDir, f.getName()).getAbsolutePath())
+                .toList();
+        Set<String> existing = LibraryStores.get().findExistingPaths(destPaths);
+
+        List<File> copiedFiles = new ArrayList<>();
+        for (File file : files) {
+            if (progress.isCancelled()) {
+                break;
+            }
+            File destFile = new File(songsDir, file.getName());
+            if (existing.contains(destFile.getAbsolutePath())) {
+                continue;
+            }
+            // CREATE_NEW, so the file is known to be this drop's from the moment it exists
+            try (OutputStream out = Files.newOutputStream(destFile.toPath(), StandardOpenOption.CREATE_NEW)) {
+                copiedFiles.add(destFile);
+                Files.copy(file.toPath(), out);
+            } catch (FileAlreadyExistsException e) {
+                System.err.println("Not importing " + file.getAbsolutePath() + ": " + destFile.getAbsolutePath()
+                        + " already exists");
+            } catch (IOException e) {
+                System.err.println("Failed to copy imported file: " + file.getAbsolutePath());
+                e.printStackTrace();
+                copiedFiles.remove(destFile);
+                destFile.delete();
+            }
+        }
+        if (progress.isCancelled()) {
+            for (File copy : copiedFiles) {
+                copy.delete();
+            }
+            return List.of();
         }
+        return copiedFiles;
     }
 
     public void setPage(Parent node) {
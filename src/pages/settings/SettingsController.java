@@ -1,25 +1,38 @@
 package pages.settings;
 
+import com.LibraryWatcher;
 import com.Main;
 import com.MusicPlayerManager;
 import com.UserProperties;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Parent;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
 import javafx.scene.control.Slider;
+import javafx.scene.effect.BlendMode;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
+import pages.components.ImportProgress;
 import pages.player_bar.PlayerBarController;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 
 public class SettingsController {
@@ -31,6 +44,7 @@ public class SettingsController {
     @FXML private Slider rainVolumeSlider;
     @FXML private Slider fireplaceVolumeSlider;
     @FXML private Slider windVolumeSlider;
+    @FXML private VBox watchedFoldersBox;
 
     UserProperties up = new UserProperties();
     double aspect_ratio;
@@ -126,6 +140,7 @@ public class SettingsController {
             }
         });
 
+        showWatchedFolders();
 
     }
 
@@ -179,6 +194,48 @@ public class SettingsController {
         }
     }
 
+    // Watched folders are kept in step with the library by LibraryWatcher
+    @FXML
+    private void addWatchedFolder() {
+        DirectoryChooser dirChooser = new DirectoryChooser();
+        dirChooser.setTitle("Select Folder to Watch");
+        Stage stage = (Stage) rootPane.getScene().getWindow();
+        File dir = dirChooser.showDialog(stage);
+        if (dir == null || !dir.isDirectory()) return;
+
+        // Imported (or brought up to date) now, like "From Folder"; the watcher takes it from there
+        ImportProgress.run(rootPane, List.of(dir), true);
+        LibraryWatcher.addRoot(dir);
+        showWatchedFolders();
+    }
+
+    // Songs from a folder that is no longer watched stay in the library
+    private void showWatchedFolders() {
+        watchedFoldersBox.getChildren().clear();
+        for (File folder : LibraryWatcher.roots()) {
+            Text path = new Text(folder.getPath());
+            path.setFill(Color.WHITE);
+            path.setFont(new Font("Monospaced Regular", 13.0));
+
+            Button remove = new Button("Remove");
+            remove.getStyleClass().add("row-box-btn");
+            remove.setOnAction(e -> {
+                LibraryWatcher.removeRoot(folder);
+                showWatchedFolders();
+            });
+
+            HBox spacer = new HBox();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
+            HBox row = new HBox(path, spacer, remove);
+            row.setAlignment(Pos.CENTER_LEFT);
+            row.setBlendMode(BlendMode.SCREEN);
+            row.setPrefHeight(43.0);
+            row.setPadding(new Insets(0, 10, 0, 10));
+            row.getStyleClass().add("row-box");
+            watchedFoldersBox.getChildren().add(row);
+        }
+    }
+
     @FXML
     public void goToHome(ActionEvent e) {
         try {